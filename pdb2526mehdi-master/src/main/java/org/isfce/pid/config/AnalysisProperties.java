@@ -0,0 +1,69 @@
+package org.isfce.pid.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Paramètres de l'analyse des demandes de dispense (préfixe {@code pid.analysis}).
+ */
+@Data
+@ConfigurationProperties(prefix = "pid.analysis")
+public class AnalysisProperties {
+
+    /**
+     * Réglages de l'analyse en masse des brouillons.
+     */
+    private Bulk bulk = new Bulk();
+
+    /**
+     * Nombre maximum de brouillons dont le dernier résultat d'analyse est mémorisé
+     * (une nouvelle analyse d'un dossier inchangé renvoie ce résultat sans relancer le moteur).
+     */
+    private int cacheSize = 1000;
+
+    /**
+     * Réglages des analyses asynchrones (POST /api/exemptions/{reqId}/analyze/async).
+     */
+    private Async async = new Async();
+
+    @Data
+    public static class Bulk {
+
+        /**
+         * Nombre d'identifiants de demandes chargés par page.
+         */
+        private int pageSize = 200;
+
+        /**
+         * Nombre maximum de dossiers analysés simultanément.
+         * Doit rester inférieur à la taille du pool de connexions (chaque dossier occupe une connexion).
+         */
+        private int parallelism = 8;
+
+        /**
+         * Nombre d'analyses en masse (terminées ou non) dont l'état et le rapport restent consultables.
+         */
+        private int retainedRuns = 20;
+    }
+
+    @Data
+    public static class Async {
+
+        /**
+         * Nombre de threads exécutant les analyses.
+         * Doit rester inférieur à la taille du pool de connexions (chaque analyse occupe une connexion).
+         */
+        private int workers = 4;
+
+        /**
+         * Nombre maximum d'analyses en attente ; au-delà, les nouvelles demandes sont refusées (429).
+         */
+        private int queueCapacity = 100;
+
+        /**
+         * Nombre d'analyses (terminées ou non) dont l'état reste consultable.
+         */
+        private int retainedJobs = 1000;
+    }
+}
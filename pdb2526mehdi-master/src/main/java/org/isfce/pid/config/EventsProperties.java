@@ -0,0 +1,32 @@
+package org.isfce.pid.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Paramètres du flux d'événements des dossiers envoyé aux étudiants (préfixe {@code pid.events}).
+ */
+@Data
+@ConfigurationProperties(prefix = "pid.events")
+public class EventsProperties {
+
+    /**
+     * Durée de vie d'une connexion ; à son expiration le navigateur (EventSource) se reconnecte de lui-même.
+     */
+    private Duration timeout = Duration.ofMinutes(30);
+
+    /**
+     * Intervalle des commentaires de maintien envoyés sur les connexions inactives
+     * (détection des clients partis, connexions gardées ouvertes par les proxies).
+     */
+    private Duration heartbeat = Duration.ofSeconds(25);
+
+    /**
+     * Nombre maximum d'événements en attente d'envoi pour une connexion ; au-delà, le client est jugé
+     * trop lent et la connexion est fermée (il se reconnecte et relit ses dossiers).
+     */
+    private int maxPending = 100;
+}
@@ -0,0 +1,135 @@
+package org.isfce.pid.config;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Paramètres du moteur de règles et de la Base de Connaissances (préfixe {@code pid.kb}).
+ */
+@Data
+@ConfigurationProperties(prefix = "pid.kb")
+public class KbProperties {
+
+    /**
+     * Stratégies d'évaluation des règles disponibles.
+     */
+    public enum Engine {
+        COUNTING,   // Index inversé + compteurs par règle (défaut).
+        BITSET,     // Ordinaux denses, masques long[] et tableaux primitifs (quasi sans allocation).
+        MAPPED      // Index inversé dans une forme compilée projetée en mémoire (hors tas, partagée entre instances).
+    }
+
+    /**
+     * Stratégie d'évaluation utilisée par le moteur de règles.
+     */
+    private Engine engine = Engine.COUNTING;
+
+    /**
+     * Emplacement du fichier de la Base de Connaissances (ressource Spring : "classpath:" ou "file:").
+     */
+    private String file = "classpath:knowledge-base.json";
+
+    /**
+     * Forme compilée binaire de la KB utilisée par le moteur MAPPED.
+     */
+    private Snapshot snapshot = new Snapshot();
+
+    /**
+     * Import des catalogues de cours au format CSV.
+     */
+    private Csv csv = new Csv();
+
+    /**
+     * Surveillance du fichier de la KB (rechargement à chaud).
+     */
+    private Watch watch = new Watch();
+
+    /**
+     * Synchronisation de la base avec le fichier de la KB.
+     */
+    private Sync sync = new Sync();
+
+    /**
+     * Nombre maximum de dossiers dont l'état d'analyse incrémentale est conservé en mémoire (LRU).
+     */
+    private int incrementalCacheSize = 2000;
+
+    /**
+     * Réglages du rapprochement approximatif des cours (codes mal saisis, libellés proches).
+     */
+    private Fuzzy fuzzy = new Fuzzy();
+
+    @Data
+    public static class Snapshot {
+
+        /**
+         * Répertoire des fichiers compilés, nommés d'après leur contenu ({@code kb-<sha256>.bin}).
+         * Les instances d'une même machine peuvent partager ce répertoire : celles qui ont la même KB
+         * partagent le même fichier, celles qui ont une autre version de la KB en écrivent un autre.
+         */
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "pid-kb-snapshots");
+    }
+
+    @Data
+    public static class Watch {
+
+        /**
+         * Active la surveillance du fichier (uniquement s'il est accessible sur le système de fichiers).
+         */
+        private boolean enabled = true;
+
+        /**
+         * Délai d'attente après la dernière modification détectée avant de synchroniser
+         * (un éditeur écrit souvent le fichier en plusieurs fois).
+         */
+        private Duration debounce = Duration.ofMillis(500);
+    }
+
+    @Data
+    public static class Sync {
+
+        /**
+         * Nombre maximum d'écoles synchronisées simultanément (une transaction, donc une connexion, par école).
+         * Doit rester inférieur à la taille du pool de connexions.
+         */
+        private int parallelism = 8;
+    }
+
+    @Data
+    public static class Csv {
+
+        /**
+         * Nombre de lignes traitées par transaction (écritures groupées par lots JDBC).
+         */
+        private int batchSize = 500;
+
+        /**
+         * Nombre maximum d'erreurs détaillées dans le rapport (les suivantes sont seulement comptées).
+         */
+        private int maxErrors = 1000;
+    }
+
+    @Data
+    public static class Fuzzy {
+
+        /**
+         * Active le rapprochement approximatif lorsque la correspondance exacte échoue.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Confiance minimale (0..1) pour qu'un cours soit rapproché d'un cours de la KB.
+         */
+        private double minConfidence = 0.6;
+
+        /**
+         * Confiance minimale (0..1) pour qu'une dispense soit acceptée automatiquement ;
+         * en dessous, la ligne est créée en NEEDS_REVIEW.
+         */
+        private double autoAcceptConfidence = 0.95;
+    }
+}
@@ -0,0 +1,34 @@
+package org.isfce.pid.config;
+
+import org.isfce.pid.service.kb.BitsetRuleEvaluator;
+import org.isfce.pid.service.kb.CountingRuleEvaluator;
+import org.isfce.pid.service.kb.MappedRuleEvaluator;
+import org.isfce.pid.service.kb.RuleEvaluator;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration du moteur de règles de la Base de Connaissances.
+ * Sélectionne la stratégie d'évaluation des règles selon {@link KbProperties#getEngine()}.
+ */
+@Configuration
+@EnableConfigurationProperties({KbProperties.class, AnalysisProperties.class, EventsProperties.class,
+        ReviewProperties.class})
+public class KnowledgeBaseConfig {
+
+    /**
+     * Fournit l'évaluateur de règles configuré.
+     *
+     * @param properties Les paramètres {@code pid.kb}.
+     * @return L'évaluateur (comptage, bitset ou fichier projeté).
+     */
+    @Bean
+    public RuleEvaluator ruleEvaluator(KbProperties properties) {
+        return switch (properties.getEngine()) {
+            case BITSET -> new BitsetRuleEvaluator();
+            case COUNTING -> new CountingRuleEvaluator();
+            case MAPPED -> new MappedRuleEvaluator();
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package org.isfce.pid.config;
+
+import org.isfce.pid.service.KnowledgeBaseService;
+import org.isfce.pid.service.KnowledgeBaseSyncService;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Indicateur de santé « knowledgeBase » (actuator), inclus dans la sonde de disponibilité (/actuator/health/readiness) :
+ * OUT_OF_SERVICE tant que le chargement initial de la KB n'est pas terminé (avec son avancement), UP ensuite.
+ * Un répartiteur de charge n'envoie ainsi les analyses à une instance qu'une fois sa KB complète.
+ */
+@Component
+@RequiredArgsConstructor
+public class KnowledgeBaseHealthIndicator implements HealthIndicator {
+
+    private final KnowledgeBaseService kbService;
+    private final KnowledgeBaseSyncService syncService;
+
+    @Override
+    public Health health() {
+        if (!kbService.isLoaded()) {
+            return Health.outOfService()
+                    .withDetail("state", "LOADING")
+                    .withDetail("progress", syncService.progress())
+                    .build();
+        }
+        return Health.up().withDetail("state", "LOADED").build();
+    }
+}
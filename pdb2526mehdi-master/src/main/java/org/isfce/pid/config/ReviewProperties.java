@@ -0,0 +1,30 @@
+package org.isfce.pid.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Paramètres de la file de traitement des dossiers soumis (préfixe {@code pid.review}).
+ */
+@Data
+@ConfigurationProperties(prefix = "pid.review")
+public class ReviewProperties {
+
+    /**
+     * Durée du bail d'un dossier pris en traitement ; sans renouvellement, il redevient disponible ensuite.
+     */
+    private Duration lease = Duration.ofMinutes(30);
+
+    /**
+     * Nombre maximum de dossiers pris en une fois.
+     */
+    private int maxClaim = 50;
+
+    /**
+     * Taille maximum d'une page de la file.
+     */
+    private int maxPageSize = 200;
+}
@@ -0,0 +1,105 @@
+package org.isfce.pid.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.UUID;
+
+import org.isfce.pid.dto.BulkAnalysisJobDto;
+import org.isfce.pid.dto.KbCsvImportReportDto;
+import org.isfce.pid.dto.KbSyncProgressDto;
+import org.isfce.pid.dto.KbSyncReportDto;
+import org.isfce.pid.service.BulkAnalysisService;
+import org.isfce.pid.service.KbCsvImportService;
+import org.isfce.pid.service.KnowledgeBaseSyncService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Contrôleur REST réservé au secrétariat / à l'administration.
+ * Regroupe les opérations de maintenance portant sur l'ensemble des dossiers et sur la Base de Connaissances.
+ */
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+public class AdminControllerRest {
+
+    private final BulkAnalysisService bulkAnalysisService;
+    private final KnowledgeBaseSyncService kbSyncService;
+    private final KbCsvImportService kbCsvImportService;
+
+    /**
+     * Relance en arrière-plan le moteur de règles sur tous les brouillons (ex: après une mise à jour de la KB).
+     * Les dossiers sont analysés en parallèle ; un dossier en erreur n'interrompt pas le traitement.
+     * Le rapport est consulté sur l'URL renvoyée dans l'en-tête Location.
+     *
+     * @return 202 avec l'état de l'analyse (celle déjà en cours s'il y en a une).
+     */
+    @PostMapping("/exemptions/analyze-drafts")
+    public ResponseEntity<BulkAnalysisJobDto> analyzeAllDrafts() {
+        BulkAnalysisJobDto job = bulkAnalysisService.submit();
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/admin/exemptions/analyze-drafts/" + job.getJobId()))
+                .body(job);
+    }
+
+    /**
+     * Consulte l'état d'une analyse en masse.
+     *
+     * @param jobId L'identifiant de l'analyse.
+     * @return L'état de l'analyse, avec son rapport (volume traité, débit, dossiers en erreur) une fois terminée.
+     */
+    @GetMapping("/exemptions/analyze-drafts/{jobId}")
+    public ResponseEntity<BulkAnalysisJobDto> getBulkAnalysis(@PathVariable("jobId") UUID jobId) {
+        return ResponseEntity.ok(bulkAnalysisService.getJob(jobId));
+    }
+
+    /**
+     * Recharge à chaud la Base de Connaissances depuis son fichier JSON (pid.kb.file).
+     * Seules les différences sont appliquées ; aucun redémarrage, aucun dossier touché.
+     * Chaque école est synchronisée dans sa propre transaction : une école en erreur n'annule pas les autres.
+     * Les écoles dont le contenu n'a pas changé depuis la dernière synchronisation sont ignorées.
+     *
+     * @param force true pour resynchroniser toutes les écoles (ex: après une modification directe en base).
+     * @return Le rapport des différences appliquées et le résultat de chaque école.
+     */
+    @PostMapping("/kb/reload")
+    public ResponseEntity<KbSyncReportDto> reloadKnowledgeBase(@RequestParam(defaultValue = "false") boolean force) {
+        return ResponseEntity.ok(kbSyncService.syncFromFile(force));
+    }
+
+    /**
+     * Avancement de la synchronisation de la KB en cours (ou de la dernière terminée) :
+     * écoles traitées, débit et temps restant estimé.
+     *
+     * @return L'avancement de la synchronisation.
+     */
+    @GetMapping("/kb/reload/progress")
+    public ResponseEntity<KbSyncProgressDto> knowledgeBaseReloadProgress() {
+        return ResponseEntity.ok(kbSyncService.progress());
+    }
+
+    /**
+     * Importe dans la KB le catalogue de cours CSV d'un établissement partenaire (écoles, cours et éventuellement règles).
+     * Le fichier est traité en flux, par lots ; les lignes invalides sont rejetées et listées dans le rapport.
+     *
+     * @param file Le fichier CSV (UTF-8, avec ligne d'en-tête).
+     * @return Le rapport de l'import (volumes insérés/mis à jour, débit, lignes rejetées).
+     * @throws IOException Si le fichier envoyé ne peut être lu.
+     */
+    @PostMapping(value = "/kb/import/csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<KbCsvImportReportDto> importKnowledgeBaseCsv(@RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return ResponseEntity.ok(kbCsvImportService.importCsv(in));
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.isfce.pid.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
 import java.util.UUID;
 
@@ -7,14 +10,24 @@ import jakarta.validation.Valid;
 
 import org.isfce.pid.dto.AddCourseDocumentDto;
 import org.isfce.pid.dto.AddExternalCourseDto;
+import org.isfce.pid.dto.AddExternalCoursesDto;
 import org.isfce.pid.dto.AddManualExemptionItemDto;
 import org.isfce.pid.dto.AddSupportingDocumentDto;
+import org.isfce.pid.dto.AnalysisJobDto;
 import org.isfce.pid.dto.CreateExemptionRequestDto;
 import org.isfce.pid.dto.ExemptionRequestDto;
 import org.isfce.pid.dto.ExemptionRequestFullDto;
 import org.isfce.pid.dto.ExternalCourseDto;
+import org.isfce.pid.dto.ExternalCoursesAddedDto;
+import org.isfce.pid.dto.SimulatedMatchDto;
+import org.isfce.pid.dto.SimulationRequestDto;
 import org.isfce.pid.dto.SupportingDocumentDto;
+import org.isfce.pid.dto.TranscriptImportReportDto;
+import org.isfce.pid.service.AnalysisJobService;
+import org.isfce.pid.service.ExemptionEventBroadcaster;
 import org.isfce.pid.service.ExemptionService;
+import org.isfce.pid.service.TranscriptImportService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -24,6 +37,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import lombok.RequiredArgsConstructor;
 
@@ -39,6 +54,9 @@ import lombok.RequiredArgsConstructor;
 public class ExemptionControllerRest {
 
     private final ExemptionService exemptionService;
+    private final TranscriptImportService transcriptImportService;
+    private final AnalysisJobService analysisJobService;
+    private final ExemptionEventBroadcaster eventBroadcaster;
 
     /**
      * Récupère la liste des demandes existantes pour un étudiant donné.
@@ -51,6 +69,20 @@ public class ExemptionControllerRest {
         return ResponseEntity.ok(exemptionService.myRequests(email));
     }
 
+    /**
+     * Ouvre le flux d'événements (Server-Sent Events) des dossiers d'un étudiant.
+     * Un événement "exemption-change" est poussé à chaque changement d'un de ses dossiers (création, statut,
+     * suppression, lignes de dispense ajoutées, décidées ou retirées), ce qui évite d'interroger le dossier complet
+     * en boucle. Le flux expire après pid.events.timeout ; le navigateur (EventSource) se reconnecte de lui-même.
+     *
+     * @param email L'adresse email de l'étudiant.
+     * @return Le flux d'événements.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(@RequestParam("email") String email) {
+        return eventBroadcaster.subscribe(email);
+    }
+
     /**
      * Récupère le détail complet d'une demande spécifique.
      * Inclut les cours externes, les documents et les lignes de dispenses.
@@ -88,6 +120,43 @@ public class ExemptionControllerRest {
         return ResponseEntity.ok(exemptionService.addExternalCourse(reqId, courseDto));
     }
 
+    /**
+     * Ajoute en une fois plusieurs cours externes au dossier (ex: relevé de notes complet).
+     * Les cours déjà présents dans le dossier sont refusés individuellement, sans bloquer les autres.
+     *
+     * @param reqId      L'identifiant de la demande en cours.
+     * @param coursesDto La liste des cours réussis.
+     * @return Les cours ajoutés et les cours refusés (doublons).
+     */
+    @PostMapping("/{reqId}/add-courses")
+    public ResponseEntity<ExternalCoursesAddedDto> addExternalCourses(
+            @PathVariable("reqId") UUID reqId,
+            @Valid @RequestBody AddExternalCoursesDto coursesDto) {
+        return ResponseEntity.ok(exemptionService.addExternalCourses(reqId, coursesDto));
+    }
+
+    /**
+     * Importe un relevé de notes complet (CSV ou JSON) dans le dossier, en une seule requête.
+     * Chaque ligne est validée ; les cours valides sont ajoutés en une fois, puis le dossier est analysé si demandé.
+     *
+     * @param reqId         L'identifiant de la demande en cours.
+     * @param file          Le relevé (CSV avec en-tête, ou tableau JSON de cours).
+     * @param etablissement Établissement par défaut des cours (facultatif, ex: relevé d'une seule école).
+     * @param analyze       true pour lancer le moteur de règles après l'import.
+     * @return Le résultat de chaque ligne et, si demandé, le dossier analysé.
+     * @throws IOException Si le fichier envoyé ne peut être lu.
+     */
+    @PostMapping(value = "/{reqId}/import-transcript", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<TranscriptImportReportDto> importTranscript(
+            @PathVariable("reqId") UUID reqId,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String etablissement,
+            @RequestParam(defaultValue = "false") boolean analyze) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return ResponseEntity.ok(transcriptImportService.importTranscript(reqId, in, etablissement, analyze));
+        }
+    }
+
     /**
      * Ajoute un document global au dossier (ex: Relevé de notes officiel, Diplôme).
      * Ce document est lié à la demande elle-même, pas à un cours spécifique.
@@ -129,6 +198,45 @@ public class ExemptionControllerRest {
         return ResponseEntity.ok(exemptionService.analyzeRequest(reqId));
     }
 
+    /**
+     * Met l'analyse automatique du dossier en file d'attente, sans occuper le thread de la requête.
+     * Une seule analyse est en cours par dossier : une nouvelle demande renvoie l'analyse déjà en file.
+     *
+     * @param reqId L'identifiant de la demande à analyser.
+     * @return L'état de l'analyse (202 Accepted), à suivre sur l'URL donnée par l'en-tête Location ;
+     *         429 Too Many Requests si la file d'attente est pleine.
+     */
+    @PostMapping("/{reqId}/analyze/async")
+    public ResponseEntity<AnalysisJobDto> analyzeRequestAsync(@PathVariable("reqId") UUID reqId) {
+        AnalysisJobDto job = analysisJobService.submit(reqId);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/exemptions/analysis-jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    /**
+     * Consulte l'état d'une analyse asynchrone.
+     *
+     * @param jobId L'identifiant de l'analyse.
+     * @return L'état de l'analyse, avec le dossier mis à jour une fois terminée (statut DONE).
+     */
+    @GetMapping("/analysis-jobs/{jobId}")
+    public ResponseEntity<AnalysisJobDto> getAnalysisJob(@PathVariable("jobId") UUID jobId) {
+        return ResponseEntity.ok(analysisJobService.getJob(jobId));
+    }
+
+    /**
+     * Simule l'analyse automatique sur des cours en cours de saisie (suggestions en direct).
+     * Rien n'est enregistré : aucun dossier n'est nécessaire et aucune transaction d'écriture n'est ouverte.
+     *
+     * @param dto La liste des cours saisis (établissement, code, ECTS).
+     * @return Les règles qui seraient satisfaites, avec les UEs accordées et les cours justificatifs.
+     */
+    @PostMapping("/simulate")
+    public ResponseEntity<List<SimulatedMatchDto>> simulate(@Valid @RequestBody SimulationRequestDto dto) {
+        return ResponseEntity.ok(exemptionService.simulate(dto.getCourses()));
+    }
+
     /**
      * Ajoute une demande de dispense manuelle.
      * Utilisé quand l'étudiant souhaite demander une dispense non détectée automatiquement.
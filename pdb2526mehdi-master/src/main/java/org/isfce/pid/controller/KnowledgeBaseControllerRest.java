@@ -0,0 +1,42 @@
+package org.isfce.pid.controller;
+
+import java.util.List;
+
+import org.isfce.pid.dto.KbSuggestionDto;
+import org.isfce.pid.service.KnowledgeBaseService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Contrôleur REST exposant la Base de Connaissances (KB) en lecture.
+ * Sert notamment l'auto-complétion du formulaire d'ajout de cours externes.
+ */
+@RestController
+@RequestMapping("/api/kb")
+@RequiredArgsConstructor
+public class KnowledgeBaseControllerRest {
+
+    private final KnowledgeBaseService kbService;
+
+    /**
+     * Auto-complétion des écoles et des cours connus de la KB (codes et libellés).
+     * Servie par un index en mémoire : aucune requête SQL.
+     *
+     * @param q      La saisie partielle de l'utilisateur.
+     * @param school Code d'école pour restreindre la recherche (facultatif).
+     * @param limit  Nombre maximum de suggestions (10 par défaut).
+     * @return Les suggestions, de la plus pertinente à la moins pertinente.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<KbSuggestionDto>> search(
+            @RequestParam("q") String q,
+            @RequestParam(value = "school", required = false) String school,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return ResponseEntity.ok(kbService.search(q, school, limit));
+    }
+}
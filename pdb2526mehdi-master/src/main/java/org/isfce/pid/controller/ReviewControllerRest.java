@@ -0,0 +1,93 @@
+package org.isfce.pid.controller;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import org.isfce.pid.dto.ReviewQueueEntryDto;
+import org.isfce.pid.dto.ReviewQueuePageDto;
+import org.isfce.pid.model.StatutDemande;
+import org.isfce.pid.service.ReviewQueueService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Contrôleur REST de la file de traitement des dossiers soumis (professeurs et administration) :
+ * prise en traitement des prochains dossiers, bail de traitement et consultation paginée de la file.
+ */
+@RestController
+@RequestMapping("/api/review")
+@RequiredArgsConstructor
+public class ReviewControllerRest {
+
+    private final ReviewQueueService reviewQueueService;
+
+    /**
+     * Prend en traitement les prochains dossiers de la file, les plus anciens d'abord.
+     * Deux professeurs qui appellent simultanément n'obtiennent jamais le même dossier.
+     *
+     * @param reviewer L'email du professeur.
+     * @param section  Le code de la section (toutes les sections si absent).
+     * @param count    Le nombre de dossiers souhaités.
+     * @return Les dossiers obtenus (liste vide si la file est vide).
+     */
+    @PostMapping("/claim")
+    public ResponseEntity<List<ReviewQueueEntryDto>> claim(@RequestParam("reviewer") String reviewer,
+                                                           @RequestParam(value = "section", required = false) String section,
+                                                           @RequestParam(value = "count", defaultValue = "1") int count) {
+        return ResponseEntity.ok(reviewQueueService.claimNext(reviewer, section, count));
+    }
+
+    /**
+     * Prolonge le bail d'un dossier en traitement.
+     *
+     * @param reqId    L'identifiant de la demande.
+     * @param reviewer L'email du professeur qui la détient.
+     * @return 204 No Content ; 400 si le dossier n'est plus détenu par ce professeur.
+     */
+    @PostMapping("/{reqId}/renew")
+    public ResponseEntity<Void> renew(@PathVariable("reqId") UUID reqId, @RequestParam("reviewer") String reviewer) {
+        reviewQueueService.renewClaim(reqId, reviewer);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Remet un dossier en traitement dans la file, sans décision.
+     *
+     * @param reqId    L'identifiant de la demande.
+     * @param reviewer L'email du professeur qui la détient.
+     * @return 204 No Content ; 400 si le dossier n'est plus détenu par ce professeur.
+     */
+    @PostMapping("/{reqId}/release")
+    public ResponseEntity<Void> release(@PathVariable("reqId") UUID reqId, @RequestParam("reviewer") String reviewer) {
+        reviewQueueService.releaseClaim(reqId, reviewer);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Liste la file d'une section par ordre de soumission, page par page.
+     * Pour la page suivante, repasser le curseur (nextSubmittedAt, nextId) de la page reçue.
+     *
+     * @param section          Le code de la section.
+     * @param statut           Le statut des dossiers listés (SUBMITTED par défaut).
+     * @param afterSubmittedAt Curseur : date de soumission du dernier dossier reçu.
+     * @param afterId          Curseur : identifiant du dernier dossier reçu.
+     * @param size             La taille de la page.
+     * @return La page, avec le curseur de la suivante (null sur la dernière page).
+     */
+    @GetMapping("/requests")
+    public ResponseEntity<ReviewQueuePageDto> listQueue(@RequestParam("section") String section,
+                                                        @RequestParam(value = "statut", defaultValue = "SUBMITTED") StatutDemande statut,
+                                                        @RequestParam(value = "afterSubmittedAt", required = false) Instant afterSubmittedAt,
+                                                        @RequestParam(value = "afterId", required = false) UUID afterId,
+                                                        @RequestParam(value = "size", defaultValue = "50") int size) {
+        return ResponseEntity.ok(reviewQueueService.listQueue(section, statut, afterSubmittedAt, afterId, size));
+    }
+}
@@ -0,0 +1,23 @@
+package org.isfce.pid.controller.error;
+
+import java.io.Serial;
+
+/**
+ * Exception levée lorsqu'une analyse asynchrone ne peut être mise en file d'attente parce que celle-ci est pleine
+ * (pid.analysis.async.queue-capacity). Traduite en 429 TOO MANY REQUESTS : la demande peut être renouvelée
+ * quelques instants plus tard.
+ */
+public class AnalysisQueueFullException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Construit une nouvelle exception de file d'analyse pleine.
+     *
+     * @param msg Le message d'erreur détaillé.
+     */
+    public AnalysisQueueFullException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,23 @@
+package org.isfce.pid.controller.error;
+
+import java.io.Serial;
+
+/**
+ * Exception levée lorsqu'une opération a besoin de la Base de Connaissances alors que celle-ci
+ * est encore en cours de chargement (démarrage de l'application). Traduite en 503 SERVICE UNAVAILABLE :
+ * la demande peut être renouvelée quelques instants plus tard.
+ */
+public class KbUnavailableException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Construit une nouvelle exception d'indisponibilité de la KB.
+     *
+     * @param msg Le message d'erreur détaillé.
+     */
+    public KbUnavailableException(String msg) {
+        super(msg);
+    }
+}
@@ -6,6 +6,7 @@ import java.util.NoSuchElementException;
 
 import jakarta.persistence.EntityNotFoundException;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -71,6 +72,32 @@ public class MonAdviceRestController {
         return ResponseEntity.badRequest().body(exc.getMessage());
     }
 
+    /**
+     * Traite les demandes nécessitant la Base de Connaissances pendant son chargement au démarrage.
+     *
+     * @param exc L'exception d'indisponibilité de la KB.
+     * @return Le message d'erreur avec le statut 503 SERVICE UNAVAILABLE et l'en-tête Retry-After.
+     */
+    @ExceptionHandler(KbUnavailableException.class)
+    public ResponseEntity<String> gestionErreurKbIndisponible(KbUnavailableException exc) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(exc.getMessage());
+    }
+
+    /**
+     * Traite les analyses asynchrones refusées parce que leur file d'attente est pleine.
+     *
+     * @param exc L'exception de file d'analyse pleine.
+     * @return Le message d'erreur avec le statut 429 TOO MANY REQUESTS et l'en-tête Retry-After.
+     */
+    @ExceptionHandler(AnalysisQueueFullException.class)
+    public ResponseEntity<String> gestionErreurFileAnalysePleine(AnalysisQueueFullException exc) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "2")
+                .body(exc.getMessage());
+    }
+
     /**
      * Traite les tentatives d'accès non autorisées ou interdites.
      * Cette méthode loggue l'incident comme une alerte de sécurité.
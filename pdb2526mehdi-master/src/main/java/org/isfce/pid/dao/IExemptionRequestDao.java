@@ -1,13 +1,20 @@
 package org.isfce.pid.dao;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.isfce.pid.dto.ReviewQueueEntryDto;
+import org.isfce.pid.dto.SubmissionCheckDto;
 import org.isfce.pid.model.ExemptionRequest;
 import org.isfce.pid.model.StatutDemande;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -57,7 +64,158 @@ public interface IExemptionRequestDao extends JpaRepository<ExemptionRequest, UU
      * Récupère toutes les demandes qui **ne sont pas** dans le statut indiqué.
      * Principalement utilisé par le dashboard Prof/Admin pour voir tout ce qui est
      * en attente de traitement (ex: {@code findByStatutNot(StatutDemande.DRAFT)}).
+     * Non paginée : pour parcourir la file de traitement, utiliser {@link #findQueuePage}.
      */
     List<ExemptionRequest> findByStatutNot(StatutDemande statut);
 
+    /**
+     * Première page des identifiants des demandes dans un statut donné, triés par ID.
+     * Seuls les IDs sont chargés : utilisé par l'analyse en masse des brouillons,
+     * chaque dossier étant ensuite rechargé dans sa propre transaction.
+     *
+     * @param statut Le statut recherché (ex: DRAFT).
+     * @param limit  Taille de la page.
+     * @return Les identifiants de la page.
+     */
+    @Query("SELECT r.id FROM ExemptionRequest r WHERE r.statut = :statut ORDER BY r.id")
+    List<UUID> findIdsByStatut(@Param("statut") StatutDemande statut, Limit limit);
+
+    /**
+     * Page suivante des identifiants des demandes dans un statut donné : parcours par curseur (sans OFFSET),
+     * insensible aux dossiers qui changent de statut entre deux pages.
+     *
+     * @param statut  Le statut recherché (ex: DRAFT).
+     * @param afterId Identifiant du dernier dossier de la page précédente.
+     * @param limit   Taille de la page.
+     * @return Les identifiants de la page.
+     */
+    @Query("SELECT r.id FROM ExemptionRequest r WHERE r.statut = :statut AND r.id > :afterId ORDER BY r.id")
+    List<UUID> findIdsByStatutAfter(@Param("statut") StatutDemande statut, @Param("afterId") UUID afterId,
+                                    Limit limit);
+
+    /**
+     * Résume un dossier pour le contrôle de complétude avant soumission, en une seule requête :
+     * nombre de cours, de lignes de dispense, de cours orphelins, de documents globaux et de cours sans document.
+     * Aucune collection du dossier n'est chargée, quelle que soit sa taille.
+     *
+     * @param id Identifiant de la demande.
+     * @return Les compteurs du dossier.
+     */
+    @Query("""
+            SELECT new org.isfce.pid.dto.SubmissionCheckDto(
+                (SELECT COUNT(c) FROM ExternalCourse c WHERE c.request = r),
+                (SELECT COUNT(i) FROM ExemptionItem i WHERE i.request = r),
+                (SELECT COUNT(c) FROM ExternalCourse c WHERE c.request = r
+                    AND NOT EXISTS (SELECT 1 FROM ExemptionItem i JOIN i.justifyingCourses j
+                                    WHERE i.request = r AND j = c)),
+                (SELECT COUNT(d) FROM SupportingDocument d WHERE d.request = r AND d.externalCourse IS NULL),
+                (SELECT COUNT(c) FROM ExternalCourse c WHERE c.request = r AND c.documents IS EMPTY))
+            FROM ExemptionRequest r WHERE r.id = :id
+            """)
+    SubmissionCheckDto findSubmissionCheck(@Param("id") UUID id);
+
+    /**
+     * Identifiants des prochains dossiers à traiter : soumis, ou en traitement dont le bail a expiré,
+     * les plus anciens d'abord. Ce ne sont que des candidats : la prise elle-même est faite par {@link #claim}.
+     *
+     * @param section Code de la section, ou null pour toutes les sections.
+     * @param now     Instant de référence pour l'expiration des baux.
+     * @param limit   Nombre maximum de candidats.
+     */
+    @Query("""
+            SELECT r.id FROM ExemptionRequest r
+            WHERE (:section IS NULL OR r.section.code = :section)
+              AND (r.statut = org.isfce.pid.model.StatutDemande.SUBMITTED
+                   OR (r.statut = org.isfce.pid.model.StatutDemande.IN_REVIEW AND r.claimExpiresAt < :now))
+            ORDER BY r.submittedAt, r.id
+            """)
+    List<UUID> findClaimableIds(@Param("section") String section, @Param("now") Instant now, Limit limit);
+
+    /**
+     * Prend en traitement, en une seule mise à jour conditionnelle, ceux des dossiers indiqués qui sont encore
+     * disponibles (soumis, ou bail expiré) : un dossier pris entre-temps par un autre professeur est ignoré.
+     *
+     * @param ids       Les candidats ({@link #findClaimableIds}).
+     * @param reviewer  Le professeur.
+     * @param expiresAt Fin du bail.
+     * @param token     Identifiant de cette prise (pour relire les dossiers obtenus).
+     * @param now       Instant de référence pour l'expiration des baux.
+     * @return Le nombre de dossiers effectivement pris.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            UPDATE ExemptionRequest r
+            SET r.statut = org.isfce.pid.model.StatutDemande.IN_REVIEW,
+                r.claimedBy = :reviewer, r.claimExpiresAt = :expiresAt, r.claimToken = :token, r.updatedAt = :now
+            WHERE r.id IN :ids
+              AND (r.statut = org.isfce.pid.model.StatutDemande.SUBMITTED
+                   OR (r.statut = org.isfce.pid.model.StatutDemande.IN_REVIEW AND r.claimExpiresAt < :now))
+            """)
+    int claim(@Param("ids") List<UUID> ids, @Param("reviewer") String reviewer, @Param("expiresAt") Instant expiresAt,
+              @Param("token") UUID token, @Param("now") Instant now);
+
+    /**
+     * Dossiers obtenus par une prise en traitement, parmi les candidats proposés.
+     *
+     * @param ids   Les candidats proposés à {@link #claim}.
+     * @param token Identifiant de la prise.
+     */
+    @Query("""
+            SELECT new org.isfce.pid.dto.ReviewQueueEntryDto(r.id, e.email, e.nom, e.prenom, r.section.code, r.statut,
+                       r.submittedAt, r.claimedBy, r.claimExpiresAt)
+            FROM ExemptionRequest r JOIN r.etudiant e
+            WHERE r.id IN :ids AND r.claimToken = :token
+            ORDER BY r.submittedAt, r.id
+            """)
+    List<ReviewQueueEntryDto> findClaimed(@Param("ids") List<UUID> ids, @Param("token") UUID token);
+
+    /**
+     * Prolonge le bail d'un dossier, s'il est toujours en traitement par ce professeur.
+     *
+     * @return 1 si le bail a été prolongé, 0 si le dossier n'est plus détenu par ce professeur.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            UPDATE ExemptionRequest r SET r.claimExpiresAt = :expiresAt, r.updatedAt = :now
+            WHERE r.id = :id AND r.statut = org.isfce.pid.model.StatutDemande.IN_REVIEW AND r.claimedBy = :reviewer
+            """)
+    int renewClaim(@Param("id") UUID id, @Param("reviewer") String reviewer, @Param("expiresAt") Instant expiresAt,
+                   @Param("now") Instant now);
+
+    /**
+     * Remet un dossier dans la file (statut SUBMITTED), s'il est toujours en traitement par ce professeur.
+     *
+     * @return 1 si le dossier a été rendu, 0 si le dossier n'est plus détenu par ce professeur.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            UPDATE ExemptionRequest r
+            SET r.statut = org.isfce.pid.model.StatutDemande.SUBMITTED,
+                r.claimedBy = NULL, r.claimExpiresAt = NULL, r.claimToken = NULL, r.updatedAt = :now
+            WHERE r.id = :id AND r.statut = org.isfce.pid.model.StatutDemande.IN_REVIEW AND r.claimedBy = :reviewer
+            """)
+    int releaseClaim(@Param("id") UUID id, @Param("reviewer") String reviewer, @Param("now") Instant now);
+
+    /**
+     * Page de la file de traitement d'une section, paginée par curseur (keyset) sur (date de soumission, id) :
+     * l'index (section, statut, date de soumission, id) est parcouru à partir du curseur, sans OFFSET.
+     *
+     * @param section   Code de la section.
+     * @param statut    Statut des dossiers listés (ex: SUBMITTED).
+     * @param afterDate Date de soumission du dernier dossier de la page précédente.
+     * @param afterId   Identifiant du dernier dossier de la page précédente.
+     * @param limit     Taille de la page.
+     */
+    @Query("""
+            SELECT new org.isfce.pid.dto.ReviewQueueEntryDto(r.id, e.email, e.nom, e.prenom, r.section.code, r.statut,
+                       r.submittedAt, r.claimedBy, r.claimExpiresAt)
+            FROM ExemptionRequest r JOIN r.etudiant e
+            WHERE r.section.code = :section AND r.statut = :statut
+              AND (r.submittedAt > :afterDate OR (r.submittedAt = :afterDate AND r.id > :afterId))
+            ORDER BY r.submittedAt, r.id
+            """)
+    List<ReviewQueueEntryDto> findQueuePage(@Param("section") String section, @Param("statut") StatutDemande statut,
+                                            @Param("afterDate") Instant afterDate, @Param("afterId") UUID afterId,
+                                            Limit limit);
+
 }
\ No newline at end of file
@@ -1,10 +1,15 @@
 package org.isfce.pid.dao;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.isfce.pid.dto.ExternalCourseKeyDto;
 import org.isfce.pid.model.ExternalCourse;
+import org.isfce.pid.model.KbCodes;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -28,4 +33,23 @@ public interface IExternalCourseDao extends JpaRepository<ExternalCourse, UUID>
      */
     Optional<ExternalCourse> findByEtablissementAndCode(String etablissement, String code);
 
-}
\ No newline at end of file
+    /**
+     * Vérifie, par l'index unique (demande, établissement, code), si un cours est déjà présent dans une demande.
+     * Les clés doivent être normalisées avec {@link KbCodes#normalize(String)}.
+     *
+     * @param requestId        Identifiant de la demande.
+     * @param etablissementKey Établissement normalisé.
+     * @param codeKey          Code normalisé.
+     * @return true si le cours figure déjà dans la demande.
+     */
+    boolean existsByRequestIdAndEtablissementKeyAndCodeKey(UUID requestId, String etablissementKey, String codeKey);
+
+    /**
+     * Clés normalisées des cours d'une demande (sans charger les entités ni leurs documents).
+     *
+     * @param requestId Identifiant de la demande.
+     * @return Les couples (établissement, code) normalisés déjà présents.
+     */
+    @Query("SELECT new org.isfce.pid.dto.ExternalCourseKeyDto(c.etablissementKey, c.codeKey) FROM ExternalCourse c WHERE c.request.id = :requestId")
+    List<ExternalCourseKeyDto> findKeysByRequestId(@Param("requestId") UUID requestId);
+}
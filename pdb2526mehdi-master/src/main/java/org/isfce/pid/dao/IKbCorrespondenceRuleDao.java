@@ -5,7 +5,10 @@ import java.util.UUID;
 
 import org.isfce.pid.model.KbCorrespondenceRule;
 import org.isfce.pid.model.KbSchool;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -26,4 +29,47 @@ public interface IKbCorrespondenceRuleDao extends JpaRepository<KbCorrespondence
      */
     List<KbCorrespondenceRule> findByEcole(KbSchool ecole);
 
+    /**
+     * Récupère toutes les règles avec leur école et leurs sources (cours KB) déjà chargées.
+     * Utilisé pour construire l'index en mémoire du moteur de règles.
+     *
+     * @return La liste complète des règles, sources résolues.
+     */
+    @EntityGraph(attributePaths = {"ecole", "sources", "sources.cours"})
+    @Query("SELECT r FROM KbCorrespondenceRule r")
+    List<KbCorrespondenceRule> findAllWithSources();
+
+    /**
+     * Récupère toutes les règles avec leurs cibles (UE) déjà chargées.
+     * Complète {@link #findAllWithSources()} dans la même session : les deux collections
+     * sont chargées séparément pour éviter un produit cartésien sources × cibles.
+     *
+     * @return La liste complète des règles, cibles résolues.
+     */
+    @EntityGraph(attributePaths = {"targets", "targets.ue"})
+    @Query("SELECT r FROM KbCorrespondenceRule r")
+    List<KbCorrespondenceRule> findAllWithTargets();
+
+    /**
+     * Récupère les règles d'une école avec leurs sources (cours KB) déjà chargées.
+     * Utilisé par la synchronisation de la KB, école par école.
+     *
+     * @param ecole L'établissement scolaire source.
+     * @return Les règles de l'école, sources résolues.
+     */
+    @EntityGraph(attributePaths = {"sources", "sources.cours"})
+    @Query("SELECT r FROM KbCorrespondenceRule r WHERE r.ecole = :ecole")
+    List<KbCorrespondenceRule> findByEcoleWithSources(@Param("ecole") KbSchool ecole);
+
+    /**
+     * Récupère les règles d'une école avec leurs cibles (UE) déjà chargées.
+     * Complète {@link #findByEcoleWithSources(KbSchool)} dans la même session.
+     *
+     * @param ecole L'établissement scolaire source.
+     * @return Les règles de l'école, cibles résolues.
+     */
+    @EntityGraph(attributePaths = {"targets", "targets.ue"})
+    @Query("SELECT r FROM KbCorrespondenceRule r WHERE r.ecole = :ecole")
+    List<KbCorrespondenceRule> findByEcoleWithTargets(@Param("ecole") KbSchool ecole);
+
 }
\ No newline at end of file
@@ -1,11 +1,17 @@
 package org.isfce.pid.dao;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.isfce.pid.model.KbCodes;
 import org.isfce.pid.model.KbCourse;
 import org.isfce.pid.model.KbSchool;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -18,13 +24,42 @@ public interface IKbCourseDao extends JpaRepository<KbCourse, UUID> {
 
     /**
      * Recherche un cours de référence spécifique dans une école donnée.
-     * La recherche sur le code du cours est insensible à la casse (Case Insensitive),
+     * La recherche porte sur le code normalisé (colonne indexée {@code code_key}, voir {@link KbCodes#normalize(String)}),
      * ce qui permet de trouver "INFO-F-101" même si on cherche "info-f-101".
      *
      * @param ecole L'école de référence.
-     * @param code Le code du cours (ex: "LINFO123").
+     * @param codeKey Le code normalisé du cours (ex: "LINFO123").
      * @return Le cours de la Knowledge Base s'il existe.
      */
-    Optional<KbCourse> findByEcoleAndCodeIgnoreCase(KbSchool ecole, String code);
+    Optional<KbCourse> findByEcoleAndCodeKey(KbSchool ecole, String codeKey);
+
+    /**
+     * Résout en une seule requête indexée un lot de cours à partir des couples (école, code) exacts
+     * ({@link KbCodes#courseKey(String, String)}) : seuls les cours demandés sont chargés, quel que soit le nombre
+     * de cours de même code dans les autres écoles du lot.
+     *
+     * @param courseKeys Les clés des cours (école et code normalisés).
+     * @return Les cours trouvés, avec leur école chargée.
+     */
+    @Query("SELECT c FROM KbCourse c JOIN FETCH c.ecole WHERE c.schoolCourseKey IN :courseKeys")
+    List<KbCourse> findAllByKeys(@Param("courseKeys") Collection<String> courseKeys);
+
+    /**
+     * Récupère tous les cours d'une école.
+     *
+     * @param ecole L'école de référence.
+     * @return Les cours de l'école.
+     */
+    List<KbCourse> findByEcole(KbSchool ecole);
+
+    /**
+     * Récupère tous les cours de référence avec leur école déjà chargée.
+     * Utilisé pour construire l'index en mémoire du moteur de règles.
+     *
+     * @return La liste complète des cours de la KB.
+     */
+    @EntityGraph(attributePaths = {"ecole"})
+    @Query("SELECT c FROM KbCourse c")
+    List<KbCourse> findAllWithEcole();
 
 }
\ No newline at end of file
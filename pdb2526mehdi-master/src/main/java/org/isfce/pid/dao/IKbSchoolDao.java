@@ -1,10 +1,17 @@
 package org.isfce.pid.dao;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.isfce.pid.dto.KbSchoolHashDto;
+import org.isfce.pid.model.KbCodes;
 import org.isfce.pid.model.KbSchool;
+import org.isfce.pid.model.OrigineKb;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -16,14 +23,32 @@ import org.springframework.stereotype.Repository;
 public interface IKbSchoolDao extends JpaRepository<KbSchool, UUID> {
 
     /**
-     * Recherche un établissement par son code abréviatif (ex: "ULB", "ESI", "HE2B").
-     * La recherche est insensible à la casse (Case Insensitive),
-     * ce qui facilite la saisie utilisateur ou les correspondances automatiques
+     * Recherche un établissement par son code normalisé (ex: "ULB", "ESI", "HE2B").
+     * La recherche porte sur la colonne indexée {@code code_key} : l'appelant normalise le code
+     * avec {@link KbCodes#normalize(String)}, ce qui rend la recherche insensible à la casse
      * (ex: "ulb" ou "Ulb" trouvera bien l'enregistrement "ULB").
      *
-     * @param code Le code ou l'abréviation de l'école.
+     * @param codeKey Le code normalisé de l'école.
      * @return L'école correspondante si elle existe.
      */
-    Optional<KbSchool> findByCodeIgnoreCase(String code);
+    Optional<KbSchool> findByCodeKey(String codeKey);
+
+    /**
+     * Recherche en une seule requête les établissements correspondant à un lot de codes normalisés.
+     *
+     * @param codeKeys Les codes normalisés des écoles.
+     * @return Les écoles trouvées.
+     */
+    List<KbSchool> findByCodeKeyIn(Collection<String> codeKeys);
+
+    /**
+     * Récupère le code normalisé et l'empreinte du contenu des écoles d'une origine (projection, sans charger les entités).
+     * Utilisé par la synchronisation de la KB pour ignorer les écoles inchangées et repérer celles absentes du fichier.
+     *
+     * @param origine L'origine des écoles (le fichier de la KB pour la synchronisation).
+     * @return Les codes normalisés et empreintes des écoles.
+     */
+    @Query("SELECT new org.isfce.pid.dto.KbSchoolHashDto(s.codeKey, s.contentHash) FROM KbSchool s WHERE s.origine = :origine")
+    List<KbSchoolHashDto> findAllHashes(@Param("origine") OrigineKb origine);
 
 }
\ No newline at end of file
@@ -25,4 +25,13 @@ public interface IUeDao extends JpaRepository<UE, String> {
      */
     @Query("SELECT new org.isfce.pid.dto.UEDto(u.code, u.ref, u.nom, u.nbPeriodes, u.ects, u.prgm) FROM TUE u")
     List<UEDto> findAllAsDtos();
+
+    /**
+     * Récupère les codes de toutes les UEs (sans charger les entités).
+     * Utilisé par la synchronisation de la KB pour résoudre les UEs cibles des règles.
+     *
+     * @return Les codes des UEs.
+     */
+    @Query("SELECT u.code FROM TUE u")
+    List<String> findAllCodes();
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package org.isfce.pid.dto;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+/**
+ * DTO (Data Transfer Object) utilisé pour l'ajout en une fois de plusieurs cours externes
+ * au dossier de dispense (ex: relevé de notes complet collé par l'étudiant).
+ */
+@Data
+public class AddExternalCoursesDto {
+
+    /**
+     * Nombre maximum de cours par ajout (un relevé de notes complet tient largement dans cette limite).
+     */
+    public static final int MAX_COURSES = 200;
+
+    /**
+     * Les cours à ajouter, dans l'ordre du relevé.
+     */
+    @NotEmpty
+    @Size(max = MAX_COURSES)
+    private List<@Valid AddExternalCourseDto> courses;
+}
@@ -0,0 +1,57 @@
+package org.isfce.pid.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant l'état d'une analyse asynchrone d'un dossier.
+ * Le dossier analysé n'est fourni qu'une fois l'analyse terminée (statut DONE) ;
+ * en cas d'échec (statut FAILED), le message d'erreur est fourni à la place.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class AnalysisJobDto {
+
+    /**
+     * Étapes d'une analyse asynchrone.
+     */
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /**
+     * Identifiant de l'analyse (à interroger sur /api/exemptions/analysis-jobs/{jobId}).
+     */
+    private UUID jobId;
+
+    /**
+     * Identifiant de la demande analysée.
+     */
+    private UUID requestId;
+
+    private Status status;
+
+    private Instant submittedAt;
+
+    /**
+     * Fin de l'analyse (null tant qu'elle n'est pas terminée).
+     */
+    private Instant finishedAt;
+
+    /**
+     * Le dossier mis à jour (statut DONE uniquement).
+     */
+    private ExemptionRequestFullDto result;
+
+    /**
+     * Message d'erreur (statut FAILED uniquement).
+     */
+    private String error;
+}
@@ -0,0 +1,47 @@
+package org.isfce.pid.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.isfce.pid.dto.AnalysisJobDto.Status;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant l'état d'une analyse en masse des brouillons, exécutée en arrière-plan.
+ * Le rapport n'est fourni qu'une fois l'analyse terminée (statut DONE) ;
+ * en cas d'échec global (statut FAILED), le message d'erreur est fourni à la place.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkAnalysisJobDto {
+
+    /**
+     * Identifiant de l'analyse (à interroger sur /api/admin/exemptions/analyze-drafts/{jobId}).
+     */
+    private UUID jobId;
+
+    private Status status;
+
+    private Instant submittedAt;
+
+    /**
+     * Fin de l'analyse (null tant qu'elle n'est pas terminée).
+     */
+    private Instant finishedAt;
+
+    /**
+     * Le rapport de l'analyse (statut DONE uniquement).
+     */
+    private BulkAnalysisReportDto report;
+
+    /**
+     * Message d'erreur (statut FAILED uniquement).
+     */
+    private String error;
+}
@@ -0,0 +1,65 @@
+package org.isfce.pid.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant le rapport d'une analyse en masse des brouillons.
+ * Il donne le volume traité, le débit obtenu et le détail des dossiers en erreur
+ * (un dossier en erreur n'interrompt jamais le traitement des autres).
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkAnalysisReportDto {
+
+    /**
+     * Nombre de brouillons sélectionnés pour l'analyse.
+     */
+    private int scanned;
+
+    /**
+     * Nombre de brouillons analysés avec succès.
+     */
+    private int analyzed;
+
+    /**
+     * Nombre de brouillons dont l'analyse a échoué.
+     */
+    private int failed;
+
+    /**
+     * Nombre total de lignes de dispense (AUTO_ACCEPTED) créées.
+     */
+    private int itemsCreated;
+
+    /**
+     * Durée totale de l'analyse en millisecondes.
+     */
+    private long durationMs;
+
+    /**
+     * Débit obtenu (dossiers traités par seconde).
+     */
+    private double requestsPerSecond;
+
+    /**
+     * Détail des dossiers en erreur.
+     */
+    private List<Failure> failures;
+
+    /**
+     * Erreur survenue lors de l'analyse d'un dossier.
+     *
+     * @param requestId Identifiant de la demande concernée.
+     * @param message   Message d'erreur.
+     */
+    public record Failure(UUID requestId, String message) {
+    }
+}
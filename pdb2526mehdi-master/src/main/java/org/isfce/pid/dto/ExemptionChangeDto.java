@@ -0,0 +1,87 @@
+package org.isfce.pid.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.isfce.pid.model.DecisionItem;
+import org.isfce.pid.model.ExemptionItem;
+import org.isfce.pid.model.ExemptionRequest;
+import org.isfce.pid.model.StatutDemande;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant un changement d'un dossier de dispense, poussé à l'étudiant
+ * par le flux d'événements (GET /api/exemptions/events). Volontairement léger : il indique ce qui a changé,
+ * le client relit le dossier complet seulement s'il en a besoin.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExemptionChangeDto {
+
+    /**
+     * Nature du changement.
+     */
+    public enum Type {
+        REQUEST_CREATED, REQUEST_STATUS_CHANGED, REQUEST_DELETED,
+        ITEM_ADDED, ITEM_DECISION_CHANGED, ITEM_REMOVED
+    }
+
+    private Type type;
+
+    private UUID requestId;
+
+    /**
+     * Statut du dossier après le changement.
+     */
+    private StatutDemande statut;
+
+    /**
+     * Ligne de dispense concernée (changements ITEM_* uniquement).
+     */
+    private UUID itemId;
+
+    /**
+     * Code de l'UE de la ligne concernée (changements ITEM_* uniquement).
+     */
+    private String ueCode;
+
+    /**
+     * Décision de la ligne après le changement (changements ITEM_* uniquement).
+     */
+    private DecisionItem decision;
+
+    private Instant occurredAt;
+
+    /**
+     * Changement portant sur le dossier lui-même.
+     */
+    public static ExemptionChangeDto of(Type type, ExemptionRequest req) {
+        return ExemptionChangeDto.builder()
+                .type(type)
+                .requestId(req.getId())
+                .statut(req.getStatut())
+                .occurredAt(Instant.now())
+                .build();
+    }
+
+    /**
+     * Changement portant sur une ligne de dispense du dossier.
+     */
+    public static ExemptionChangeDto of(Type type, ExemptionItem item) {
+        return ExemptionChangeDto.builder()
+                .type(type)
+                .requestId(item.getRequest().getId())
+                .statut(item.getRequest().getStatut())
+                .itemId(item.getId())
+                .ueCode(item.getUe() != null ? item.getUe().getCode() : null)
+                .decision(item.getDecision())
+                .occurredAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,25 @@
+package org.isfce.pid.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) portant la clé normalisée (établissement, code) d'un cours externe.
+ * Objet léger utilisé pour détecter les doublons d'un ajout en masse sans charger les cours du dossier.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExternalCourseKeyDto {
+
+    /**
+     * Établissement normalisé (ex: "ULB").
+     */
+    private String etablissementKey;
+
+    /**
+     * Code de cours normalisé (ex: "INFO-F101").
+     */
+    private String codeKey;
+}
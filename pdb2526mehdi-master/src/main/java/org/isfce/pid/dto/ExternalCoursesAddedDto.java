@@ -0,0 +1,37 @@
+package org.isfce.pid.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) renvoyé par l'ajout en masse de cours externes :
+ * les cours ajoutés et, ligne par ligne, les cours refusés car déjà présents dans le dossier.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExternalCoursesAddedDto {
+
+    /**
+     * Les cours ajoutés au dossier.
+     */
+    private List<ExternalCourseDto> added;
+
+    /**
+     * Les cours refusés (doublons), avec leur position dans la liste envoyée.
+     */
+    private List<RowError> errors;
+
+    /**
+     * Cours refusé lors d'un ajout en masse.
+     *
+     * @param index   Position du cours dans la liste envoyée (à partir de 0).
+     * @param code    Code du cours refusé.
+     * @param message Raison du refus.
+     */
+    public record RowError(int index, String code, String message) {
+    }
+}
@@ -0,0 +1,71 @@
+package org.isfce.pid.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant le rapport d'un import CSV de catalogue de cours dans la KB.
+ * Une ligne invalide est rejetée et signalée avec son numéro, sans interrompre l'import des autres lignes.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class KbCsvImportReportDto {
+
+    /**
+     * Nombre de lignes de données lues (en-tête et lignes vides exclus).
+     */
+    private long linesRead;
+
+    /**
+     * Nombre de lignes importées (y compris celles qui ne modifiaient rien).
+     */
+    private long linesImported;
+
+    /**
+     * Nombre de lignes rejetées.
+     */
+    private long linesFailed;
+
+    private int schoolsInserted;
+    private int schoolsUpdated;
+
+    private int coursesInserted;
+    private int coursesUpdated;
+
+    private int rulesInserted;
+
+    /**
+     * Nombre de règles déjà présentes à l'identique (non dupliquées).
+     */
+    private int rulesUnchanged;
+
+    /**
+     * Durée totale de l'import en millisecondes.
+     */
+    private long durationMs;
+
+    /**
+     * Débit obtenu (lignes lues par seconde).
+     */
+    private double linesPerSecond;
+
+    /**
+     * Détail des lignes rejetées (borné par pid.kb.csv.max-errors).
+     */
+    private List<LineError> errors;
+
+    /**
+     * Erreur survenue sur une ligne du fichier.
+     *
+     * @param line    Numéro de la ligne dans le fichier (l'en-tête est la ligne 1).
+     * @param message Message d'erreur.
+     */
+    public record LineError(long line, String message) {
+    }
+}
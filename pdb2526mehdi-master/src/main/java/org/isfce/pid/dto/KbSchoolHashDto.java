@@ -0,0 +1,26 @@
+package org.isfce.pid.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) associant le code normalisé d'une école de la KB à l'empreinte de son contenu.
+ * Objet léger utilisé par la synchronisation de la KB pour repérer, sans charger les entités,
+ * les écoles inchangées depuis la dernière synchronisation.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class KbSchoolHashDto {
+
+    /**
+     * Code normalisé de l'école.
+     */
+    private String codeKey;
+
+    /**
+     * Empreinte SHA-256 du contenu de l'école lors de sa dernière synchronisation (null si jamais calculée).
+     */
+    private String contentHash;
+}
@@ -0,0 +1,54 @@
+package org.isfce.pid.dto;
+
+import org.isfce.pid.service.kb.KbSearchIndex;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant une suggestion d'auto-complétion issue de la Base de Connaissances.
+ * Une suggestion désigne soit une école, soit un cours d'une école.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class KbSuggestionDto {
+
+    /**
+     * Nature de la suggestion (SCHOOL ou COURSE).
+     */
+    private KbSearchIndex.Kind type;
+
+    /**
+     * Code de l'école (ex: "VINCI").
+     */
+    private String schoolCode;
+
+    /**
+     * Nom complet de l'école.
+     */
+    private String etablissement;
+
+    /**
+     * Code officiel du cours (null pour une école).
+     */
+    private String code;
+
+    /**
+     * Libellé officiel du cours (null pour une école).
+     */
+    private String libelle;
+
+    /**
+     * Crédits ECTS du cours (null pour une école).
+     */
+    private Integer ects;
+
+    /**
+     * Pertinence de la suggestion (plus élevé = meilleur).
+     */
+    private double score;
+}
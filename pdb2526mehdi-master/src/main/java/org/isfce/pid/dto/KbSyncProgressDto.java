@@ -0,0 +1,58 @@
+package org.isfce.pid.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant l'avancement de la synchronisation de la Base de Connaissances
+ * en cours (ou de la dernière synchronisation si aucune n'est en cours).
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class KbSyncProgressDto {
+
+    /**
+     * true si une synchronisation est en cours.
+     */
+    private boolean running;
+
+    /**
+     * Nombre d'écoles synchronisées avec succès.
+     */
+    private int schoolsDone;
+
+    /**
+     * Nombre d'écoles en erreur.
+     */
+    private int schoolsFailed;
+
+    /**
+     * Nombre de lignes traitées (écoles + cours + règles).
+     */
+    private long rowsRead;
+
+    /**
+     * Durée écoulée depuis le début de la synchronisation, en millisecondes.
+     */
+    private long elapsedMs;
+
+    /**
+     * Débit actuel (lignes traitées par seconde).
+     */
+    private double rowsPerSecond;
+
+    /**
+     * Part de la source déjà lue, en pourcentage (null si inconnue).
+     * Pour un fichier, elle est estimée à partir de la position de lecture dans le fichier.
+     */
+    private Double percent;
+
+    /**
+     * Temps restant estimé en millisecondes (null si inconnu).
+     */
+    private Long etaMs;
+}
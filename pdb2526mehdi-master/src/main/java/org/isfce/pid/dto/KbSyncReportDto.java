@@ -0,0 +1,91 @@
+package org.isfce.pid.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant le rapport d'une synchronisation de la Base de Connaissances
+ * avec son fichier JSON. Seules les différences sont appliquées : le rapport en donne le détail.
+ * Chaque école est synchronisée dans sa propre transaction : une école en erreur n'empêche pas les autres.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class KbSyncReportDto {
+
+    private int schoolsInserted;
+    private int schoolsUpdated;
+    private int schoolsDeleted;
+
+    private int coursesInserted;
+    private int coursesUpdated;
+    private int coursesDeleted;
+
+    /**
+     * Une règle modifiée est comptée comme une suppression suivie d'une insertion
+     * (une règle n'a pas de clé métier : elle est identifiée par son contenu complet).
+     */
+    private int rulesInserted;
+    private int rulesDeleted;
+
+    /**
+     * Nombre de règles identiques dans le fichier et en base (non touchées).
+     */
+    private int rulesUnchanged;
+
+    /**
+     * Nombre d'écoles ignorées car leur contenu n'a pas changé depuis la dernière synchronisation (même empreinte).
+     * Leurs règles sont comptées comme inchangées.
+     */
+    private int schoolsSkipped;
+
+    /**
+     * Nombre d'écoles dont la synchronisation a échoué (leur état en base est inchangé).
+     */
+    private int schoolsFailed;
+
+    /**
+     * Nombre de lignes lues dans le fichier (écoles + cours + règles).
+     */
+    private long rowsRead;
+
+    /**
+     * Durée totale de la synchronisation en millisecondes.
+     */
+    private long durationMs;
+
+    /**
+     * Débit obtenu (lignes lues par seconde).
+     */
+    private double rowsPerSecond;
+
+    /**
+     * Résultat de chaque école (ordre de fin de traitement).
+     */
+    private List<SchoolResult> schools;
+
+    /**
+     * @return true si la synchronisation n'a rien modifié.
+     */
+    public boolean isUnchanged() {
+        return schoolsInserted + schoolsUpdated + schoolsDeleted
+                + coursesInserted + coursesUpdated + coursesDeleted
+                + rulesInserted + rulesDeleted == 0;
+    }
+
+    /**
+     * Résultat de la synchronisation d'une école.
+     *
+     * @param school  Code de l'école.
+     * @param success true si l'école a été synchronisée (transaction validée).
+     * @param rows    Nombre de lignes de l'école dans le fichier (école + cours + règles), 0 si elle en a été retirée.
+     * @param message Message d'erreur (null en cas de succès).
+     */
+    public record SchoolResult(String school, boolean success, long rows, String message) {
+    }
+}
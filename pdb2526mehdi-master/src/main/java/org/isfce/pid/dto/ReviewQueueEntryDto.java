@@ -0,0 +1,48 @@
+package org.isfce.pid.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.isfce.pid.model.StatutDemande;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant un dossier dans la file de traitement des professeurs.
+ * Projection construite directement par la requête (aucune entité chargée) : de quoi afficher la file
+ * et savoir qui traite le dossier, jusqu'à quand.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReviewQueueEntryDto {
+
+    private UUID requestId;
+
+    private String studentEmail;
+
+    private String studentNom;
+
+    private String studentPrenom;
+
+    private String sectionCode;
+
+    private StatutDemande statut;
+
+    /**
+     * Date de soumission (ordre de la file).
+     */
+    private Instant submittedAt;
+
+    /**
+     * Professeur ayant pris le dossier en traitement (null s'il est en attente).
+     */
+    private String claimedBy;
+
+    /**
+     * Fin du bail de traitement ; passé cette date, le dossier peut être repris.
+     */
+    private Instant claimExpiresAt;
+}
@@ -0,0 +1,32 @@
+package org.isfce.pid.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant une page de la file de traitement, paginée par curseur (keyset) :
+ * la page suivante commence après le dernier dossier de celle-ci (date de soumission, identifiant),
+ * ce qui garde un coût constant quelle que soit la profondeur dans la file.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReviewQueuePageDto {
+
+    private List<ReviewQueueEntryDto> entries;
+
+    /**
+     * Curseur de la page suivante : date de soumission du dernier dossier (null s'il n'y a pas de page suivante).
+     */
+    private Instant nextSubmittedAt;
+
+    /**
+     * Curseur de la page suivante : identifiant du dernier dossier (null s'il n'y a pas de page suivante).
+     */
+    private UUID nextId;
+}
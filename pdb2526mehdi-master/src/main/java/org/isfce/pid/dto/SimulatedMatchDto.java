@@ -0,0 +1,37 @@
+package org.isfce.pid.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant une règle qui serait satisfaite par les cours simulés.
+ * Équivalent, sans persistance, d'une proposition AUTO_ACCEPTED créée par l'analyse.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SimulatedMatchDto {
+
+    /**
+     * Description de la règle de correspondance satisfaite.
+     */
+    private String ruleDescription;
+
+    /**
+     * UEs qui seraient accordées par cette règle.
+     */
+    private List<UEDto> ues;
+
+    /**
+     * Cours saisis ayant permis de satisfaire la règle (dans l'ordre de saisie).
+     */
+    private List<SimulationCourseDto> courses;
+
+    /**
+     * Confiance (0..1) du rapprochement : 1 si tous les cours ont été reconnus exactement.
+     */
+    private double confidence;
+}
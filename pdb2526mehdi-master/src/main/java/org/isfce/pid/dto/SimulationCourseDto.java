@@ -0,0 +1,35 @@
+package org.isfce.pid.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) représentant un cours externe en cours de saisie,
+ * utilisé uniquement pour la simulation ("what-if") : il n'est jamais enregistré.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SimulationCourseDto {
+
+    /**
+     * Nom ou code de l'établissement d'origine (ex: "ULB", "HE2B").
+     */
+    @NotBlank
+    private String etablissement;
+
+    /**
+     * Code du cours dans l'établissement d'origine (ex: "INFO-F101").
+     */
+    @NotBlank
+    private String code;
+
+    /**
+     * Nombre de crédits ECTS obtenus pour ce cours.
+     */
+    @Min(1)
+    private int ects;
+}
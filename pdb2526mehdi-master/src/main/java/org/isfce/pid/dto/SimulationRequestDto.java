@@ -0,0 +1,27 @@
+package org.isfce.pid.dto;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) d'entrée de la simulation : la liste des cours saisis par l'étudiant.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SimulationRequestDto {
+
+    /**
+     * Cours externes à évaluer (non persistés). Taille bornée : la simulation est appelée à chaque frappe.
+     */
+    @NotNull
+    @Size(max = 100)
+    @Valid
+    private List<SimulationCourseDto> courses;
+}
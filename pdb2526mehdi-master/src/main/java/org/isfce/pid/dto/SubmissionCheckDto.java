@@ -0,0 +1,41 @@
+package org.isfce.pid.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) résumant un dossier pour le contrôle de complétude avant soumission.
+ * Calculé par une seule requête d'agrégation ({@code IExemptionRequestDao#findSubmissionCheck}),
+ * sans charger les cours, lignes de dispense ni documents du dossier.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SubmissionCheckDto {
+
+    /**
+     * Nombre de cours externes du dossier.
+     */
+    private long courseCount;
+
+    /**
+     * Nombre de lignes de dispense du dossier.
+     */
+    private long itemCount;
+
+    /**
+     * Nombre de cours externes ne justifiant aucune ligne de dispense (orphelins).
+     */
+    private long orphanCourseCount;
+
+    /**
+     * Nombre de documents globaux du dossier (non rattachés à un cours).
+     */
+    private long globalDocumentCount;
+
+    /**
+     * Nombre de cours externes sans document spécifique (programme de cours).
+     */
+    private long coursesWithoutDocumentCount;
+}
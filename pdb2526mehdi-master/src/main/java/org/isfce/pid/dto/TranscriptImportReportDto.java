@@ -0,0 +1,57 @@
+package org.isfce.pid.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO (Data Transfer Object) renvoyé par l'import d'un relevé de notes (CSV ou JSON) dans un dossier :
+ * le résultat de chaque ligne et, si elle a été demandée, l'analyse du dossier qui a suivi.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TranscriptImportReportDto {
+
+    /**
+     * Nombre de cours lus dans le relevé.
+     */
+    private int rowsRead;
+
+    /**
+     * Nombre de cours ajoutés au dossier.
+     */
+    private int coursesAdded;
+
+    /**
+     * Nombre de cours refusés (ligne invalide ou cours déjà présent).
+     */
+    private int rowsRejected;
+
+    /**
+     * Résultat de chaque ligne, dans l'ordre du relevé.
+     */
+    private List<RowResult> rows;
+
+    /**
+     * Le dossier après analyse par le moteur de règles (null si l'analyse n'a pas été demandée).
+     */
+    private ExemptionRequestFullDto analysis;
+
+    /**
+     * Résultat de l'import d'une ligne du relevé.
+     *
+     * @param row      Numéro de la ligne dans le fichier CSV, ou position (à partir de 1) dans le tableau JSON.
+     * @param code     Code du cours lu (peut être null si la ligne est invalide).
+     * @param added    true si le cours a été ajouté au dossier.
+     * @param courseId Identifiant du cours créé (null s'il a été refusé).
+     * @param message  Raison du refus (null s'il a été ajouté).
+     */
+    public record RowResult(long row, String code, boolean added, UUID courseId, String message) {
+    }
+}
@@ -139,4 +139,9 @@ public interface ExemptionMapper {
      * Convertit un set d'items de dispense vers un set de DTOs.
      */
     Set<ExemptionItemDto> toExemptionItemDtoSet(Set<ExemptionItem> items);
+
+    /**
+     * Convertit une liste d'UEs vers une liste de DTOs légers (via {@link UEMapper}).
+     */
+    List<UEDto> toUEDtoList(List<UE> ues);
 }
\ No newline at end of file
@@ -3,8 +3,10 @@ package org.isfce.pid.model;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * Entité racine représentant un dossier de demande de dispense.
@@ -17,7 +19,14 @@ import java.util.Set;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "exemption_request")
+@Table(
+        name = "exemption_request",
+        indexes = {
+            // File de traitement : plus anciens dossiers soumis d'abord, globalement ou par section
+            @Index(name = "idx_request_queue", columnList = "statut,submitted_at,id"),
+            @Index(name = "idx_request_section_queue", columnList = "section_code,statut,submitted_at,id")
+        }
+)
 public class ExemptionRequest extends BaseEntity {
 
     /**
@@ -43,6 +52,31 @@ public class ExemptionRequest extends BaseEntity {
     @Builder.Default
     private StatutDemande statut = StatutDemande.DRAFT;
 
+    /**
+     * Date de soumission du dossier (null tant qu'il est en brouillon) : ordre de la file de traitement.
+     */
+    @Column(name = "submitted_at")
+    private Instant submittedAt;
+
+    /**
+     * Professeur ou administrateur ayant pris le dossier en traitement (statut IN_REVIEW).
+     */
+    @Column(name = "claimed_by", length = 100)
+    private String claimedBy;
+
+    /**
+     * Fin du bail de traitement : passé cette date, le dossier peut être repris par un autre professeur.
+     */
+    @Column(name = "claim_expires_at")
+    private Instant claimExpiresAt;
+
+    /**
+     * Identifiant de la prise en traitement (une par appel), pour retrouver les dossiers obtenus
+     * par une prise groupée.
+     */
+    @Column(name = "claim_token")
+    private UUID claimToken;
+
     /**
      * Liste des cours suivis et réussis dans un autre établissement.
      */
@@ -19,7 +19,12 @@ import lombok.*;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "external_course", indexes = @Index(columnList = "etablissement,code"))
+@Table(
+        name = "external_course",
+        uniqueConstraints = @UniqueConstraint(name = "uk_external_course_key",
+                columnNames = {"request_id", "etablissement_key", "code_key"}),
+        indexes = @Index(columnList = "etablissement,code")
+)
 public class ExternalCourse extends BaseEntity {
 
     /**
@@ -44,6 +49,22 @@ public class ExternalCourse extends BaseEntity {
     @Column(nullable = false, length = 32)
     private String code;
 
+    /**
+     * Établissement normalisé ({@link KbCodes#normalize(String)}), calculé à l'enregistrement.
+     * Avec {@link #codeKey}, forme la clé unique du cours dans la demande : la base refuse les doublons,
+     * même entre deux ajouts simultanés.
+     */
+    @Column(name = "etablissement_key", nullable = false, length = 100)
+    @Setter(AccessLevel.NONE)
+    private String etablissementKey;
+
+    /**
+     * Code normalisé ({@link KbCodes#normalize(String)}), calculé à l'enregistrement.
+     */
+    @Column(name = "code_key", nullable = false, length = 32)
+    @Setter(AccessLevel.NONE)
+    private String codeKey;
+
     /**
      * Titre officiel du cours.
      */
@@ -69,4 +90,11 @@ public class ExternalCourse extends BaseEntity {
     @Builder.Default
     @OneToMany(mappedBy = "externalCourse", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<SupportingDocument> documents = new HashSet<>();
-}
\ No newline at end of file
+
+    @PrePersist
+    @PreUpdate
+    void normalizeKeys() {
+        etablissementKey = KbCodes.normalize(etablissement);
+        codeKey = KbCodes.normalize(code);
+    }
+}
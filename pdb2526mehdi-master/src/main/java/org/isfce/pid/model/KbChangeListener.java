@@ -0,0 +1,112 @@
+package org.isfce.pid.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreRemove;
+import jakarta.persistence.PreUpdate;
+
+/**
+ * Listener JPA attaché aux entités de la Base de Connaissances (écoles, cours, règles).
+ * Chaque modification incrémente un compteur de génération global, ce qui permet
+ * aux structures en mémoire (index de la KB) de savoir qu'elles doivent être reconstruites.
+ * Le compteur est à nouveau incrémenté à la fin de la transaction (commit ou rollback)
+ * afin qu'un index construit sur des données non validées ne survive pas.
+ * Une opération de masse qui valide la KB en plusieurs transactions (synchronisation par école, import CSV par lots)
+ * l'encadre par {@link #beginBatch()} / {@link #endBatch()} : la génération publiée reste figée pendant l'opération,
+ * les lecteurs continuent sur le snapshot précédent, et l'index n'est reconstruit qu'une fois, à la fin.
+ */
+public class KbChangeListener {
+
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private static final Object TX_KEY = new Object();
+
+    /**
+     * Nombre d'opérations de masse en cours et génération publiée pendant celles-ci (verrou : {@link #BATCH_LOCK}).
+     */
+    private static final Object BATCH_LOCK = new Object();
+    private static int batchDepth;
+    private static volatile long frozenGeneration = -1;
+
+    /**
+     * Retourne la génération courante de la Base de Connaissances.
+     *
+     * @return Un compteur strictement croissant à chaque modification.
+     */
+    public static long generation() {
+        long frozen = frozenGeneration;
+        return frozen >= 0 ? frozen : GENERATION.get();
+    }
+
+    /**
+     * Début d'une opération de masse : la génération publiée est figée jusqu'au {@link #endBatch()} correspondant
+     * (les opérations peuvent s'imbriquer ou se chevaucher : la dernière terminée publie).
+     */
+    public static void beginBatch() {
+        synchronized (BATCH_LOCK) {
+            if (batchDepth++ == 0) {
+                frozenGeneration = GENERATION.get();
+            }
+        }
+    }
+
+    /**
+     * Fin d'une opération de masse : les modifications validées pendant celle-ci sont publiées en une fois
+     * (la génération n'avance que si la KB a effectivement changé).
+     */
+    public static void endBatch() {
+        synchronized (BATCH_LOCK) {
+            if (batchDepth > 0 && --batchDepth == 0) {
+                frozenGeneration = -1;
+            }
+        }
+    }
+
+    /**
+     * Indique si la transaction courante a modifié la KB sans l'avoir encore validée.
+     *
+     * @return true si des modifications de la KB sont en attente dans la transaction courante.
+     */
+    public static boolean hasUncommittedChanges() {
+        return TransactionSynchronizationManager.hasResource(TX_KEY);
+    }
+
+    /**
+     * Signale une modification de la KB effectuée hors JPA (ex: import en masse).
+     */
+    public static void markChanged() {
+        GENERATION.incrementAndGet();
+        registerEndOfTransactionBump();
+    }
+
+    @PrePersist
+    @PreUpdate
+    @PreRemove
+    void onChange(Object entity) {
+        markChanged();
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    /**
+     * Enregistre (une seule fois par transaction) un incrément supplémentaire à la fin de la transaction.
+     */
+    private static void registerEndOfTransactionBump() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(TX_KEY)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(TX_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TX_KEY);
+                GENERATION.incrementAndGet();
+            }
+        });
+    }
+}
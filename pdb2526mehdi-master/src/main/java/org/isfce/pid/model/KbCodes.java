@@ -0,0 +1,36 @@
+package org.isfce.pid.model;
+
+import java.util.Locale;
+
+/**
+ * Normalisation des codes métier de la Base de Connaissances (codes d'école et de cours).
+ * La forme normalisée est stockée dans les colonnes {@code code_key} (indexées),
+ * ce qui permet des recherches insensibles à la casse sans appliquer {@code UPPER()} aux colonnes.
+ */
+public final class KbCodes {
+
+    private KbCodes() {
+    }
+
+    /**
+     * Normalise un code : espaces de début et de fin retirés, majuscules.
+     *
+     * @param raw Le code brut (ex: " info-f101 ").
+     * @return La clé normalisée (ex: "INFO-F101"), chaîne vide si null.
+     */
+    public static String normalize(String raw) {
+        return raw == null ? "" : raw.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Clé d'un cours dans toute la KB : codes normalisés de l'école et du cours, séparés par U+001F
+     * (séparateur d'unités, absent des codes saisis). Stockée dans la colonne {@code school_course_key}.
+     *
+     * @param schoolCode Le code brut de l'école (ex: "ulb").
+     * @param courseCode Le code brut du cours (ex: " info-f101 ").
+     * @return La clé du cours (ex: "ULB\u001FINFO-F101").
+     */
+    public static String courseKey(String schoolCode, String courseCode) {
+        return normalize(schoolCode) + '\u001F' + normalize(courseCode);
+    }
+}
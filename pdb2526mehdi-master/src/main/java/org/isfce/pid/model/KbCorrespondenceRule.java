@@ -14,6 +14,7 @@ import java.util.Set;
 @Getter
 @Setter
 @Entity
+@EntityListeners(KbChangeListener.class)
 @Table(name = "kb_correspondance_rule")
 @NoArgsConstructor
 @AllArgsConstructor
@@ -15,6 +15,7 @@ import lombok.*;
 @AllArgsConstructor
 @Builder
 @Entity
+@EntityListeners(KbChangeListener.class)
 @Table(name = "kb_rule_source")
 public class KbCorrespondenceRuleSource extends BaseEntity {
 
@@ -14,6 +14,7 @@ import lombok.*;
 @AllArgsConstructor
 @Builder
 @Entity
+@EntityListeners(KbChangeListener.class)
 @Table(name = "kb_rule_target")
 public class KbCorrespondenceRuleTarget extends BaseEntity {
 
@@ -15,9 +15,14 @@ import lombok.*;
 @AllArgsConstructor
 @Builder
 @Entity
+@EntityListeners(KbChangeListener.class)
 @Table(
         name = "kb_course",
-        uniqueConstraints = @UniqueConstraint(columnNames = {"ecole_id", "code"})
+        uniqueConstraints = @UniqueConstraint(columnNames = {"ecole_id", "code_key"}),
+        indexes = {
+                @Index(columnList = "code_key"),
+                @Index(columnList = "school_course_key", unique = true)
+        }
 )
 public class KbCourse extends BaseEntity {
 
@@ -36,6 +41,22 @@ public class KbCourse extends BaseEntity {
     @Column(nullable = false, length = 64)
     private String code;
 
+    /**
+     * Code normalisé (voir {@link KbCodes#normalize(String)}), recalculé avant chaque écriture.
+     * Sert de clé de recherche indexée : (école, code_key) est unique.
+     */
+    @Column(name = "code_key", nullable = false, length = 64)
+    @Setter(AccessLevel.NONE)
+    private String codeKey;
+
+    /**
+     * Clé du cours dans toute la KB, école comprise ({@link KbCodes#courseKey(String, String)}), recalculée
+     * avant chaque écriture. Permet de résoudre un lot de couples (école, code) exacts par un simple IN.
+     */
+    @Column(name = "school_course_key", nullable = false, length = 97)
+    @Setter(AccessLevel.NONE)
+    private String schoolCourseKey;
+
     /**
      * Libellé officiel du cours.
      */
@@ -52,4 +73,11 @@ public class KbCourse extends BaseEntity {
      * URL vers la fiche descriptive officielle du cours (facultatif).
      */
     private String urlProgramme;
+
+    @PrePersist
+    @PreUpdate
+    void normalizeKeys() {
+        codeKey = KbCodes.normalize(code);
+        schoolCourseKey = KbCodes.courseKey(ecole.getCode(), code);
+    }
 }
\ No newline at end of file
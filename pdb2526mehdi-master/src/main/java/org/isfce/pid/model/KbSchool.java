@@ -2,6 +2,11 @@ package org.isfce.pid.model;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 import jakarta.validation.constraints.NotBlank;
@@ -18,7 +23,8 @@ import lombok.*;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "kb_school", uniqueConstraints = @UniqueConstraint(columnNames = "code"))
+@EntityListeners(KbChangeListener.class)
+@Table(name = "kb_school", uniqueConstraints = @UniqueConstraint(columnNames = "code_key"))
 public class KbSchool extends BaseEntity {
 
     /**
@@ -29,6 +35,14 @@ public class KbSchool extends BaseEntity {
     @Column(nullable = false, length = 32)
     private String code;
 
+    /**
+     * Code normalisé (voir {@link KbCodes#normalize(String)}), recalculé avant chaque écriture.
+     * Clé de recherche unique et indexée.
+     */
+    @Column(name = "code_key", nullable = false, length = 32)
+    @Setter(AccessLevel.NONE)
+    private String codeKey;
+
     /**
      * Nom complet et officiel de l'établissement.
      */
@@ -40,4 +54,25 @@ public class KbSchool extends BaseEntity {
      * URL principale vers le catalogue de cours ou le site web de l'école.
      */
     private String urlProgramme;
+
+    /**
+     * Empreinte SHA-256 (hexadécimale) du contenu de l'école dans le fichier de la KB (cours et règles compris)
+     * lors de sa dernière synchronisation. Une école dont l'empreinte n'a pas changé n'est pas resynchronisée.
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * Origine de l'école : fichier de la KB ou import CSV.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @Builder.Default
+    private OrigineKb origine = OrigineKb.FICHIER;
+
+    @PrePersist
+    @PreUpdate
+    void normalizeKeys() {
+        codeKey = KbCodes.normalize(code);
+    }
 }
\ No newline at end of file
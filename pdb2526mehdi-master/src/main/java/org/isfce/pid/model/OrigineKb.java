@@ -0,0 +1,13 @@
+package org.isfce.pid.model;
+
+/**
+ * Énumération indiquant d'où provient une école de la Base de Connaissances ({@link KbSchool}).
+ * La synchronisation avec le fichier de la KB ne supprime que les écoles qu'elle gère elle-même.
+ */
+public enum OrigineKb {
+
+    FICHIER,	// École décrite dans le fichier de la KB (pid.kb.file) : le fichier fait foi, elle est supprimée s'il ne la contient plus.
+
+    CSV		// École créée par un import CSV (catalogue envoyé par l'établissement) : ignorée par la suppression des écoles absentes du fichier.
+
+}
@@ -1,30 +1,25 @@
 package org.isfce.pid.seed;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.isfce.pid.dao.IKbCorrespondenceRuleDao;
-import org.isfce.pid.dao.IKbCourseDao;
-import org.isfce.pid.dao.IKbSchoolDao;
-import org.isfce.pid.dao.IUeDao;
-import org.isfce.pid.model.*;
+import org.isfce.pid.dto.KbSyncReportDto;
+import org.isfce.pid.service.KnowledgeBaseService;
+import org.isfce.pid.service.KnowledgeBaseSyncService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Profile;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.io.InputStream;
-import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import jakarta.annotation.PostConstruct;
 
 /**
  * Composant de démarrage chargé d'initialiser la Base de Connaissances (Knowledge Base).
- * Ce chargeur lit un fichier JSON de configuration au lancement de l'application
- * pour peupler la base de données avec les écoles, cours et règles de correspondance par défaut.
+ * Ce chargeur synchronise au lancement de l'application la base de données avec le fichier JSON
+ * de configuration (écoles, cours et règles de correspondance) : une base vide est entièrement remplie,
+ * une base existante ne reçoit que les différences (voir {@link KnowledgeBaseSyncService}).
+ * Le chargement s'exécute en arrière-plan : le port HTTP sert immédiatement le catalogue des UE, les sections
+ * et les brouillons, tandis que les analyses répondent 503 et que la sonde de disponibilité reste OUT_OF_SERVICE
+ * jusqu'à la fin du chargement.
+ * Les modifications ultérieures du fichier sont prises en compte à chaud par {@link KnowledgeBaseWatcher}.
  */
 @Slf4j
 @Component
@@ -32,120 +27,50 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class KnowledgeBaseLoader implements CommandLineRunner {
 
-    private final ObjectMapper objectMapper;
-    private final IKbSchoolDao schoolDao;
-    private final IKbCourseDao courseDao;
-    private final IKbCorrespondenceRuleDao ruleDao;
-    private final IUeDao ueDao;
+    private final KnowledgeBaseSyncService syncService;
+    private final KnowledgeBaseService kbService;
 
-    // Records pour le mapping JSON
-    record JsonCourse(String code, String libelle, int ects) {
-    }
-
-    record JsonRule(String description, int minEcts, List<String> sources, List<String> cibles) {
-    }
-
-    record JsonSchool(String code, String nom, String site, List<JsonCourse> cours, List<JsonRule> regles) {
+    /**
+     * Marque la KB « en chargement » dès la création du contexte, avant l'ouverture du port HTTP.
+     */
+    @PostConstruct
+    public void init() {
+        kbService.loadingStarted();
     }
 
     /**
-     * Exécute le chargement des données au démarrage de l'application.
-     * Vérifie d'abord si la base est vide pour éviter d'écraser des données existantes.
+     * Lance la synchronisation en arrière-plan au démarrage de l'application.
      *
      * @param args Arguments de la ligne de commande (non utilisés).
      */
     @Override
-    @Transactional
     public void run(String... args) {
-        if (schoolDao.count() > 0) {
-            log.info("ℹ️ Base de connaissances déjà remplie. Le loader JSON est ignoré.");
-            return;
-        }
-
-        try {
-            log.info("🚀 Chargement de la Base de Connaissances depuis knowledge-base.json...");
-
-            InputStream inputStream = new ClassPathResource("knowledge-base.json").getInputStream();
-            List<JsonSchool> schoolsData = objectMapper.readValue(inputStream, new TypeReference<>() {
-            });
-
-            for (JsonSchool schoolData : schoolsData) {
-                processSchool(schoolData);
-            }
-
-            log.info("✅ Base de Connaissances initialisée avec succès !");
-
-        } catch (Exception e) {
-            log.error("❌ Erreur critique lors du chargement de la Knowledge Base", e);
-        }
+        Thread.ofVirtual().name("kb-loader").start(this::load);
     }
 
-    /**
-     * Traite les données d'une école, incluant ses cours et ses règles.
-     */
-    private void processSchool(JsonSchool data) {
-        KbSchool school = schoolDao.findByCodeIgnoreCase(data.code())
-                .orElseGet(() -> schoolDao.save(KbSchool.builder()
-                        .code(data.code())
-                        .etablissement(data.nom())
-                        .urlProgramme(data.site())
-                        .build()));
+    // ————— MÉTHODES PRIVÉES —————
 
-        log.info("   -> École chargée : {}", school.getEtablissement());
-
-        Map<String, KbCourse> courseMap = data.cours().stream()
-                .map(c -> createCourse(school, c))
-                .collect(Collectors.toMap(KbCourse::getCode, Function.identity()));
-
-        if (data.regles() != null) {
-            for (JsonRule ruleData : data.regles()) {
-                createRule(school, ruleData, courseMap);
+    private void load() {
+        try {
+            log.info("🚀 Chargement de la Base de Connaissances depuis {}...", syncService.kbResource().getDescription());
+            KbSyncReportDto report = syncService.syncFromFile();
+            if (report.getSchoolsFailed() == 0) {
+                log.info("✅ Base de Connaissances initialisée avec succès ({} règle(s) ajoutée(s), {} inchangée(s)) !",
+                        report.getRulesInserted(), report.getRulesUnchanged());
+            } else {
+                report.getSchools().stream()
+                        .filter(r -> !r.success())
+                        .forEach(r -> log.error("❌ École {} non chargée : {}", r.school(), r.message()));
+                log.warn("⚠️ Base de Connaissances initialisée partiellement : {} école(s) en erreur sur {}.",
+                        report.getSchoolsFailed(), report.getSchools().size());
             }
+        } catch (IllegalStateException e) {
+            // Fichier illisible : les écoles lues avant l'erreur sont chargées, l'application démarre quand même
+            log.error("❌ Erreur critique lors du chargement de la Knowledge Base", e);
+        } catch (RuntimeException e) {
+            log.error("❌ Chargement de la Knowledge Base interrompu", e);
+        } finally {
+            kbService.loadingFinished();
         }
     }
-
-    /**
-     * Crée ou récupère un cours externe associé à une école.
-     */
-    private KbCourse createCourse(KbSchool school, JsonCourse c) {
-        return courseDao.findByEcoleAndCodeIgnoreCase(school, c.code())
-                .orElseGet(() -> courseDao.save(KbCourse.builder()
-                        .ecole(school)
-                        .code(c.code())
-                        .libelle(c.libelle())
-                        .ects(c.ects())
-                        .urlProgramme(school.getUrlProgramme())
-                        .build()));
-    }
-
-    /**
-     * Crée une règle de correspondance entre des cours externes et des UEs internes.
-     */
-    private void createRule(KbSchool school, JsonRule r, Map<String, KbCourse> courseMap) {
-        KbCorrespondenceRule rule = KbCorrespondenceRule.builder()
-                .ecole(school)
-                .description(r.description())
-                .minTotalEcts(r.minEcts())
-                .build();
-
-        if (r.sources() != null) {
-            r.sources().forEach(sourceCode -> {
-                KbCourse course = courseMap.get(sourceCode);
-                if (course != null) {
-                    rule.addSource(KbCorrespondenceRuleSource.builder().rule(rule).cours(course).build());
-                } else {
-                    log.warn("⚠️ Cours source introuvable pour la règle '{}' : {}", r.description(), sourceCode);
-                }
-            });
-        }
-
-        if (r.cibles() != null) {
-            r.cibles().forEach(ueCode -> ueDao.findById(ueCode).ifPresentOrElse(
-                    ue -> rule.addTarget(KbCorrespondenceRuleTarget.builder().rule(rule).ue(ue).build()),
-                    () -> log.warn("⚠️ UE cible introuvable pour la règle '{}' : {}", r.description(), ueCode)
-            ));
-        }
-
-        ruleDao.save(rule);
-    }
-}
\ No newline at end of file
+}
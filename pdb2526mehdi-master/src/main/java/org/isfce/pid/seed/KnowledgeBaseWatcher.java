@@ -0,0 +1,121 @@
+package org.isfce.pid.seed;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import org.isfce.pid.config.KbProperties;
+import org.isfce.pid.service.KnowledgeBaseSyncService;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Surveille le fichier de la Base de Connaissances (pid.kb.file) et resynchronise la base dès qu'il change,
+ * sans redémarrage. Les modifications rapprochées sont regroupées (pid.kb.watch.debounce).
+ * La surveillance n'est possible que si le fichier est sur le système de fichiers (pas dans un jar) ;
+ * la synchronisation reste sinon disponible via l'API d'administration.
+ */
+@Slf4j
+@Component
+@Profile("!testU")
+@RequiredArgsConstructor
+public class KnowledgeBaseWatcher {
+
+    private final KnowledgeBaseSyncService syncService;
+    private final KbProperties properties;
+
+    private WatchService watchService;
+
+    /**
+     * Démarre la surveillance une fois l'application prête (après le chargement initial).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.getWatch().isEnabled()) {
+            return;
+        }
+        Resource resource = syncService.kbResource();
+        try {
+            if (!resource.isFile()) {
+                log.info("Fichier de la KB non surveillé (hors système de fichiers) : {}", resource.getDescription());
+                return;
+            }
+            Path file = resource.getFile().toPath().toAbsolutePath();
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            Thread.ofVirtual().name("kb-watcher").start(() -> watch(file));
+            log.info("Surveillance du fichier de la KB : {}", file);
+        } catch (IOException e) {
+            log.warn("⚠️ Impossible de surveiller le fichier de la KB {}", resource.getDescription(), e);
+        }
+    }
+
+    /**
+     * Arrête la surveillance (le thread se termine à la fermeture du WatchService).
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    private void watch(Path file) {
+        long debounceMs = properties.getWatch().getDebounce().toMillis();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = concerns(key, file);
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                // Attendre que les écritures cessent avant de relire le fichier
+                WatchKey next;
+                while ((next = watchService.poll(debounceMs, TimeUnit.MILLISECONDS)) != null) {
+                    next.pollEvents();
+                    next.reset();
+                }
+                reload();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Arrêt de l'application
+        }
+    }
+
+    private static boolean concerns(WatchKey key, Path file) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path changed && changed.equals(file.getFileName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reload() {
+        try {
+            log.info("🔄 Fichier de la KB modifié : synchronisation...");
+            syncService.syncFromFile();
+        } catch (RuntimeException e) {
+            // Fichier en cours d'édition ou invalide : la KB actuelle reste en place
+            log.error("❌ Synchronisation de la KB impossible, la KB actuelle est conservée", e);
+        }
+    }
+}
@@ -91,7 +91,7 @@ public class SeedData {
     private void seedComplexCases(KbSchool he2b, KbSchool ephec) {
         // --- Cas N vers 1 (Le Puzzle) : HE2B Algo 1 + Algo 2 -> IPAP ---
         // On réutilise le cours "1ALG1A" déjà créé plus haut, on crée juste le 2ème
-        KbCourse algo1 = courseDao.findByEcoleAndCodeIgnoreCase(he2b, "1ALG1A").orElseThrow();
+        KbCourse algo1 = courseDao.findByEcoleAndCodeKey(he2b, KbCodes.normalize("1ALG1A")).orElseThrow();
         KbCourse algo2 = createCourse(he2b, "2ALG2A", "Algo 2", 4);
 
         createComplexRule(he2b, 
@@ -121,7 +121,7 @@ public class SeedData {
     
     private KbCourse createCourse(KbSchool school, String code, String libelle, int ects) {
         // Vérifie si existe déjà pour éviter doublons si appel multiple
-        return courseDao.findByEcoleAndCodeIgnoreCase(school, code)
+        return courseDao.findByEcoleAndCodeKey(school, KbCodes.normalize(code))
                 .orElseGet(() -> courseDao.save(KbCourse.builder()
                         .ecole(school).code(code).libelle(libelle).ects(ects)
                         .urlProgramme("https://prog." + school.getCode() + ".be/" + code)
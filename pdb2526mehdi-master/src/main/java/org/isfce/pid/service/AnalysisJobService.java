@@ -0,0 +1,188 @@
+package org.isfce.pid.service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.isfce.pid.config.AnalysisProperties;
+import org.isfce.pid.controller.error.AnalysisQueueFullException;
+import org.isfce.pid.dto.AnalysisJobDto;
+import org.isfce.pid.dto.AnalysisJobDto.Status;
+import org.isfce.pid.dto.ExemptionRequestFullDto;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service d'analyse asynchrone des dossiers : l'analyse ({@link ExemptionService#analyzeRequest}) est confiée
+ * à un pool de threads borné au lieu d'occuper le thread de la requête HTTP, et son résultat est consulté ensuite
+ * par son identifiant.
+ * <p>
+ * La file d'attente est bornée (pid.analysis.async.queue-capacity) : quand elle est pleine, la demande est refusée
+ * ({@link AnalysisQueueFullException}, 429). Une seule analyse est en cours par dossier : une nouvelle demande pour
+ * un dossier déjà en file (ou en cours d'analyse) renvoie l'analyse existante. L'état des dernières analyses
+ * (pid.analysis.async.retained-jobs) est conservé en mémoire.
+ */
+@Slf4j
+@Service
+public class AnalysisJobService {
+
+    private final ExemptionService exemptionService;
+    private final KnowledgeBaseService kbService;
+    private final MessageSource messageSource;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Analyses consultables, de la plus ancienne à la plus récente (verrou de toutes les structures ci-dessous).
+     */
+    private final Map<UUID, Job> jobs;
+
+    /**
+     * Analyse en file ou en cours de chaque dossier.
+     */
+    private final Map<UUID, Job> activeJobs = new HashMap<>();
+
+    /**
+     * État d'une analyse ; modifié par le thread qui l'exécute, lu par les consultations.
+     */
+    private static final class Job {
+        private final UUID id = UUID.randomUUID();
+        private final UUID requestId;
+        private final Instant submittedAt = Instant.now();
+        private volatile Status status = Status.QUEUED;
+        private volatile Instant finishedAt;
+        private volatile ExemptionRequestFullDto result;
+        private volatile String error;
+
+        private Job(UUID requestId) {
+            this.requestId = requestId;
+        }
+
+        private AnalysisJobDto toDto() {
+            return AnalysisJobDto.builder()
+                    .jobId(id)
+                    .requestId(requestId)
+                    .status(status)
+                    .submittedAt(submittedAt)
+                    .finishedAt(finishedAt)
+                    .result(result)
+                    .error(error)
+                    .build();
+        }
+    }
+
+    public AnalysisJobService(ExemptionService exemptionService, KnowledgeBaseService kbService,
+                              MessageSource messageSource, AnalysisProperties properties) {
+        this.exemptionService = exemptionService;
+        this.kbService = kbService;
+        this.messageSource = messageSource;
+
+        AnalysisProperties.Async async = properties.getAsync();
+        int workers = Math.max(1, async.getWorkers());
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, async.getQueueCapacity())),
+                Thread.ofPlatform().name("analysis-", 1).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        int retained = Math.max(1, async.getRetainedJobs());
+        this.jobs = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Job> eldest) {
+                return size() > retained;
+            }
+        };
+    }
+
+    /**
+     * Met l'analyse d'un dossier en file d'attente.
+     *
+     * @param requestId Identifiant de la demande.
+     * @return L'état de l'analyse créée, ou celui de l'analyse déjà en file pour ce dossier.
+     * @throws org.isfce.pid.controller.error.KbUnavailableException Si la KB est en cours de chargement.
+     * @throws AnalysisQueueFullException Si la file d'attente est pleine.
+     */
+    public AnalysisJobDto submit(UUID requestId) {
+        kbService.requireLoaded();
+        Locale locale = LocaleContextHolder.getLocale();
+        synchronized (jobs) {
+            Job active = activeJobs.get(requestId);
+            if (active != null) {
+                return active.toDto();
+            }
+            Job job = new Job(requestId);
+            try {
+                executor.execute(() -> run(job, locale));
+            } catch (RejectedExecutionException e) {
+                throw new AnalysisQueueFullException(
+                        messageSource.getMessage("err.analysisJob.queueFull", null, locale));
+            }
+            jobs.put(job.id, job);
+            activeJobs.put(requestId, job);
+            return job.toDto();
+        }
+    }
+
+    /**
+     * Consulte l'état d'une analyse.
+     *
+     * @param jobId Identifiant de l'analyse.
+     * @return L'état de l'analyse, avec le dossier analysé une fois terminée.
+     * @throws NoSuchElementException Si l'analyse est inconnue (ou trop ancienne pour être encore conservée).
+     */
+    public AnalysisJobDto getJob(UUID jobId) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        if (job == null) {
+            throw new NoSuchElementException(messageSource.getMessage("err.analysisJob.notFound", null,
+                    LocaleContextHolder.getLocale()));
+        }
+        return job.toDto();
+    }
+
+    /**
+     * Termine les analyses en cours à l'arrêt de l'application ; celles encore en file sont abandonnées.
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    /**
+     * Exécute une analyse sur un thread du pool, dans la langue de la requête qui l'a demandée.
+     */
+    private void run(Job job, Locale locale) {
+        LocaleContextHolder.setLocale(locale);
+        job.status = Status.RUNNING;
+        try {
+            job.result = exemptionService.analyzeRequest(job.requestId);
+            job.finishedAt = Instant.now();
+            job.status = Status.DONE; // publié en dernier : un état terminé est toujours complet
+        } catch (RuntimeException e) {
+            log.warn("Analyse asynchrone : échec du dossier {} : {}", job.requestId, e.getMessage());
+            job.error = e.getMessage();
+            job.finishedAt = Instant.now();
+            job.status = Status.FAILED;
+        } finally {
+            synchronized (jobs) {
+                activeJobs.remove(job.requestId, job);
+            }
+            LocaleContextHolder.resetLocaleContext();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.isfce.pid.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.isfce.pid.config.AnalysisProperties;
+import org.isfce.pid.dto.ExemptionRequestFullDto;
+import org.isfce.pid.model.ExternalCourse;
+import org.isfce.pid.model.KbCodes;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Mémoïsation du dernier résultat d'analyse de chaque brouillon.
+ * Le résultat est rangé sous une empreinte des cours externes du dossier (établissement, code, ECTS) et de la
+ * version de la KB : tant que l'empreinte est identique, une nouvelle analyse produirait le même dossier et
+ * {@link ExemptionService#analyzeRequest} le renvoie sans relancer le moteur ni écrire en base.
+ * <p>
+ * Toute modification d'un brouillon (cours, documents, lignes de dispense, soumission, suppression) invalide
+ * son entrée. Un résultat n'est rangé qu'après la validation de la transaction qui l'a produit, et seulement
+ * si aucune modification du dossier n'a commencé depuis le début de l'analyse ({@link #stamp(UUID)}) :
+ * l'empreinte ne couvre que les cours, une analyse concurrente d'un ajout de document ou de ligne de dispense
+ * réinstallerait sinon un dossier périmé.
+ * LRU borné par pid.analysis.cache-size ; compteurs {@code pid.analysis.cache} (tag result=hit|miss).
+ */
+@Component
+public class AnalysisResultCache {
+
+    private record Entry(String fingerprint, ExemptionRequestFullDto result) {
+    }
+
+    /**
+     * Compteurs de modifications des dossiers, répartis par hachage de l'id (taille bornée ; une collision
+     * ne fait qu'écarter un résultat de plus).
+     */
+    private static final int STRIPES = 1024;
+
+    private final Map<UUID, Entry> entries;
+    private final AtomicLongArray modifications = new AtomicLongArray(STRIPES);
+    private final Counter hits;
+    private final Counter misses;
+
+    public AnalysisResultCache(AnalysisProperties properties, MeterRegistry registry) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                return size() > properties.getCacheSize();
+            }
+        };
+        this.hits = Counter.builder("pid.analysis.cache")
+                .description("Analyses de dossiers servies par la mémoïsation")
+                .tag("result", "hit")
+                .register(registry);
+        this.misses = Counter.builder("pid.analysis.cache")
+                .description("Analyses de dossiers servies par la mémoïsation")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /**
+     * Empreinte SHA-256 des cours d'un dossier (établissement et code normalisés, ECTS), indépendante de
+     * leur ordre, et de la version de la KB sur laquelle l'analyse est faite.
+     *
+     * @param courses   Les cours externes du dossier.
+     * @param kbVersion Version courante de la KB.
+     */
+    public String fingerprint(Collection<ExternalCourse> courses, long kbVersion) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Long.toString(kbVersion).getBytes(StandardCharsets.UTF_8));
+            courses.stream()
+                    .map(c -> KbCodes.normalize(c.getEtablissement()) + "\u0001" + KbCodes.normalize(c.getCode())
+                            + "\u0001" + c.getEcts())
+                    .sorted()
+                    .forEach(line -> digest.update(("\u0000" + line).getBytes(StandardCharsets.UTF_8)));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 est toujours disponible
+        }
+    }
+
+    /**
+     * Compteur de modifications du dossier, à relever avant de lire le dossier à analyser.
+     *
+     * @param requestId Identifiant de la demande.
+     * @return La valeur à repasser à {@link #put}.
+     */
+    public long stamp(UUID requestId) {
+        return modifications.get(stripe(requestId));
+    }
+
+    /**
+     * Dernier résultat d'analyse du dossier, s'il a été calculé sous la même empreinte.
+     */
+    public Optional<ExemptionRequestFullDto> get(UUID requestId, String fingerprint) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(requestId);
+        }
+        if (entry != null && entry.fingerprint().equals(fingerprint)) {
+            hits.increment();
+            return Optional.of(entry.result());
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Range le résultat d'une analyse, une fois la transaction courante validée (rien n'est rangé en cas de rollback).
+     * Le résultat est écarté si le dossier a été modifié depuis {@link #stamp(UUID)}.
+     *
+     * @param stamp Compteur relevé avant la lecture du dossier analysé.
+     */
+    public void put(UUID requestId, String fingerprint, ExemptionRequestFullDto result, long stamp) {
+        afterCommit(() -> {
+            synchronized (entries) {
+                if (modifications.get(stripe(requestId)) == stamp) {
+                    entries.put(requestId, new Entry(fingerprint, result));
+                }
+            }
+        });
+    }
+
+    /**
+     * Oublie le résultat d'un dossier modifié, immédiatement et à nouveau après la validation de la transaction.
+     * Chaque passage incrémente le compteur du dossier : une analyse qui a lu le dossier avant la validation
+     * de la modification ne range pas son résultat ({@link #put}).
+     */
+    public void invalidate(UUID requestId) {
+        Runnable remove = () -> {
+            synchronized (entries) {
+                modifications.incrementAndGet(stripe(requestId));
+                entries.remove(requestId);
+            }
+        };
+        remove.run();
+        afterCommit(remove);
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    private static int stripe(UUID requestId) {
+        return (requestId.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
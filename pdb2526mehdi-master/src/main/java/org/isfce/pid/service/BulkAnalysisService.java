@@ -0,0 +1,250 @@
+package org.isfce.pid.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.isfce.pid.config.AnalysisProperties;
+import org.isfce.pid.dao.IExemptionRequestDao;
+import org.isfce.pid.dto.AnalysisJobDto.Status;
+import org.isfce.pid.dto.BulkAnalysisJobDto;
+import org.isfce.pid.dto.BulkAnalysisReportDto;
+import org.isfce.pid.model.StatutDemande;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service d'analyse en masse des brouillons (ex: relance du moteur de règles en début de quadrimestre).
+ * Les identifiants des brouillons sont lus page par page (par curseur sur l'id), puis chaque dossier est analysé
+ * sur un thread virtuel, dans sa propre transaction, contre l'index partagé (lecture seule) de la KB.
+ * Le parallélisme est borné par un sémaphore afin de ne pas épuiser le pool de connexions.
+ * Un dossier en erreur est consigné dans le rapport sans interrompre le traitement.
+ * <p>
+ * L'analyse s'exécute en arrière-plan ({@link #submit()}) et son rapport est consulté ensuite par son identifiant,
+ * comme pour les analyses asynchrones d'un dossier ({@link AnalysisJobService}). Une seule analyse en masse est
+ * en cours à la fois ; l'état des dernières (pid.analysis.bulk.retained-runs) est conservé en mémoire.
+ */
+@Slf4j
+@Service
+public class BulkAnalysisService {
+
+    private final IExemptionRequestDao reqDao;
+    private final ExemptionService exemptionService;
+    private final KnowledgeBaseService kbService;
+    private final AnalysisProperties properties;
+    private final MessageSource messageSource;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("bulk-analysis-", 1).daemon().factory());
+
+    /**
+     * Analyses consultables, de la plus ancienne à la plus récente (verrou de toutes les structures ci-dessous).
+     */
+    private final Map<UUID, Job> jobs;
+
+    /**
+     * Analyse en file ou en cours (null si aucune).
+     */
+    private Job activeJob;
+
+    /**
+     * État d'une analyse en masse ; modifié par le thread qui l'exécute, lu par les consultations.
+     */
+    private static final class Job {
+        private final UUID id = UUID.randomUUID();
+        private final Instant submittedAt = Instant.now();
+        private volatile Status status = Status.QUEUED;
+        private volatile Instant finishedAt;
+        private volatile BulkAnalysisReportDto report;
+        private volatile String error;
+
+        private BulkAnalysisJobDto toDto() {
+            return BulkAnalysisJobDto.builder()
+                    .jobId(id)
+                    .status(status)
+                    .submittedAt(submittedAt)
+                    .finishedAt(finishedAt)
+                    .report(report)
+                    .error(error)
+                    .build();
+        }
+    }
+
+    public BulkAnalysisService(IExemptionRequestDao reqDao, ExemptionService exemptionService,
+                               KnowledgeBaseService kbService, AnalysisProperties properties,
+                               MessageSource messageSource) {
+        this.reqDao = reqDao;
+        this.exemptionService = exemptionService;
+        this.kbService = kbService;
+        this.properties = properties;
+        this.messageSource = messageSource;
+
+        int retained = Math.max(1, properties.getBulk().getRetainedRuns());
+        this.jobs = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Job> eldest) {
+                return size() > retained;
+            }
+        };
+    }
+
+    /**
+     * Lance en arrière-plan la relance du moteur de règles sur tous les brouillons.
+     *
+     * @return L'état de l'analyse créée, ou celui de l'analyse en masse déjà en cours.
+     * @throws org.isfce.pid.controller.error.KbUnavailableException Si la KB est en cours de chargement.
+     */
+    public BulkAnalysisJobDto submit() {
+        kbService.requireLoaded();
+        Locale locale = LocaleContextHolder.getLocale();
+        synchronized (jobs) {
+            if (activeJob != null) {
+                return activeJob.toDto();
+            }
+            Job job = new Job();
+            executor.execute(() -> run(job, locale));
+            jobs.put(job.id, job);
+            activeJob = job;
+            return job.toDto();
+        }
+    }
+
+    /**
+     * Consulte l'état d'une analyse en masse.
+     *
+     * @param jobId Identifiant de l'analyse.
+     * @return L'état de l'analyse, avec son rapport une fois terminée.
+     * @throws NoSuchElementException Si l'analyse est inconnue (ou trop ancienne pour être encore conservée).
+     */
+    public BulkAnalysisJobDto getJob(UUID jobId) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        if (job == null) {
+            throw new NoSuchElementException(messageSource.getMessage("err.bulkAnalysis.notFound", null,
+                    LocaleContextHolder.getLocale()));
+        }
+        return job.toDto();
+    }
+
+    /**
+     * Relance le moteur de règles sur tous les brouillons, sur le thread appelant (exécuté par {@link #submit()}).
+     * Volontairement non transactionnel : chaque dossier est traité dans sa propre transaction
+     * ({@link ExemptionService#reanalyzeDraft(UUID)}).
+     *
+     * @return Le rapport de l'analyse (volume, débit, erreurs).
+     * @throws org.isfce.pid.controller.error.KbUnavailableException Si la KB est en cours de chargement.
+     */
+    public BulkAnalysisReportDto analyzeAllDrafts() {
+        kbService.requireLoaded();
+        int pageSize = Math.max(1, properties.getBulk().getPageSize());
+        int parallelism = Math.max(1, properties.getBulk().getParallelism());
+        Semaphore permits = new Semaphore(parallelism);
+
+        AtomicInteger analyzed = new AtomicInteger();
+        AtomicInteger itemsCreated = new AtomicInteger();
+        ConcurrentLinkedQueue<BulkAnalysisReportDto.Failure> failures = new ConcurrentLinkedQueue<>();
+        int scanned = 0;
+        // Les threads virtuels n'héritent pas de la langue : messages d'erreur dans celle de la demande
+        Locale locale = LocaleContextHolder.getLocale();
+
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<UUID> page = reqDao.findIdsByStatut(StatutDemande.DRAFT, Limit.of(pageSize));
+            while (true) {
+                for (UUID id : page) {
+                    permits.acquireUninterruptibly();
+                    scanned++;
+                    workers.execute(() -> {
+                        LocaleContextHolder.setLocale(locale);
+                        try {
+                            itemsCreated.addAndGet(exemptionService.reanalyzeDraft(id));
+                            analyzed.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            log.warn("Analyse en masse : échec du dossier {} : {}", id, e.getMessage());
+                            failures.add(new BulkAnalysisReportDto.Failure(id, e.getMessage()));
+                        } finally {
+                            permits.release();
+                            LocaleContextHolder.resetLocaleContext();
+                        }
+                    });
+                }
+                if (page.size() < pageSize) {
+                    break;
+                }
+                // Curseur sur le dernier id lu : un brouillon soumis entre deux pages ne décale pas les suivants
+                page = reqDao.findIdsByStatutAfter(StatutDemande.DRAFT, page.get(page.size() - 1), Limit.of(pageSize));
+            }
+        } // close() attend la fin de toutes les analyses
+
+        long durationMs = (System.nanoTime() - start) / 1_000_000;
+        int processed = analyzed.get() + failures.size();
+        double throughput = durationMs > 0 ? processed * 1000.0 / durationMs : processed;
+
+        log.info("Analyse en masse terminée : {} dossier(s), {} échec(s), {} dispense(s) créée(s) en {} ms ({} dossiers/s).",
+                processed, failures.size(), itemsCreated.get(), durationMs, String.format("%.1f", throughput));
+
+        return BulkAnalysisReportDto.builder()
+                .scanned(scanned)
+                .analyzed(analyzed.get())
+                .failed(failures.size())
+                .itemsCreated(itemsCreated.get())
+                .durationMs(durationMs)
+                .requestsPerSecond(throughput)
+                .failures(new ArrayList<>(failures))
+                .build();
+    }
+
+    /**
+     * Termine l'analyse en cours à l'arrêt de l'application.
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    /**
+     * Exécute une analyse en masse en arrière-plan, dans la langue de la requête qui l'a demandée.
+     */
+    private void run(Job job, Locale locale) {
+        LocaleContextHolder.setLocale(locale);
+        job.status = Status.RUNNING;
+        try {
+            job.report = analyzeAllDrafts();
+            job.finishedAt = Instant.now();
+            job.status = Status.DONE; // publié en dernier : un état terminé est toujours complet
+        } catch (RuntimeException e) {
+            log.warn("Analyse en masse interrompue : {}", e.getMessage());
+            job.error = e.getMessage();
+            job.finishedAt = Instant.now();
+            job.status = Status.FAILED;
+        } finally {
+            synchronized (jobs) {
+                if (activeJob == job) {
+                    activeJob = null;
+                }
+            }
+            LocaleContextHolder.resetLocaleContext();
+        }
+    }
+}
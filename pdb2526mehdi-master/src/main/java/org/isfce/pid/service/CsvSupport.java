@@ -0,0 +1,97 @@
+package org.isfce.pid.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Outils de lecture des fichiers CSV envoyés à l'application (catalogues de la KB, relevés de notes).
+ * Format accepté : ligne d'en-tête, séparateur ";" ou "," (détecté sur l'en-tête), champs éventuellement
+ * entre guillemets (sur une seule ligne, guillemet doublé pour un guillemet littéral), BOM UTF-8 toléré.
+ */
+final class CsvSupport {
+
+    private CsvSupport() {
+    }
+
+    /**
+     * Retire l'éventuel BOM UTF-8 de la ligne d'en-tête.
+     */
+    static String stripBom(String header) {
+        return header.startsWith("\uFEFF") ? header.substring(1) : header;
+    }
+
+    /**
+     * Séparateur du fichier, détecté sur l'en-tête (";" s'il est présent, sinon ",").
+     */
+    static char separator(String header) {
+        return header.indexOf(';') >= 0 ? ';' : ',';
+    }
+
+    /**
+     * Position des colonnes de l'en-tête, indexées par nom simplifié (minuscules, sans accents ni ponctuation).
+     */
+    static Map<String, Integer> columns(List<String> header) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String name = Normalizer.normalize(header.get(i), Normalizer.Form.NFD)
+                    .replaceAll("[^\\p{Alnum}]", "")
+                    .toLowerCase(Locale.ROOT);
+            columns.putIfAbsent(name, i);
+        }
+        return columns;
+    }
+
+    /**
+     * Valeur d'un champ (sans espaces de début et de fin), ou null si la colonne est absente ou le champ vide.
+     */
+    static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Découpe une ligne CSV : champs éventuellement entre guillemets, guillemet doublé pour un guillemet littéral.
+     *
+     * @param quoteError Message de l'erreur levée si un guillemet n'est pas fermé.
+     * @throws IllegalArgumentException Si un guillemet n'est pas fermé.
+     */
+    static List<String> split(String line, char separator, Supplier<String> quoteError) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException(quoteError.get());
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+}
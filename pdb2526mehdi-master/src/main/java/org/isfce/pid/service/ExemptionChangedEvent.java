@@ -0,0 +1,13 @@
+package org.isfce.pid.service;
+
+import org.isfce.pid.dto.ExemptionChangeDto;
+
+/**
+ * Événement applicatif publié par la couche service quand un dossier ou l'une de ses lignes de dispense change.
+ * Il n'est diffusé aux clients qu'après la validation de la transaction ({@link ExemptionEventBroadcaster}).
+ *
+ * @param studentEmail Email de l'étudiant propriétaire du dossier (destinataire de l'événement).
+ * @param change       Le changement, tel qu'il est envoyé au client.
+ */
+public record ExemptionChangedEvent(String studentEmail, ExemptionChangeDto change) {
+}
@@ -0,0 +1,196 @@
+package org.isfce.pid.service;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.isfce.pid.config.EventsProperties;
+import org.isfce.pid.dto.ExemptionChangeDto;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Diffuse aux étudiants connectés (Server-Sent Events) les changements de leurs dossiers.
+ * <p>
+ * Une connexion inactive ne coûte qu'un {@link SseEmitter} en mémoire : la requête est en mode asynchrone,
+ * aucun thread n'est réservé. Les événements sont reçus après la validation de la transaction qui les a produits
+ * ({@link ExemptionChangedEvent}) et déposés, sans attente, dans la file de chaque connexion de l'étudiant ;
+ * chaque file est vidée dans l'ordre par un thread virtuel démarré à la demande, si bien qu'un client lent ne
+ * ralentit ni la transaction ni les autres clients. Une connexion dont la file déborde (pid.events.max-pending)
+ * ou dont l'écriture échoue est fermée ; le navigateur se reconnecte et relit ses dossiers.
+ */
+@Slf4j
+@Component
+public class ExemptionEventBroadcaster {
+
+    static final String EVENT_NAME = "exemption-change";
+
+    private final EventsProperties properties;
+
+    /**
+     * Connexions ouvertes, par email d'étudiant (normalisé).
+     */
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService heartbeat =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("sse-heartbeat").daemon().factory());
+
+    public ExemptionEventBroadcaster(EventsProperties properties) {
+        this.properties = properties;
+        long period = Math.max(1, properties.getHeartbeat().toMillis());
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeat, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ouvre un flux d'événements pour un étudiant.
+     *
+     * @param email Email de l'étudiant.
+     * @return Le flux, fermé à l'expiration de pid.events.timeout (le client se reconnecte).
+     */
+    public SseEmitter subscribe(String email) {
+        String key = key(email);
+        SseEmitter emitter = new SseEmitter(properties.getTimeout().toMillis());
+        Subscriber subscriber = new Subscriber(key, emitter);
+        emitter.onCompletion(subscriber::remove);
+        emitter.onTimeout(subscriber::remove);
+        emitter.onError(e -> subscriber.remove());
+        // Ajout atomique avec remove() : un ensemble vidé et retiré de la map ne peut pas recevoir l'abonné
+        subscribers.compute(key, (k, set) -> {
+            Set<Subscriber> s = set != null ? set : ConcurrentHashMap.newKeySet();
+            s.add(subscriber);
+            return s;
+        });
+        return emitter;
+    }
+
+    /**
+     * Transmet un changement validé aux connexions de l'étudiant concerné (sans attendre l'envoi).
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onExemptionChanged(ExemptionChangedEvent event) {
+        Set<Subscriber> targets = subscribers.get(key(event.studentEmail()));
+        if (targets != null) {
+            targets.forEach(s -> s.offer(event.change()));
+        }
+    }
+
+    /**
+     * @return Le nombre de connexions ouvertes.
+     */
+    public int connectionCount() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Ferme toutes les connexions à l'arrêt de l'application.
+     */
+    @PreDestroy
+    void shutdown() {
+        heartbeat.shutdownNow();
+        subscribers.values().forEach(set -> set.forEach(Subscriber::close));
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    private void sendHeartbeat() {
+        subscribers.values().forEach(set -> set.forEach(s -> s.offer(null)));
+    }
+
+    private static String key(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Connexion d'un étudiant et sa file d'envoi (changements et commentaires de maintien).
+     */
+    private final class Subscriber {
+        private final String key;
+        private final SseEmitter emitter;
+        private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Subscriber(String key, SseEmitter emitter) {
+            this.key = key;
+            this.emitter = emitter;
+        }
+
+        /**
+         * @param change Le changement à envoyer, ou null pour un commentaire de maintien.
+         */
+        private void offer(ExemptionChangeDto change) {
+            if (closed) {
+                return;
+            }
+            if (pendingCount.incrementAndGet() > properties.getMaxPending()) {
+                log.debug("Flux d'événements de {} fermé : client trop lent.", key);
+                close();
+                return;
+            }
+            pending.add(change != null ? change : Heartbeat.INSTANCE);
+            drain();
+        }
+
+        private void drain() {
+            if (draining.compareAndSet(false, true)) {
+                Thread.ofVirtual().name("sse-send").start(this::sendPending);
+            }
+        }
+
+        private void sendPending() {
+            try {
+                Object next;
+                while (!closed && (next = pending.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    emitter.send(next instanceof ExemptionChangeDto change
+                            ? SseEmitter.event().name(EVENT_NAME).data(change)
+                            : SseEmitter.event().comment("ping"));
+                }
+            } catch (IOException | IllegalStateException e) {
+                remove(); // client parti ou flux déjà terminé : le conteneur clôt la requête
+                return;
+            } finally {
+                draining.set(false);
+            }
+            // Un événement a pu arriver entre la fin de la boucle et la libération du verrou
+            if (!closed && !pending.isEmpty()) {
+                drain();
+            }
+        }
+
+        private void close() {
+            remove();
+            emitter.complete();
+        }
+
+        private void remove() {
+            closed = true;
+            subscribers.computeIfPresent(key, (k, set) -> {
+                set.remove(this);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    /**
+     * Marqueur de commentaire de maintien dans une file d'envoi.
+     */
+    private enum Heartbeat {
+        INSTANCE
+    }
+}
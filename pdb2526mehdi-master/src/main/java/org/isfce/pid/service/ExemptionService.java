@@ -1,11 +1,17 @@
 package org.isfce.pid.service;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
+import org.isfce.pid.config.KbProperties;
 import org.isfce.pid.controller.error.DuplicateException;
 import org.isfce.pid.dao.IExemptionItemDao;
 import org.isfce.pid.dao.IExemptionRequestDao;
@@ -15,28 +21,39 @@ import org.isfce.pid.dao.ISupportingDocumentDao;
 import org.isfce.pid.dao.IUeDao;
 import org.isfce.pid.dto.AddCourseDocumentDto;
 import org.isfce.pid.dto.AddExternalCourseDto;
+import org.isfce.pid.dto.AddExternalCoursesDto;
 import org.isfce.pid.dto.AddManualExemptionItemDto;
 import org.isfce.pid.dto.AddSupportingDocumentDto;
 import org.isfce.pid.dto.CreateExemptionRequestDto;
+import org.isfce.pid.dto.ExemptionChangeDto;
+import org.isfce.pid.dto.ExemptionChangeDto.Type;
 import org.isfce.pid.dto.ExemptionRequestDto;
 import org.isfce.pid.dto.ExemptionRequestFullDto;
 import org.isfce.pid.dto.ExternalCourseDto;
+import org.isfce.pid.dto.ExternalCourseKeyDto;
+import org.isfce.pid.dto.ExternalCoursesAddedDto;
+import org.isfce.pid.dto.SimulatedMatchDto;
+import org.isfce.pid.dto.SimulationCourseDto;
+import org.isfce.pid.dto.SubmissionCheckDto;
 import org.isfce.pid.dto.SupportingDocumentDto;
 import org.isfce.pid.mapper.ExemptionMapper;
 import org.isfce.pid.model.DecisionItem;
 import org.isfce.pid.model.ExemptionItem;
 import org.isfce.pid.model.ExemptionRequest;
 import org.isfce.pid.model.ExternalCourse;
-import org.isfce.pid.model.KbCorrespondenceRuleTarget;
+import org.isfce.pid.model.KbCodes;
 import org.isfce.pid.model.Section;
 import org.isfce.pid.model.StatutDemande;
 import org.isfce.pid.model.Student;
 import org.isfce.pid.model.SupportingDocument;
 import org.isfce.pid.model.TypeDocument;
 import org.isfce.pid.model.UE;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.MessageSource;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import lombok.RequiredArgsConstructor;
@@ -64,8 +81,11 @@ public class ExemptionService {
 
     private final StudentService studentService;
     private final KnowledgeBaseService kbService;
+    private final AnalysisResultCache analysisCache;
     private final ExemptionMapper mapper;
     private final MessageSource messageSource;
+    private final KbProperties kbProperties;
+    private final ApplicationEventPublisher events;
 
     /**
      * Crée une nouvelle demande de dispense à l'état de brouillon.
@@ -86,39 +106,75 @@ public class ExemptionService {
                 .statut(StatutDemande.DRAFT)
                 .build();
 
-        return mapper.toExemptionRequestDto(reqDao.save(req));
+        ExemptionRequest saved = reqDao.save(req);
+        publish(saved, ExemptionChangeDto.of(Type.REQUEST_CREATED, saved));
+        return mapper.toExemptionRequestDto(saved);
     }
 
     /**
      * Ajoute un cours externe (réussi dans un autre établissement) au dossier en cours.
+     * Le doublon (même établissement et même code, casse ignorée) est détecté par l'index unique
+     * (demande, établissement, code) : ni chargement des cours du dossier, ni double ajout concurrent possible.
      *
      * @param requestId Identifiant de la demande.
      * @param dto       Détails du cours externe (Code, ECTS, Libellé...).
      * @return Le DTO du cours externe ajouté.
+     * @throws DuplicateException Si le cours figure déjà dans le dossier.
      */
     public ExternalCourseDto addExternalCourse(UUID requestId, AddExternalCourseDto dto) {
-        ExemptionRequest req = getDraftOrThrow(requestId);
+        ExemptionRequest req = getDraftForUpdate(requestId);
 
-        // --- Vérification anti-doublon ---
-        boolean exists = req.getExternalCourses().stream()
-                .anyMatch(c -> c.getCode().equalsIgnoreCase(dto.getCode()) 
-                            && c.getEtablissement().equalsIgnoreCase(dto.getEtablissement()));
+        // --- Vérification anti-doublon (requête sur l'index unique) ---
+        if (extCourseDao.existsByRequestIdAndEtablissementKeyAndCodeKey(req.getId(),
+                KbCodes.normalize(dto.getEtablissement()), KbCodes.normalize(dto.getCode()))) {
+            throw new DuplicateException(msg("err.externalCourse.duplicate"), "code");
+        }
 
-        if (exists) {
-           
+        try {
+            ExternalCourse saved = extCourseDao.save(toExternalCourse(req, dto));
+            extCourseDao.flush(); // un ajout concurrent du même cours est refusé ici par la contrainte unique
+            return mapper.toExternalCourseDto(saved);
+        } catch (DataIntegrityViolationException e) {
             throw new DuplicateException(msg("err.externalCourse.duplicate"), "code");
         }
+    }
 
-        ExternalCourse course = ExternalCourse.builder()
-                .request(req)
-                .etablissement(dto.getEtablissement())
-                .code(dto.getCode())
-                .libelle(dto.getLibelle())
-                .ects(dto.getEcts())
-                .urlProgramme(dto.getUrlProgramme())
-                .build();
+    /**
+     * Ajoute en une fois plusieurs cours externes au dossier (ex: relevé de notes complet).
+     * Une seule requête lit les clés des cours déjà présents, puis tous les nouveaux cours sont insérés
+     * dans la même transaction (insertions regroupées en lots JDBC).
+     * Un cours déjà présent dans le dossier, ou répété dans la liste, est refusé et signalé sans bloquer les autres.
+     *
+     * @param requestId Identifiant de la demande.
+     * @param dto       Les cours à ajouter.
+     * @return Les cours ajoutés et les cours refusés (avec leur position dans la liste).
+     * @throws DuplicateException Si un ajout concurrent a inséré entre-temps l'un des cours (rien n'est ajouté).
+     */
+    public ExternalCoursesAddedDto addExternalCourses(UUID requestId, AddExternalCoursesDto dto) {
+        ExemptionRequest req = getDraftForUpdate(requestId);
+        Set<ExternalCourseKeyDto> keys = new HashSet<>(extCourseDao.findKeysByRequestId(req.getId()));
+
+        List<ExternalCourse> courses = new ArrayList<>();
+        List<ExternalCoursesAddedDto.RowError> errors = new ArrayList<>();
+        for (int i = 0; i < dto.getCourses().size(); i++) {
+            AddExternalCourseDto course = dto.getCourses().get(i);
+            ExternalCourseKeyDto key = new ExternalCourseKeyDto(
+                    KbCodes.normalize(course.getEtablissement()), KbCodes.normalize(course.getCode()));
+            if (!keys.add(key)) {
+                errors.add(new ExternalCoursesAddedDto.RowError(i, course.getCode(),
+                        msg("err.externalCourse.duplicateCode", course.getEtablissement(), course.getCode())));
+                continue;
+            }
+            courses.add(toExternalCourse(req, course));
+        }
 
-        return mapper.toExternalCourseDto(extCourseDao.save(course));
+        try {
+            List<ExternalCourse> saved = extCourseDao.saveAll(courses);
+            extCourseDao.flush();
+            return new ExternalCoursesAddedDto(saved.stream().map(mapper::toExternalCourseDto).toList(), errors);
+        } catch (DataIntegrityViolationException e) {
+            throw new DuplicateException(msg("err.externalCourse.duplicate"), "code");
+        }
     }
 
     /**
@@ -129,7 +185,7 @@ public class ExemptionService {
      * @return Le DTO du document sauvegardé.
      */
     public SupportingDocumentDto addGlobalDocument(UUID requestId, AddSupportingDocumentDto dto) {
-        ExemptionRequest req = getDraftOrThrow(requestId);
+        ExemptionRequest req = getDraftForUpdate(requestId);
 
         SupportingDocument d = SupportingDocument.builder()
                 .request(req)
@@ -156,6 +212,7 @@ public class ExemptionService {
         if (course.getRequest().getStatut() != StatutDemande.DRAFT) {
             throw new IllegalStateException(msg("err.request.locked", course.getRequest().getStatut()));
         }
+        analysisCache.invalidate(course.getRequest().getId());
 
         SupportingDocument d = SupportingDocument.builder()
                 .externalCourse(course)
@@ -176,7 +233,7 @@ public class ExemptionService {
      * @throws SecurityException Si l'étudiant tente d'utiliser des cours n'appartenant pas à sa demande.
      */
     public ExemptionRequestFullDto addManualItem(UUID requestId, AddManualExemptionItemDto dto) {
-        ExemptionRequest req = getDraftOrThrow(requestId);
+        ExemptionRequest req = getDraftForUpdate(requestId);
 
         UE ue = ueDao.findById(dto.getUeCode())
                 .orElseThrow(() -> new IllegalArgumentException(msg("err.ue.notFound", dto.getUeCode())));
@@ -214,44 +271,87 @@ public class ExemptionService {
             req.setItems(new HashSet<>());
         }
         req.getItems().add(item);
+        publish(req, ExemptionChangeDto.of(Type.ITEM_ADDED, item));
 
         return mapper.toExemptionRequestFullDto(reqDao.save(req));
     }
 
     /**
      * Lance le moteur de règles (KnowledgeBase) pour détecter automatiquement les dispenses possibles.
+     * Si ni les cours du dossier ni la KB n'ont changé depuis la dernière analyse, le résultat mémorisé
+     * est renvoyé sans relancer le moteur ni écrire en base ({@link AnalysisResultCache}).
      *
      * @param requestId Identifiant de la demande.
      * @return Le dossier mis à jour avec les propositions acceptées automatiquement.
      */
     public ExemptionRequestFullDto analyzeRequest(UUID requestId) {
+        // Relevé avant la lecture : une modification concurrente du dossier empêche de mémoriser ce résultat
+        long stamp = analysisCache.stamp(requestId);
         ExemptionRequest req = getDraftOrThrow(requestId);
 
-        List<KnowledgeBaseService.RuleMatch> matches = kbService.findMatchingRules(req.getExternalCourses());
+        // Version lue avant l'analyse : le moteur travaille sur ce snapshot ou sur un plus récent
+        String fingerprint = analysisCache.fingerprint(req.getExternalCourses(), kbService.kbVersion());
+        Optional<ExemptionRequestFullDto> cached = analysisCache.get(requestId, fingerprint);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
 
-        for (KnowledgeBaseService.RuleMatch match : matches) {
-            for (KbCorrespondenceRuleTarget target : match.rule().getTargets()) {
-                UE ueCible = target.getUe();
+        applyMatches(req, kbService.findMatchingRules(req.getId(), req.getExternalCourses()));
 
-                boolean exists = req.getItems().stream()
-                        .anyMatch(i -> i.getUe().getCode().equals(ueCible.getCode()));
+        // Dossier géré par la transaction : les nouvelles lignes sont écrites au flush, sans merge du graphe
+        ExemptionRequestFullDto result = mapper.toExemptionRequestFullDto(req);
+        analysisCache.put(requestId, fingerprint, result, stamp);
+        return result;
+    }
 
-                if (!exists) {
-                    ExemptionItem newItem = ExemptionItem.builder()
-                            .request(req)
-                            .ue(ueCible)
-                            .decision(DecisionItem.AUTO_ACCEPTED)
-                            .totalEctsMatches(true)
-                            .justifyingCourses(match.studentCourses())
-                            .build();
+    /**
+     * Simule l'analyse ("what-if") sur des cours en cours de saisie, sans rien enregistrer.
+     * Les cours sont transformés en {@link ExternalCourse} transitoires et évalués contre l'index en mémoire de la KB :
+     * aucune transaction n'est ouverte (SUPPORTS) et aucun dossier n'est lu ni modifié.
+     *
+     * @param courses Les cours saisis (établissement, code, ECTS).
+     * @return Les règles qui seraient satisfaites, avec les UEs accordées et les cours justificatifs.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<SimulatedMatchDto> simulate(List<SimulationCourseDto> courses) {
+        // Cours transitoires (jamais persistés), dans l'ordre de saisie
+        Map<ExternalCourse, SimulationCourseDto> transientCourses = new LinkedHashMap<>();
+        for (SimulationCourseDto dto : courses) {
+            transientCourses.put(ExternalCourse.builder()
+                    .etablissement(dto.getEtablissement())
+                    .code(dto.getCode())
+                    .ects(dto.getEcts())
+                    .build(), dto);
+        }
 
-                    itemDao.save(newItem);
-                    req.addItem(newItem);
-                }
-            }
+        List<KnowledgeBaseService.RuleMatch> matches = kbService.findMatchingRules(transientCourses.keySet());
+
+        List<SimulatedMatchDto> result = new ArrayList<>(matches.size());
+        for (KnowledgeBaseService.RuleMatch match : matches) {
+            List<SimulationCourseDto> justifying = transientCourses.entrySet().stream()
+                    .filter(e -> match.studentCourses().contains(e.getKey()))
+                    .map(Map.Entry::getValue)
+                    .toList();
+            result.add(new SimulatedMatchDto(match.rule().getDescription(), mapper.toUEDtoList(match.targets()), justifying,
+                    match.confidence()));
         }
+        return result;
+    }
 
-        return mapper.toExemptionRequestFullDto(reqDao.save(req));
+    /**
+     * Relance le moteur de règles sur un brouillon sans construire le DTO de réponse.
+     * Utilisé par l'analyse en masse ({@link BulkAnalysisService}) : chaque appel s'exécute
+     * dans sa propre transaction, un dossier en erreur n'affecte donc pas les autres.
+     * L'analyse est complète (sans état incrémental) : une analyse en masse ne doit pas évincer du cache
+     * les états des dossiers en cours de saisie.
+     *
+     * @param requestId Identifiant de la demande.
+     * @return Le nombre de propositions de dispense ajoutées.
+     * @throws IllegalStateException Si la demande n'est plus en brouillon.
+     */
+    public int reanalyzeDraft(UUID requestId) {
+        ExemptionRequest req = getDraftForUpdate(requestId);
+        return applyMatches(req, kbService.findMatchingRules(req.getExternalCourses()));
     }
 
     /**
@@ -276,6 +376,10 @@ public class ExemptionService {
         validateSubmission(req);
 
         req.setStatut(StatutDemande.SUBMITTED);
+        req.setSubmittedAt(Instant.now());
+        kbService.forgetRequest(requestId);
+        analysisCache.invalidate(requestId);
+        publish(req, ExemptionChangeDto.of(Type.REQUEST_STATUS_CHANGED, req));
         return mapper.toExemptionRequestFullDto(reqDao.save(req));
     }
 
@@ -310,8 +414,10 @@ public class ExemptionService {
      * @param requestId Identifiant de la demande.
      */
     public void deleteDraft(UUID requestId) {
-        ExemptionRequest req = getDraftOrThrow(requestId);
+        ExemptionRequest req = getDraftForUpdate(requestId);
         reqDao.delete(req);
+        kbService.forgetRequest(requestId);
+        publish(req, ExemptionChangeDto.of(Type.REQUEST_DELETED, req));
     }
 
     /**
@@ -327,6 +433,7 @@ public class ExemptionService {
         if (req.getStatut() != StatutDemande.DRAFT) {
             throw new IllegalStateException(msg("err.request.locked", req.getStatut()));
         }
+        analysisCache.invalidate(req.getId());
 
         docDao.delete(doc);
     }
@@ -346,15 +453,31 @@ public class ExemptionService {
         if (req.getStatut() != StatutDemande.DRAFT) {
             throw new IllegalStateException(msg("err.request.locked", req.getStatut()));
         }
+        analysisCache.invalidate(req.getId());
 
         req.getItems().remove(item);
         itemDao.delete(item);
+        publish(req, ExemptionChangeDto.of(Type.ITEM_REMOVED, item));
 
         return mapper.toExemptionRequestFullDto(reqDao.save(req));
     }
 
     // ————— MÉTHODES PRIVÉES (Helpers) —————
 
+    /**
+     * Construit (sans l'enregistrer) un cours externe du dossier.
+     */
+    private ExternalCourse toExternalCourse(ExemptionRequest req, AddExternalCourseDto dto) {
+        return ExternalCourse.builder()
+                .request(req)
+                .etablissement(dto.getEtablissement())
+                .code(dto.getCode())
+                .libelle(dto.getLibelle())
+                .ects(dto.getEcts())
+                .urlProgramme(dto.getUrlProgramme())
+                .build();
+    }
+
     /**
      * Récupère une demande si elle existe et est en statut DRAFT.
      *
@@ -370,38 +493,91 @@ public class ExemptionService {
         return req;
     }
 
+    /**
+     * Récupère un brouillon qui va être modifié : son dernier résultat d'analyse mémorisé est oublié.
+     *
+     * @throws IllegalStateException Si la demande n'est pas en brouillon.
+     */
+    private ExemptionRequest getDraftForUpdate(UUID id) {
+        ExemptionRequest req = getDraftOrThrow(id);
+        analysisCache.invalidate(id);
+        return req;
+    }
+
+    /**
+     * Publie un changement du dossier ; il n'est diffusé à l'étudiant qu'après la validation de la transaction
+     * ({@link ExemptionEventBroadcaster}).
+     */
+    private void publish(ExemptionRequest req, ExemptionChangeDto change) {
+        events.publishEvent(new ExemptionChangedEvent(req.getEtudiant().getEmail(), change));
+    }
+
+    /**
+     * Transforme les règles satisfaites en lignes de dispense acceptées automatiquement
+     * (ou à revoir si la confiance du rapprochement est sous le seuil pid.kb.fuzzy.auto-accept-confidence).
+     * Une UE déjà présente dans le dossier (manuelle ou issue d'une analyse précédente) n'est pas dupliquée :
+     * les codes des UE du dossier sont réunis une seule fois dans un ensemble.
+     * Les nouvelles lignes sont enregistrées ensemble ; leurs insertions (et celles de item_course_link)
+     * partent en lots JDBC au flush (hibernate.jdbc.batch_size, order_inserts).
+     *
+     * @return Le nombre de lignes ajoutées.
+     */
+    private int applyMatches(ExemptionRequest req, List<KnowledgeBaseService.RuleMatch> matches) {
+        Set<String> ueCodes = req.getItems().stream()
+                .map(i -> i.getUe().getCode())
+                .collect(Collectors.toCollection(HashSet::new));
+        double autoAccept = kbProperties.getFuzzy().getAutoAcceptConfidence();
+
+        List<ExemptionItem> newItems = new ArrayList<>();
+        for (KnowledgeBaseService.RuleMatch match : matches) {
+            // Rapprochement approximatif peu sûr : un professeur doit confirmer
+            DecisionItem decision = match.confidence() >= autoAccept
+                    ? DecisionItem.AUTO_ACCEPTED
+                    : DecisionItem.NEEDS_REVIEW;
+
+            for (UE ueCible : match.targets()) {
+                if (ueCodes.add(ueCible.getCode())) {
+                    ExemptionItem newItem = ExemptionItem.builder()
+                            .request(req)
+                            .ue(ueCible)
+                            .decision(decision)
+                            .totalEctsMatches(true)
+                            .justifyingCourses(new HashSet<>(match.studentCourses()))
+                            .build();
+                    newItems.add(newItem);
+                    req.addItem(newItem);
+                }
+            }
+        }
+        if (!newItems.isEmpty()) {
+            itemDao.saveAll(newItems);
+            newItems.forEach(item -> publish(req, ExemptionChangeDto.of(Type.ITEM_ADDED, item)));
+        }
+        return newItems.size();
+    }
+
     /**
      * Vérifie l'intégrité métier du dossier avant soumission.
      * Contrôle : dossier vide, orphelins (cours non utilisés), documents manquants.
+     * Les compteurs sont calculés par une seule requête d'agrégation : aucune collection du dossier n'est chargée.
      */
     private void validateSubmission(ExemptionRequest req) {
-        if (req.getExternalCourses().isEmpty()) {
+        SubmissionCheckDto check = reqDao.findSubmissionCheck(req.getId());
+
+        if (check.getCourseCount() == 0) {
             throw new IllegalStateException(msg("err.submission.empty"));
         }
 
-        if (req.getItems().isEmpty()) {
+        if (check.getItemCount() == 0) {
             throw new IllegalStateException(msg("err.submission.noItems"));
         }
 
-        Set<UUID> allExternalIds = req.getExternalCourses().stream()
-                .map(ExternalCourse::getId)
-                .collect(Collectors.toSet());
-
-        Set<UUID> usedExternalIds = req.getItems().stream()
-                .flatMap(item -> item.getJustifyingCourses().stream())
-                .map(ExternalCourse::getId)
-                .collect(Collectors.toSet());
-
-        if (!usedExternalIds.containsAll(allExternalIds)) {
-            allExternalIds.removeAll(usedExternalIds);
-            throw new IllegalStateException(msg("err.submission.orphans", allExternalIds.size()));
+        if (check.getOrphanCourseCount() > 0) {
+            throw new IllegalStateException(msg("err.submission.orphans", check.getOrphanCourseCount()));
         }
 
-        boolean hasGlobalDoc = req.getGlobalDocuments().stream()
-                .anyMatch(d -> d.getExternalCourse() == null);
-
-        boolean allCoursesHaveProof = req.getExternalCourses().stream()
-                .allMatch(c -> !c.getDocuments().isEmpty());
+        boolean hasGlobalDoc = check.getGlobalDocumentCount() > 0;
+        boolean allCoursesHaveProof = check.getCoursesWithoutDocumentCount() == 0;
 
         if (!hasGlobalDoc && !allCoursesHaveProof) {
             throw new IllegalStateException(msg("err.submission.missingDocs"));
@@ -0,0 +1,454 @@
+package org.isfce.pid.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.isfce.pid.config.KbProperties;
+import org.isfce.pid.dao.IKbCorrespondenceRuleDao;
+import org.isfce.pid.dao.IKbCourseDao;
+import org.isfce.pid.dao.IKbSchoolDao;
+import org.isfce.pid.dao.IUeDao;
+import org.isfce.pid.dto.KbCsvImportReportDto;
+import org.isfce.pid.dto.KbCsvImportReportDto.LineError;
+import org.isfce.pid.model.KbChangeListener;
+import org.isfce.pid.model.KbCodes;
+import org.isfce.pid.model.KbCorrespondenceRule;
+import org.isfce.pid.model.KbCorrespondenceRuleSource;
+import org.isfce.pid.model.KbCorrespondenceRuleTarget;
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.model.KbSchool;
+import org.isfce.pid.model.OrigineKb;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service d'import dans la Base de Connaissances des catalogues de cours envoyés au format CSV
+ * par les établissements partenaires (exports de leur secrétariat).
+ * Le fichier est lu en flux et traité par lots de lignes (pid.kb.csv.batch-size), chacun dans sa propre transaction
+ * (une requête de préchargement par type de donnée, écritures groupées par lots JDBC) : la mémoire utilisée est bornée
+ * par la taille d'un lot, quelle que soit la taille du fichier. Une ligne invalide est rejetée et signalée avec son numéro ;
+ * si la base refuse un lot, ses lignes sont rejouées une à une pour isoler la ligne fautive.
+ * Les écoles et les cours sont insérés ou mis à jour, jamais supprimés (un catalogue peut être partiel) ;
+ * une règle n'est ajoutée que si elle n'existe pas déjà à l'identique.
+ * Les codes sont normalisés comme pour le moteur de règles ({@link KbCodes}) : les cours importés sont reconnus
+ * dès la fin de l'import. Une école issue du fichier de la KB qui est modifiée par un import sera comparée
+ * entièrement à la prochaine synchronisation du fichier (le fichier fait foi pour les écoles qu'il contient).
+ * <p>
+ * Format : ligne d'en-tête obligatoire ; séparateur ";" ou "," (détecté sur l'en-tête) ; champs entre guillemets
+ * autorisés (sur une seule ligne). Colonnes, dans un ordre quelconque (casse et accents ignorés) :
+ * type, ecole, nom, site, code, libelle, ects, description, min_ects, sources, cibles.
+ * <ul>
+ *   <li>ECOLE : ecole, nom, site ;</li>
+ *   <li>COURS (type par défaut, ex: export brut d'un catalogue) : ecole, code, libelle, ects — l'école est créée au besoin ;</li>
+ *   <li>REGLE : ecole, description, min_ects (facultatif), sources et cibles (codes séparés par "|").</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KbCsvImportService {
+
+    private final IKbSchoolDao schoolDao;
+    private final IKbCourseDao courseDao;
+    private final IKbCorrespondenceRuleDao ruleDao;
+    private final IUeDao ueDao;
+    private final PlatformTransactionManager transactionManager;
+    private final KbProperties properties;
+    private final MessageSource messageSource;
+
+    /**
+     * Types de lignes du fichier.
+     */
+    private enum RowType {
+        ECOLE, COURS, REGLE
+    }
+
+    /**
+     * Ligne du fichier validée, prête à être importée (les champs inutiles pour son type sont null).
+     */
+    private record Row(long line, RowType type, String school, String nom, String site,
+                       String code, String libelle, int ects,
+                       String description, int minEcts, List<String> sources, List<String> targets) {
+    }
+
+    /**
+     * Importe un catalogue CSV dans la KB.
+     * Volontairement non transactionnel : chaque lot de lignes est importé dans sa propre transaction ;
+     * le moteur ne voit la KB importée qu'à la fin de l'import (une seule reconstruction de l'index).
+     *
+     * @param in Le contenu du fichier CSV (UTF-8).
+     * @return Le rapport de l'import (volumes, débit, lignes rejetées).
+     * @throws IllegalArgumentException Si le fichier est vide ou si son en-tête est invalide.
+     * @throws IllegalStateException    Si le fichier ne peut être lu (les lots déjà importés sont conservés).
+     */
+    public KbCsvImportReportDto importCsv(InputStream in) {
+        long start = System.nanoTime();
+        KbCsvImportReportDto report = new KbCsvImportReportDto();
+        report.setErrors(new ArrayList<>());
+        Set<String> ueCodes = Set.copyOf(ueDao.findAllCodes());
+        int batchSize = Math.max(1, properties.getCsv().getBatchSize());
+
+        KbChangeListener.beginBatch(); // une seule reconstruction de l'index, à la fin de l'import
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null || header.isBlank()) {
+                throw new IllegalArgumentException(msg("err.csv.empty"));
+            }
+            header = CsvSupport.stripBom(header);
+            char separator = CsvSupport.separator(header);
+            Map<String, Integer> columns = CsvSupport.columns(split(header, separator));
+            if (!columns.containsKey("ecole")) {
+                throw new IllegalArgumentException(msg("err.csv.header", "ecole"));
+            }
+
+            List<Row> batch = new ArrayList<>(batchSize);
+            long lineNumber = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                report.setLinesRead(report.getLinesRead() + 1);
+                try {
+                    batch.add(parse(lineNumber, split(line, separator), columns));
+                } catch (IllegalArgumentException e) {
+                    fail(report, lineNumber, e.getMessage());
+                }
+                if (batch.size() >= batchSize) {
+                    importBatch(batch, ueCodes, report);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                importBatch(batch, ueCodes, report);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(msg("err.csv.read"), e);
+        } finally {
+            KbChangeListener.endBatch();
+        }
+
+        long elapsedNanos = Math.max(System.nanoTime() - start, 1);
+        report.setDurationMs(elapsedNanos / 1_000_000);
+        report.setLinesPerSecond(Math.round(report.getLinesRead() * 1e9 / elapsedNanos * 10) / 10.0);
+        log.info("Import CSV de la KB : {} ligne(s) lue(s), {} importée(s), {} rejetée(s) en {} ms ({} lignes/s) ; écoles +{} ~{}, cours +{} ~{}, règles +{} ({} inchangées).",
+                report.getLinesRead(), report.getLinesImported(), report.getLinesFailed(),
+                report.getDurationMs(), report.getLinesPerSecond(),
+                report.getSchoolsInserted(), report.getSchoolsUpdated(),
+                report.getCoursesInserted(), report.getCoursesUpdated(),
+                report.getRulesInserted(), report.getRulesUnchanged());
+        return report;
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    /**
+     * Importe un lot de lignes dans sa propre transaction. Si la base refuse le lot,
+     * chaque ligne est rejouée seule afin que seules les lignes fautives soient rejetées.
+     */
+    private void importBatch(List<Row> rows, Set<String> ueCodes, KbCsvImportReportDto report) {
+        KbCsvImportReportDto counts = new KbCsvImportReportDto();
+        List<LineError> errors = new ArrayList<>();
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> importRows(rows, ueCodes, counts, errors));
+        } catch (RuntimeException e) {
+            if (rows.size() == 1) {
+                log.warn("Import CSV de la KB : ligne {} rejetée : {}", rows.get(0).line(), e.getMessage());
+                fail(report, rows.get(0).line(), e.getMessage());
+            } else {
+                rows.forEach(row -> importBatch(List.of(row), ueCodes, report));
+            }
+            return;
+        }
+        report.setSchoolsInserted(report.getSchoolsInserted() + counts.getSchoolsInserted());
+        report.setSchoolsUpdated(report.getSchoolsUpdated() + counts.getSchoolsUpdated());
+        report.setCoursesInserted(report.getCoursesInserted() + counts.getCoursesInserted());
+        report.setCoursesUpdated(report.getCoursesUpdated() + counts.getCoursesUpdated());
+        report.setRulesInserted(report.getRulesInserted() + counts.getRulesInserted());
+        report.setRulesUnchanged(report.getRulesUnchanged() + counts.getRulesUnchanged());
+        report.setLinesImported(report.getLinesImported() + rows.size() - errors.size());
+        errors.forEach(e -> fail(report, e.line(), e.message()));
+    }
+
+    /**
+     * Applique un lot de lignes : préchargement des écoles et des cours concernés (deux requêtes),
+     * puis insertions et mises à jour dans l'ordre du fichier, et enfin écritures groupées.
+     */
+    private void importRows(List<Row> rows, Set<String> ueCodes, KbCsvImportReportDto counts, List<LineError> errors) {
+        // 1. Préchargement des écoles et des cours référencés par le lot (couples école + code exacts)
+        Set<String> schoolKeys = new HashSet<>();
+        Set<String> courseKeys = new HashSet<>();
+        for (Row row : rows) {
+            schoolKeys.add(KbCodes.normalize(row.school()));
+            if (row.code() != null) {
+                courseKeys.add(KbCodes.courseKey(row.school(), row.code()));
+            }
+            row.sources().forEach(code -> courseKeys.add(KbCodes.courseKey(row.school(), code)));
+        }
+        Map<String, KbSchool> schools = new HashMap<>();
+        schoolDao.findByCodeKeyIn(schoolKeys).forEach(s -> schools.put(s.getCodeKey(), s));
+        Map<String, KbCourse> courses = new HashMap<>();
+        if (!courseKeys.isEmpty()) {
+            courseDao.findAllByKeys(courseKeys)
+                    .forEach(c -> courses.put(courseKey(c.getEcole().getCodeKey(), c.getCodeKey()), c));
+        }
+        Map<String, Set<String>> ruleSignatures = new HashMap<>(); // chargées à la demande, par école
+        List<KbCourse> newCourses = new ArrayList<>();
+        List<KbCorrespondenceRule> newRules = new ArrayList<>();
+
+        // 2. Lignes dans l'ordre du fichier (une règle peut utiliser un cours importé plus haut)
+        for (Row row : rows) {
+            String schoolKey = KbCodes.normalize(row.school());
+            switch (row.type()) {
+                case ECOLE -> upsertSchool(row, schoolKey, schools, counts);
+                case COURS -> {
+                    KbSchool school = schools.containsKey(schoolKey)
+                            ? schools.get(schoolKey) : upsertSchool(row, schoolKey, schools, counts);
+                    upsertCourse(row, school, courseKey(schoolKey, KbCodes.normalize(row.code())), courses, newCourses, counts);
+                }
+                case REGLE -> {
+                    KbSchool school = schools.get(schoolKey);
+                    if (school == null) {
+                        errors.add(new LineError(row.line(), msg("err.csv.school", row.school())));
+                        continue;
+                    }
+                    KbCorrespondenceRule rule = createRule(row, school, schoolKey, courses, ueCodes, errors);
+                    if (rule == null) {
+                        continue;
+                    }
+                    Set<String> existing = ruleSignatures.computeIfAbsent(schoolKey, k -> signaturesOf(school));
+                    String signature = KnowledgeBaseSyncService.signature(row.description(), row.minEcts(),
+                            row.sources().stream().map(KbCodes::normalize), row.targets().stream());
+                    if (existing.add(signature)) {
+                        newRules.add(rule);
+                        touch(school);
+                        counts.setRulesInserted(counts.getRulesInserted() + 1);
+                    } else {
+                        counts.setRulesUnchanged(counts.getRulesUnchanged() + 1);
+                    }
+                }
+            }
+        }
+
+        // 3. Écritures groupées (les écoles nouvelles sont déjà persistées)
+        courseDao.saveAll(newCourses);
+        ruleDao.saveAll(newRules);
+    }
+
+    /**
+     * Insère l'école si elle est nouvelle (origine CSV), sinon met à jour son nom et son site s'ils sont fournis et ont changé.
+     */
+    private KbSchool upsertSchool(Row row, String schoolKey, Map<String, KbSchool> schools, KbCsvImportReportDto counts) {
+        KbSchool school = schools.get(schoolKey);
+        if (school == null) {
+            school = schoolDao.save(KbSchool.builder()
+                    .code(row.school())
+                    .etablissement(row.nom() != null ? row.nom() : row.school())
+                    .urlProgramme(row.site())
+                    .origine(OrigineKb.CSV)
+                    .build());
+            schools.put(schoolKey, school);
+            counts.setSchoolsInserted(counts.getSchoolsInserted() + 1);
+            return school;
+        }
+        boolean changed = false;
+        if (row.nom() != null && !row.nom().equals(school.getEtablissement())) {
+            school.setEtablissement(row.nom());
+            changed = true;
+        }
+        if (row.site() != null && !row.site().equals(school.getUrlProgramme())) {
+            school.setUrlProgramme(row.site());
+            changed = true;
+        }
+        if (changed) {
+            touch(school);
+            counts.setSchoolsUpdated(counts.getSchoolsUpdated() + 1);
+        }
+        return school;
+    }
+
+    /**
+     * Insère le cours s'il est nouveau, sinon met à jour son code brut, son libellé et ses ECTS s'ils ont changé.
+     */
+    private void upsertCourse(Row row, KbSchool school, String key, Map<String, KbCourse> courses,
+                              List<KbCourse> newCourses, KbCsvImportReportDto counts) {
+        KbCourse course = courses.get(key);
+        if (course == null) {
+            course = KbCourse.builder()
+                    .ecole(school)
+                    .code(row.code())
+                    .libelle(row.libelle())
+                    .ects(row.ects())
+                    .urlProgramme(school.getUrlProgramme())
+                    .build();
+            courses.put(key, course);
+            newCourses.add(course);
+            touch(school);
+            counts.setCoursesInserted(counts.getCoursesInserted() + 1);
+        } else if (!Objects.equals(course.getCode(), row.code())
+                || !Objects.equals(course.getLibelle(), row.libelle())
+                || course.getEcts() != row.ects()) {
+            course.setCode(row.code());
+            course.setLibelle(row.libelle());
+            course.setEcts(row.ects());
+            touch(school);
+            counts.setCoursesUpdated(counts.getCoursesUpdated() + 1);
+        }
+    }
+
+    /**
+     * Construit la règle d'une ligne REGLE, ou consigne l'erreur si une source ou une cible est inconnue.
+     *
+     * @return La règle (non persistée), ou null si la ligne est rejetée.
+     */
+    private KbCorrespondenceRule createRule(Row row, KbSchool school, String schoolKey, Map<String, KbCourse> courses,
+                                            Set<String> ueCodes, List<LineError> errors) {
+        KbCorrespondenceRule rule = KbCorrespondenceRule.builder()
+                .ecole(school)
+                .description(row.description())
+                .minTotalEcts(row.minEcts())
+                .build();
+        for (String sourceCode : row.sources()) {
+            KbCourse course = courses.get(courseKey(schoolKey, KbCodes.normalize(sourceCode)));
+            if (course == null) {
+                errors.add(new LineError(row.line(), msg("err.csv.source", row.school(), sourceCode)));
+                return null;
+            }
+            rule.addSource(KbCorrespondenceRuleSource.builder().rule(rule).cours(course).build());
+        }
+        for (String ueCode : row.targets()) {
+            if (!ueCodes.contains(ueCode)) {
+                errors.add(new LineError(row.line(), msg("err.csv.target", ueCode)));
+                return null;
+            }
+            rule.addTarget(KbCorrespondenceRuleTarget.builder().rule(rule).ue(ueDao.getReferenceById(ueCode)).build());
+        }
+        return rule;
+    }
+
+    /**
+     * Contenus des règles existantes d'une école (deux requêtes ; aucune pour une école créée par l'import).
+     */
+    private Set<String> signaturesOf(KbSchool school) {
+        Set<String> signatures = new HashSet<>();
+        if (school.getId() != null) {
+            List<KbCorrespondenceRule> rules = ruleDao.findByEcoleWithSources(school);
+            ruleDao.findByEcoleWithTargets(school);
+            rules.forEach(r -> signatures.add(KnowledgeBaseSyncService.signature(r)));
+        }
+        return signatures;
+    }
+
+    /**
+     * Une école du fichier de la KB modifiée par un import perd son empreinte :
+     * la prochaine synchronisation du fichier la comparera entièrement.
+     */
+    private static void touch(KbSchool school) {
+        if (school.getOrigine() == OrigineKb.FICHIER) {
+            school.setContentHash(null);
+        }
+    }
+
+    /**
+     * Valide une ligne et la convertit selon son type.
+     *
+     * @throws IllegalArgumentException Si la ligne est invalide (message destiné au rapport).
+     */
+    private Row parse(long line, List<String> fields, Map<String, Integer> columns) {
+        String typeValue = CsvSupport.field(fields, columns, "type");
+        RowType type;
+        try {
+            type = typeValue == null ? RowType.COURS : RowType.valueOf(KbCodes.normalize(typeValue));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(msg("err.csv.type", typeValue));
+        }
+        String school = required(fields, columns, "ecole");
+        return switch (type) {
+            case ECOLE -> new Row(line, type, school, CsvSupport.field(fields, columns, "nom"), CsvSupport.field(fields, columns, "site"),
+                    null, null, 0, null, 0, List.of(), List.of());
+            case COURS -> new Row(line, type, school, null, null,
+                    required(fields, columns, "code"), required(fields, columns, "libelle"),
+                    number(fields, columns, "ects", true), null, 0, List.of(), List.of());
+            case REGLE -> {
+                List<String> sources = list(required(fields, columns, "sources"));
+                List<String> targets = list(required(fields, columns, "cibles"));
+                yield new Row(line, type, school, null, null, null, null, 0,
+                        required(fields, columns, "description"), number(fields, columns, "minects", false), sources, targets);
+            }
+        };
+    }
+
+    private String required(List<String> fields, Map<String, Integer> columns, String name) {
+        String value = CsvSupport.field(fields, columns, name);
+        if (value == null) {
+            throw new IllegalArgumentException(msg("err.csv.required", name));
+        }
+        return value;
+    }
+
+    /**
+     * Entier positif ou nul ; 0 si le champ facultatif est vide.
+     */
+    private int number(List<String> fields, Map<String, Integer> columns, String name, boolean required) {
+        String value = required ? required(fields, columns, name) : CsvSupport.field(fields, columns, name);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 0) {
+                throw new NumberFormatException();
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(msg("err.csv.number", name, value));
+        }
+    }
+
+    /**
+     * Liste de codes séparés par "|" (valeurs vides ignorées).
+     */
+    private static List<String> list(String value) {
+        return Arrays.stream(value.split("\\|")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    private List<String> split(String line, char separator) {
+        return CsvSupport.split(line, separator, () -> msg("err.csv.quote"));
+    }
+
+    private static String courseKey(String schoolKey, String courseKey) {
+        return schoolKey + '\u0000' + courseKey;
+    }
+
+    /**
+     * Consigne une ligne rejetée (détail borné par pid.kb.csv.max-errors).
+     */
+    private void fail(KbCsvImportReportDto report, long line, String message) {
+        report.setLinesFailed(report.getLinesFailed() + 1);
+        if (report.getErrors().size() < properties.getCsv().getMaxErrors()) {
+            report.getErrors().add(new LineError(line, message));
+        }
+    }
+
+    private String msg(String code, Object... args) {
+        return messageSource.getMessage(code, args, LocaleContextHolder.getLocale());
+    }
+}
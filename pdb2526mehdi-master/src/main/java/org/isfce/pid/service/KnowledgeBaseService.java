@@ -1,49 +1,155 @@
 package org.isfce.pid.service;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.isfce.pid.config.KbProperties;
+import org.isfce.pid.controller.error.KbUnavailableException;
 import org.isfce.pid.dao.IKbCorrespondenceRuleDao;
 import org.isfce.pid.dao.IKbCourseDao;
 import org.isfce.pid.dao.IKbSchoolDao;
+import org.isfce.pid.dto.KbSuggestionDto;
 import org.isfce.pid.model.ExternalCourse;
+import org.isfce.pid.model.KbChangeListener;
 import org.isfce.pid.model.KbCorrespondenceRule;
-import org.isfce.pid.model.KbCorrespondenceRuleSource;
+import org.isfce.pid.model.KbCorrespondenceRuleTarget;
 import org.isfce.pid.model.KbCourse;
 import org.isfce.pid.model.KbSchool;
+import org.isfce.pid.model.UE;
+import org.isfce.pid.service.kb.IncrementalRuleState;
+import org.isfce.pid.service.kb.KbIndex;
+import org.isfce.pid.service.kb.KbIndex.IndexedRule;
+import org.isfce.pid.service.kb.RuleEvaluator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Service implémentant le moteur de règles académiques (Rule Engine).
  * Compare les cours externes encodés par l'étudiant avec la Base de Connaissances (KB)
  * pour identifier automatiquement les dispenses applicables.
+ * Le moteur travaille sur un snapshot immuable et versionné de la KB ({@link KbIndex}), construit au démarrage
+ * et reconstruit uniquement lorsque la KB est modifiée. Le snapshot courant est publié par une référence atomique :
+ * les lecteurs le prennent sans verrou, une reconstruction le remplace d'un seul coup,
+ * et une analyse en cours continue sur le snapshot qu'elle a pris.
+ * Les méthodes rejoignent la transaction de l'appelant s'il y en a une, mais n'en ouvrent pas :
+ * seule la reconstruction de l'index ouvre sa propre transaction en lecture seule.
+ * Tant que le chargement initial de la KB n'est pas terminé, l'évaluation des règles est refusée
+ * ({@link KbUnavailableException}) afin de ne pas produire d'analyse sur une KB incomplète.
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
-@Transactional(readOnly = true)
+@Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
 public class KnowledgeBaseService {
 
+    /**
+     * Nombre maximum de suggestions renvoyées par l'auto-complétion.
+     */
+    public static final int MAX_SUGGESTIONS = 50;
+
     private final IKbSchoolDao kbSchoolDao;
     private final IKbCourseDao kbCourseDao;
     private final IKbCorrespondenceRuleDao kbRuleDao;
+    private final RuleEvaluator evaluator;
+    private final PlatformTransactionManager transactionManager;
+    private final KbProperties properties;
+    private final MessageSource messageSource;
+
+    /**
+     * Vrai pendant le chargement initial de la KB (voir {@link #loadingStarted()}).
+     */
+    private volatile boolean loading;
+
+    /**
+     * Snapshot courant de la KB (remplacé atomiquement lorsque la KB change).
+     */
+    private final AtomicReference<KbIndex> snapshot = new AtomicReference<>();
+
+    /**
+     * Sérialise les reconstructions (une seule à la fois ; les lecteurs ne le prennent jamais).
+     */
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    /**
+     * États d'analyse incrémentale par dossier (LRU borné par pid.kb.incremental-cache-size).
+     */
+    private final Map<UUID, IncrementalRuleState> requestStates = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, IncrementalRuleState> eldest) {
+            return size() > properties.getIncrementalCacheSize();
+        }
+    };
 
     /**
      * DTO interne représentant une correspondance validée par le moteur.
      *
      * @param rule           La règle de correspondance satisfaite.
+     * @param targets        Les UE accordées par la règle, telles qu'elles figuraient dans le snapshot.
      * @param studentCourses Les cours de l'étudiant ayant permis de valider cette règle.
+     * @param confidence     Confiance (0..1) : 1 si tous les cours ont été reconnus exactement,
+     *                       sinon la plus faible confiance des rapprochements approximatifs utilisés.
+     * @param kbVersion      Version du snapshot de la KB sur lequel la correspondance a été calculée
+     *                       (0 si elle ne provient pas d'un snapshot).
      */
-    public record RuleMatch(KbCorrespondenceRule rule, Set<ExternalCourse> studentCourses) {
+    public record RuleMatch(KbCorrespondenceRule rule, List<UE> targets, Set<ExternalCourse> studentCourses,
+                            double confidence, long kbVersion) {
+
+        /**
+         * Correspondance calculée hors snapshot : les cibles sont lues sur l'entité règle.
+         */
+        public RuleMatch(KbCorrespondenceRule rule, Set<ExternalCourse> studentCourses, double confidence) {
+            this(rule, rule.getTargets().stream().map(KbCorrespondenceRuleTarget::getUe).toList(),
+                    studentCourses, confidence, 0L);
+        }
+
+        /**
+         * Correspondance exacte (confiance maximale) calculée hors snapshot.
+         */
+        public RuleMatch(KbCorrespondenceRule rule, Set<ExternalCourse> studentCourses) {
+            this(rule, studentCourses, 1.0);
+        }
+
+        /**
+         * Correspondance calculée sur un snapshot de la KB.
+         *
+         * @param index          Le snapshot utilisé.
+         * @param rule           La règle indexée satisfaite.
+         * @param studentCourses Les cours justificatifs.
+         * @param confidence     La confiance du rapprochement.
+         * @return La correspondance, portant la version du snapshot.
+         */
+        public static RuleMatch of(KbIndex index, IndexedRule rule, Set<ExternalCourse> studentCourses, double confidence) {
+            return new RuleMatch(rule.rule(), rule.targets(), studentCourses, confidence, index.generation());
+        }
+
+        /**
+         * @return La même correspondance avec une autre confiance.
+         */
+        public RuleMatch withConfidence(double newConfidence) {
+            return new RuleMatch(rule, targets, studentCourses, newConfidence, kbVersion);
+        }
     }
 
     /**
@@ -53,34 +159,129 @@ public class KnowledgeBaseService {
      * @return Une liste de correspondances (Règle + Cours justificatifs).
      */
     public List<RuleMatch> findMatchingRules(Set<ExternalCourse> studentCourses) {
-        // Associer les cours de l'étudiant aux cours connus de la KB
-        Map<KbCourse, List<ExternalCourse>> recognizedCourses = mapStudentCoursesToKb(studentCourses);
+        requireLoaded();
+        KbIndex index = currentIndex();
+
+        // Associer les cours de l'étudiant aux cours connus de la KB (exactement, sinon approximativement)
+        Map<ExternalCourse, Double> fuzzyConfidences = new HashMap<>();
+        Map<KbCourse, List<ExternalCourse>> recognizedCourses = mapStudentCoursesToKb(index, studentCourses, fuzzyConfidences);
 
         if (recognizedCourses.isEmpty()) {
             return List.of();
         }
 
-        // Identifier les écoles concernées pour optimiser la recherche (éviter de charger toutes les règles)
-        Set<KbSchool> involvedSchools = recognizedCourses.keySet().stream()
-                .map(KbCourse::getEcole)
-                .collect(Collectors.toSet());
+        // Seules les règles référençant un cours reconnu sont évaluées (stratégie configurée : pid.kb.engine)
+        List<RuleMatch> matches = evaluator.evaluate(index, recognizedCourses);
+        if (fuzzyConfidences.isEmpty()) {
+            return matches;
+        }
+
+        // La confiance d'une règle est celle de son cours justificatif le moins sûr
+        return matches.stream()
+                .map(m -> m.withConfidence(m.studentCourses().stream()
+                        .mapToDouble(c -> fuzzyConfidences.getOrDefault(c, 1.0))
+                        .min().orElse(1.0)))
+                .toList();
+    }
 
-        List<RuleMatch> matches = new ArrayList<>();
+    /**
+     * Variante incrémentale de {@link #findMatchingRules(Set)} pour un dossier persisté.
+     * L'état d'évaluation partiel du dossier est conservé entre deux appels : seuls les cours ajoutés,
+     * retirés ou modifiés depuis la dernière analyse sont traités, et seules les règles qui les référencent
+     * sont réévaluées. L'état est reconstruit si la KB a changé entre-temps.
+     * Les cours non encore persistés (sans identifiant) sont analysés de manière complète.
+     *
+     * @param requestId      Identifiant du dossier.
+     * @param studentCourses Les cours externes actuels du dossier.
+     * @return Une liste de correspondances (Règle + Cours justificatifs), identique à une analyse complète.
+     */
+    public List<RuleMatch> findMatchingRules(UUID requestId, Set<ExternalCourse> studentCourses) {
+        if (requestId == null || studentCourses.stream().anyMatch(c -> c.getId() == null)) {
+            return findMatchingRules(studentCourses);
+        }
+        requireLoaded();
+        KbIndex index = currentIndex();
+        IncrementalRuleState state;
+        synchronized (requestStates) {
+            state = requestStates.get(requestId);
+            if (state == null || state.index() != index) {
+                state = new IncrementalRuleState(index);
+                requestStates.put(requestId, state);
+            }
+        }
+        synchronized (state) {
+            state.update(studentCourses, ext -> resolve(index, ext));
+            return state.matches(studentCourses);
+        }
+    }
 
-        // Vérification des règles par école
-        for (KbSchool school : involvedSchools) {
-            List<KbCorrespondenceRule> schoolRules = kbRuleDao.findByEcole(school);
+    /**
+     * Version du snapshot de la KB sur lequel porte l'évaluation des règles (reconstruit s'il est périmé).
+     *
+     * @return La version courante de la KB.
+     * @throws KbUnavailableException Si le chargement initial de la KB est en cours.
+     */
+    public long kbVersion() {
+        requireLoaded();
+        return currentIndex().generation();
+    }
 
-            for (KbCorrespondenceRule rule : schoolRules) {
-                Set<ExternalCourse> usedCourses = getMatchingCoursesIfSatisfied(rule, recognizedCourses);
+    /**
+     * Oublie l'état d'analyse incrémentale d'un dossier (supprimé ou soumis).
+     *
+     * @param requestId Identifiant du dossier.
+     */
+    public void forgetRequest(UUID requestId) {
+        synchronized (requestStates) {
+            requestStates.remove(requestId);
+        }
+    }
 
-                if (!usedCourses.isEmpty()) {
-                    matches.add(new RuleMatch(rule, usedCourses));
-                }
-            }
+    /**
+     * Reconstruit l'index en mémoire de la KB dès que l'application est prête,
+     * afin que la première analyse ne paie pas le coût du chargement (ni celui de la forme compilée du moteur).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpIndex() {
+        if (loading) {
+            return; // préchauffé à la fin du chargement
         }
+        KbIndex index = currentIndex();
+        evaluator.warmUp(index);
+        log.info("Index de la Base de Connaissances prêt : {} règle(s) indexée(s).", index.ruleCount());
+    }
 
-        return matches;
+    /**
+     * Signale le début du chargement initial de la KB : l'évaluation des règles est refusée jusqu'à sa fin.
+     */
+    public void loadingStarted() {
+        loading = true;
+    }
+
+    /**
+     * Signale la fin du chargement initial de la KB (réussi ou non) et préchauffe l'index.
+     */
+    public void loadingFinished() {
+        loading = false;
+        warmUpIndex();
+    }
+
+    /**
+     * @return true si la KB est disponible pour l'évaluation des règles (chargement initial terminé).
+     */
+    public boolean isLoaded() {
+        return !loading;
+    }
+
+    /**
+     * Vérifie que la KB est disponible pour l'évaluation des règles.
+     *
+     * @throws KbUnavailableException Si le chargement initial de la KB est en cours.
+     */
+    public void requireLoaded() {
+        if (loading) {
+            throw new KbUnavailableException(messageSource.getMessage("err.kb.loading", null, LocaleContextHolder.getLocale()));
+        }
     }
 
     /**
@@ -100,64 +301,154 @@ public class KnowledgeBaseService {
      * @return Le cours correspondant s'il existe.
      */
     public Optional<KbCourse> findCourse(String schoolCode, String courseCode) {
-        return kbSchoolDao.findByCodeIgnoreCase(schoolCode)
-                .flatMap(school -> kbCourseDao.findByEcoleAndCodeIgnoreCase(school, courseCode));
+        return currentIndex().findCourse(schoolCode, courseCode);
+    }
+
+    /**
+     * Auto-complétion sur les écoles et les cours de la KB (codes et libellés), servie par l'index en mémoire.
+     * Tolère la casse, les accents, la ponctuation et les petites fautes de frappe. Aucune requête SQL.
+     *
+     * @param query      La saisie partielle (ex: "binv 1090", "programmation").
+     * @param schoolCode Code d'école pour restreindre la recherche (facultatif).
+     * @param limit      Nombre maximum de suggestions (borné à {@value #MAX_SUGGESTIONS}).
+     * @return Les suggestions, de la plus pertinente à la moins pertinente.
+     */
+    public List<KbSuggestionDto> search(String query, String schoolCode, int limit) {
+        int k = Math.min(Math.max(limit, 1), MAX_SUGGESTIONS);
+        return currentIndex().searchIndex().search(query, schoolCode, k).stream()
+                .map(hit -> KbSuggestionDto.builder()
+                        .type(hit.kind())
+                        .schoolCode(hit.school().getCode())
+                        .etablissement(hit.school().getEtablissement())
+                        .code(hit.course() != null ? hit.course().getCode() : null)
+                        .libelle(hit.course() != null ? hit.course().getLibelle() : null)
+                        .ects(hit.course() != null ? hit.course().getEcts() : null)
+                        .score(hit.score())
+                        .build())
+                .toList();
     }
 
     // ————— MÉTHODES PRIVÉES (Moteur de règles) —————
 
     /**
-     * Vérifie si une règle est satisfaite.
-     * SÉCURITÉ : Utilise le minimum entre les ECTS déclarés et les ECTS officiels
-     * pour contrer la fraude (surgonflage) et les cursus obsolètes.
+     * Mappe les cours déclarés par l'étudiant vers les cours officiels de la KB.
+     * La correspondance se fait sur le couple (Nom École, Code Cours), directement dans l'index (aucune requête SQL).
+     * À défaut de correspondance exacte, un rapprochement approximatif est tenté (pid.kb.fuzzy) ;
+     * sa confiance est alors consignée dans {@code fuzzyConfidences}.
      */
-    private Set<ExternalCourse> getMatchingCoursesIfSatisfied(KbCorrespondenceRule rule, Map<KbCourse, List<ExternalCourse>> recognizedCourses) {
-        Set<ExternalCourse> foundCourses = new HashSet<>();
-        int totalCalculatedEcts = 0;
-
-        // 1. Vérifier chaque ingrédient requis par la règle
-        for (KbCorrespondenceRuleSource source : rule.getSources()) {
-            KbCourse officialCourse = source.getCours();
-            List<ExternalCourse> studentMatches = recognizedCourses.get(officialCourse);
+    private Map<KbCourse, List<ExternalCourse>> mapStudentCoursesToKb(KbIndex index, Set<ExternalCourse> studentCourses,
+                                                                     Map<ExternalCourse, Double> fuzzyConfidences) {
+        Map<KbCourse, List<ExternalCourse>> map = new HashMap<>();
 
-            // Si l'ingrédient manque, la règle tombe à l'eau
-            if (studentMatches == null || studentMatches.isEmpty()) {
-                return Collections.emptySet();
-            }
+        for (ExternalCourse ext : studentCourses) {
+            resolve(index, ext).ifPresent(r -> {
+                map.computeIfAbsent(r.course(), k -> new ArrayList<>()).add(ext);
+                if (r.confidence() < 1.0) {
+                    fuzzyConfidences.put(ext, r.confidence());
+                }
+            });
+        }
+        return map;
+    }
 
-            // Calcul intelligent des ECTS pour cette source
-            for (ExternalCourse studentCourse : studentMatches) {
-                // On prend le MINIMUM entre ce que l'élève déclare et ce que la KB connaît
-                int safeEcts = Math.min(studentCourse.getEcts(), officialCourse.getEcts());
-                totalCalculatedEcts += safeEcts;
-                
-                foundCourses.add(studentCourse);
-            }
+    /**
+     * Reconnaît un cours de l'étudiant dans la KB : exactement (école, code), sinon approximativement si activé.
+     */
+    private Optional<IncrementalRuleState.Resolution> resolve(KbIndex index, ExternalCourse ext) {
+        Optional<KbCourse> exact = index.findCourse(ext.getEtablissement(), ext.getCode());
+        if (exact.isPresent()) {
+            return Optional.of(new IncrementalRuleState.Resolution(exact.get(), 1.0));
+        }
+        KbProperties.Fuzzy fuzzy = properties.getFuzzy();
+        if (!fuzzy.isEnabled()) {
+            return Optional.empty();
         }
+        return index.fuzzyMatcher()
+                .match(ext.getEtablissement(), ext.getCode(), ext.getLibelle(), fuzzy.getMinConfidence())
+                .map(m -> new IncrementalRuleState.Resolution(m.course(), m.confidence()));
+    }
 
-        // 2. Vérifier le total cumulé sécurisé
-        if (rule.getMinTotalEcts() != null && rule.getMinTotalEcts() > 0) {
-            if (totalCalculatedEcts < rule.getMinTotalEcts()) {
-                return Collections.emptySet(); // Rejeté malgré la tentative de fraude
+    /**
+     * Retourne le snapshot courant de la KB, en le reconstruisant si la KB a été modifiée depuis sa construction.
+     * Si une reconstruction est déjà en cours dans un autre thread, le snapshot précédent est servi sans attendre
+     * (sauf au tout premier chargement). La reconstruction se fait dans sa propre transaction en lecture seule
+     * (PROPAGATION_REQUIRES_NEW) : la KB n'est jamais chargée dans le contexte de persistance de l'appelant,
+     * et les entités du snapshot publié sont détachées dès sa construction.
+     * Seule exception : une transaction qui a elle-même modifié la KB (non encore validée) reçoit un index privé,
+     * construit dans sa transaction pour voir ses propres modifications, et qui n'est pas publié
+     * ({@link #transactionIndex()}).
+     */
+    private KbIndex currentIndex() {
+        if (KbChangeListener.hasUncommittedChanges()) {
+            return transactionIndex();
+        }
+        KbIndex current = snapshot.get();
+        if (current != null && current.generation() == KbChangeListener.generation()) {
+            return current;
+        }
+        if (current != null && !rebuildLock.tryLock()) {
+            return current;
+        }
+        if (current == null) {
+            rebuildLock.lock();
+        }
+        try {
+            current = snapshot.get();
+            long generation = KbChangeListener.generation();
+            if (current != null && current.generation() == generation) {
+                return current;
             }
+            KbIndex rebuilt = buildIndex(generation, TransactionDefinition.PROPAGATION_REQUIRES_NEW,
+                    properties.getEngine() == KbProperties.Engine.MAPPED ? properties.getSnapshot().getDirectory() : null);
+            snapshot.set(rebuilt);
+            log.debug("Snapshot de la KB publié : version {}, {} règle(s).", generation, rebuilt.ruleCount());
+            return rebuilt;
+        } finally {
+            rebuildLock.unlock();
         }
-
-        return foundCourses;
     }
 
     /**
-     * Mappe les cours déclarés par l'étudiant vers les cours officiels de la KB.
-     * La correspondance se fait sur le couple (Nom École, Code Cours).
+     * Index privé d'une transaction qui a modifié la KB : construit dans cette transaction, conservé le temps
+     * de celle-ci (tant que la KB n'est plus modifiée) et jamais publié.
      */
-    private Map<KbCourse, List<ExternalCourse>> mapStudentCoursesToKb(Set<ExternalCourse> studentCourses) {
-        Map<KbCourse, List<ExternalCourse>> map = new HashMap<>();
-
-        for (ExternalCourse ext : studentCourses) {
-            // Optimisation : Utilisation des optionals en chaîne pour éviter les if imbriqués
-            kbSchoolDao.findByCodeIgnoreCase(ext.getEtablissement())
-                    .flatMap(school -> kbCourseDao.findByEcoleAndCodeIgnoreCase(school, ext.getCode()))
-                    .ifPresent(kbCourse -> map.computeIfAbsent(kbCourse, k -> new ArrayList<>()).add(ext));
+    private KbIndex transactionIndex() {
+        long generation = KbChangeListener.generation();
+        KbIndex index = (KbIndex) TransactionSynchronizationManager.getResource(this);
+        if (index != null && index.generation() == generation) {
+            return index;
         }
-        return map;
+        KbIndex rebuilt = buildIndex(generation, TransactionDefinition.PROPAGATION_REQUIRED, null);
+        if (index != null) {
+            TransactionSynchronizationManager.unbindResource(this);
+        } else {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(KnowledgeBaseService.this);
+                }
+            });
+        }
+        TransactionSynchronizationManager.bindResource(this, rebuilt);
+        return rebuilt;
+    }
+
+    /**
+     * Charge la KB et construit l'index, dans une transaction en lecture seule
+     * (les trois chargements doivent partager le même contexte de persistance).
+     * Avec le moteur mapped, l'index inversé est la forme compilée projetée (pid.kb.snapshot.directory) ;
+     * un index privé garde un index inversé sur le tas, pour ne jamais écrire dans le répertoire partagé
+     * une KB non validée.
+     */
+    private KbIndex buildIndex(long generation, int propagation, Path snapshotDir) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(propagation);
+        tx.setReadOnly(true);
+        return tx.execute(status -> {
+            List<KbCourse> courses = kbCourseDao.findAllWithEcole();
+            List<KbCorrespondenceRule> rules = kbRuleDao.findAllWithSources();
+            kbRuleDao.findAllWithTargets();
+            return KbIndex.build(generation, courses, rules, snapshotDir);
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,662 @@
+package org.isfce.pid.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.isfce.pid.config.KbProperties;
+import org.isfce.pid.dao.IKbCorrespondenceRuleDao;
+import org.isfce.pid.dao.IKbCourseDao;
+import org.isfce.pid.dao.IKbSchoolDao;
+import org.isfce.pid.dao.IUeDao;
+import org.isfce.pid.dto.KbSyncProgressDto;
+import org.isfce.pid.dto.KbSyncReportDto;
+import org.isfce.pid.model.KbChangeListener;
+import org.isfce.pid.model.KbCodes;
+import org.isfce.pid.model.KbCorrespondenceRule;
+import org.isfce.pid.model.KbCorrespondenceRuleSource;
+import org.isfce.pid.model.KbCorrespondenceRuleTarget;
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.model.KbSchool;
+import org.isfce.pid.model.OrigineKb;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service de synchronisation de la Base de Connaissances (KB) avec son fichier JSON (pid.kb.file).
+ * Le fichier est relu en flux, école par école, comparé aux cours et règles présents en base, et seules les différences
+ * (insertions, mises à jour, suppressions) sont appliquées (écritures groupées par lots JDBC).
+ * Une école dont le contenu n'a pas changé depuis la dernière synchronisation (même empreinte SHA-256)
+ * est ignorée sans être relue en base. Seules les écoles issues du fichier sont supprimées lorsqu'il ne les contient
+ * plus : les écoles importées par CSV ({@link KbCsvImportService}) sont conservées ; une école importée par CSV qui
+ * apparaît dans le fichier passe sous le contrôle du fichier.
+ * Chaque école est synchronisée en parallèle dans sa propre transaction : une école en erreur est annulée seule
+ * et signalée dans le rapport, sans empêcher les autres. L'avancement est consultable pendant la synchronisation.
+ * Le moteur continue sur le snapshot précédent pendant toute la synchronisation et ne le reconstruit qu'une fois,
+ * à la fin ({@link KbChangeListener#beginBatch()}), et non après chaque école.
+ * Aucun redémarrage n'est nécessaire et les dossiers étudiants ne sont pas touchés ;
+ * les analyses en cours continuent sur le snapshot de la KB qu'elles utilisent (voir {@link KnowledgeBaseService}).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KnowledgeBaseSyncService {
+
+    private final ObjectMapper objectMapper;
+    private final ResourceLoader resourceLoader;
+    private final KbProperties properties;
+    private final IKbSchoolDao schoolDao;
+    private final IKbCourseDao courseDao;
+    private final IKbCorrespondenceRuleDao ruleDao;
+    private final IUeDao ueDao;
+    private final PlatformTransactionManager transactionManager;
+    private final MessageSource messageSource;
+
+    /**
+     * Une seule synchronisation à la fois (surveillance du fichier et déclenchement manuel).
+     * Le verrou est relâché après la validation de toutes les écoles : la synchronisation suivante voit leurs données.
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    /**
+     * Avancement de la synchronisation en cours ou de la dernière terminée (null avant la première).
+     */
+    private volatile SyncProgress progress;
+
+    // Records pour le mapping JSON
+    public record JsonCourse(String code, String libelle, int ects) {
+    }
+
+    public record JsonRule(String description, int minEcts, List<String> sources, List<String> cibles) {
+    }
+
+    public record JsonSchool(String code, String nom, String site, List<JsonCourse> cours, List<JsonRule> regles) {
+    }
+
+    /**
+     * Relit le fichier de la KB et synchronise la base avec son contenu.
+     * Le fichier est lu en flux (analyseur Jackson), une école à la fois : la mémoire utilisée est bornée
+     * par les écoles en cours de traitement, quelle que soit la taille du fichier.
+     *
+     * @return Le rapport des différences appliquées et le résultat de chaque école.
+     * @throws IllegalStateException Si le fichier est introuvable ou illisible. Les écoles lues avant l'erreur
+     *                               restent synchronisées ; aucune école n'est supprimée.
+     */
+    public KbSyncReportDto syncFromFile() {
+        return syncFromFile(false);
+    }
+
+    /**
+     * Relit le fichier de la KB et synchronise la base avec son contenu.
+     *
+     * @param force true pour resynchroniser toutes les écoles, même celles dont le contenu n'a pas changé
+     *              (ex: pour corriger des modifications faites directement en base).
+     * @return Le rapport des différences appliquées et le résultat de chaque école.
+     * @throws IllegalStateException Si le fichier est introuvable ou illisible.
+     */
+    public KbSyncReportDto syncFromFile(boolean force) {
+        Resource resource = kbResource();
+        try {
+            return sync((action, position) -> {
+                long length = resource.contentLength();
+                try (InputStream in = resource.getInputStream()) {
+                    forEachSchool(in, length, action, position);
+                }
+            }, force);
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException(msg("err.kb.file", resource.getDescription()), e);
+        }
+    }
+
+    /**
+     * Synchronise la base avec le contenu donné : seules les différences sont appliquées.
+     *
+     * @param schools Contenu complet attendu de la KB.
+     * @return Le rapport des différences appliquées et le résultat de chaque école.
+     */
+    public KbSyncReportDto sync(List<JsonSchool> schools) {
+        return sync(schools, false);
+    }
+
+    /**
+     * Synchronise la base avec le contenu donné.
+     *
+     * @param schools Contenu complet attendu de la KB.
+     * @param force   true pour resynchroniser aussi les écoles dont le contenu n'a pas changé.
+     * @return Le rapport des différences appliquées et le résultat de chaque école.
+     */
+    public KbSyncReportDto sync(List<JsonSchool> schools, boolean force) {
+        return sync((action, position) -> {
+            for (int i = 0; i < schools.size(); i++) {
+                action.accept(schools.get(i));
+                position.accept((i + 1.0) / schools.size());
+            }
+        }, force);
+    }
+
+    /**
+     * @return L'avancement de la synchronisation en cours (ou de la dernière terminée).
+     */
+    public KbSyncProgressDto progress() {
+        SyncProgress current = progress;
+        return current != null ? current.toDto() : new KbSyncProgressDto();
+    }
+
+    /**
+     * @return La ressource du fichier de la KB (pid.kb.file).
+     */
+    public Resource kbResource() {
+        return resourceLoader.getResource(properties.getFile());
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    /**
+     * Source des écoles à synchroniser, parcourue une seule fois.
+     * La source signale au fur et à mesure la part déjà lue (0..1) pour l'estimation du temps restant.
+     */
+    @FunctionalInterface
+    private interface SchoolSource {
+        void forEach(Consumer<JsonSchool> action, DoubleConsumer position) throws IOException;
+    }
+
+    /**
+     * Lit la source sur le thread appelant et synchronise chaque école sur un thread virtuel, dans sa propre
+     * transaction. Le parallélisme est borné par un sémaphore (pid.kb.sync.parallelism), ce qui borne aussi
+     * le nombre d'écoles désérialisées en mémoire. Une école dont l'empreinte du contenu est identique à celle
+     * enregistrée en base est ignorée, sans transaction (sauf si force). Les écoles absentes de la source sont
+     * ensuite supprimées, uniquement si la source a été lue jusqu'au bout.
+     */
+    private KbSyncReportDto sync(SchoolSource source, boolean force) {
+        syncLock.lock();
+        KbChangeListener.beginBatch(); // une seule reconstruction de l'index, à la fin de la synchronisation
+        try {
+            SyncProgress current = new SyncProgress();
+            progress = current;
+            KbSyncReportDto report = new KbSyncReportDto();
+            ConcurrentLinkedQueue<KbSyncReportDto.SchoolResult> results = new ConcurrentLinkedQueue<>();
+            Semaphore permits = new Semaphore(Math.max(1, properties.getSync().getParallelism()));
+
+            // Clés et empreintes existantes préchargées (sans charger les entités)
+            Map<String, String> hashes = new HashMap<>();
+            schoolDao.findAllHashes(OrigineKb.FICHIER).forEach(h -> hashes.put(h.getCodeKey(), h.getContentHash()));
+            Set<String> absentSchools = new HashSet<>(hashes.keySet());
+            Set<String> ueCodes = Set.copyOf(ueDao.findAllCodes());
+            Set<String> seen = new HashSet<>();
+            UncheckedIOException readError = null;
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                try {
+                    source.forEach(data -> {
+                        String key = KbCodes.normalize(data.code());
+                        if (!seen.add(key)) {
+                            log.warn("⚠️ École en double dans le fichier de la KB, ignorée : {}", data.code());
+                            return;
+                        }
+                        absentSchools.remove(key);
+                        String hash = contentHash(data, ueCodes);
+                        if (!force && hash.equals(hashes.get(key))) {
+                            skipSchool(data, report, results, current);
+                        } else {
+                            submit(executor, permits, () -> syncSchoolInTransaction(key, data, hash, ueCodes, report, results, current));
+                        }
+                    }, current::read);
+                } catch (IOException e) {
+                    readError = new UncheckedIOException(e);
+                } catch (UncheckedIOException e) {
+                    readError = e;
+                }
+                // Source incomplète : les écoles non lues ne doivent pas être prises pour des écoles retirées
+                if (readError == null) {
+                    for (String key : absentSchools) {
+                        submit(executor, permits, () -> syncSchoolInTransaction(key, null, null, ueCodes, report, results, current));
+                    }
+                }
+            } // close() attend la fin de toutes les écoles
+            current.finish();
+
+            KbSyncProgressDto done = current.toDto();
+            report.setSchoolsFailed(done.getSchoolsFailed());
+            report.setRowsRead(done.getRowsRead());
+            report.setDurationMs(done.getElapsedMs());
+            report.setRowsPerSecond(done.getRowsPerSecond());
+            report.setSchools(new ArrayList<>(results));
+
+            if (readError != null) {
+                log.error("❌ Lecture de la KB interrompue après {} école(s) : {}", results.size(), readError.getMessage());
+                throw readError;
+            }
+            if (report.isUnchanged()) {
+                log.info("Base de Connaissances déjà à jour : {} ligne(s) lue(s) en {} ms ({} lignes/s), {} école(s) inchangée(s) ignorée(s).",
+                        report.getRowsRead(), report.getDurationMs(), report.getRowsPerSecond(), report.getSchoolsSkipped());
+            } else {
+                log.info("Base de Connaissances synchronisée : {} ligne(s) lue(s) en {} ms ({} lignes/s) ; écoles +{} ~{} -{} ({} ignorées), cours +{} ~{} -{}, règles +{} -{} ({} inchangées).",
+                        report.getRowsRead(), report.getDurationMs(), report.getRowsPerSecond(),
+                        report.getSchoolsInserted(), report.getSchoolsUpdated(), report.getSchoolsDeleted(), report.getSchoolsSkipped(),
+                        report.getCoursesInserted(), report.getCoursesUpdated(), report.getCoursesDeleted(),
+                        report.getRulesInserted(), report.getRulesDeleted(), report.getRulesUnchanged());
+            }
+            if (report.getSchoolsFailed() > 0) {
+                log.warn("⚠️ {} école(s) non synchronisée(s) : {}", report.getSchoolsFailed(),
+                        results.stream().filter(r -> !r.success()).map(KbSyncReportDto.SchoolResult::school).toList());
+            }
+            return report;
+        } finally {
+            KbChangeListener.endBatch();
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Exécute une tâche sur le pool dès qu'un permis est disponible (le thread appelant attend sinon).
+     */
+    private static void submit(ExecutorService executor, Semaphore permits, Runnable task) {
+        permits.acquireUninterruptibly();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Consigne une école inchangée (même empreinte) sans la comparer à la base : ses règles sont comptées inchangées.
+     */
+    private static void skipSchool(JsonSchool data, KbSyncReportDto report,
+            Queue<KbSyncReportDto.SchoolResult> results, SyncProgress current) {
+        long rows = rowsOf(data);
+        KbSyncReportDto counts = new KbSyncReportDto();
+        counts.setSchoolsSkipped(1);
+        counts.setRulesUnchanged(rulesOf(data).size());
+        merge(report, counts);
+        results.add(new KbSyncReportDto.SchoolResult(data.code(), true, rows, null));
+        current.schoolDone(rows);
+    }
+
+    /**
+     * Synchronise une école dans sa propre transaction. En cas d'erreur, seule cette école est annulée :
+     * l'erreur est consignée dans le rapport et les autres écoles poursuivent.
+     */
+    private void syncSchoolInTransaction(String key, JsonSchool data, String hash, Set<String> ueCodes,
+            KbSyncReportDto report, Queue<KbSyncReportDto.SchoolResult> results, SyncProgress current) {
+        String school = data != null ? data.code() : key;
+        long rows = data != null ? rowsOf(data) : 0;
+        KbSyncReportDto counts = new KbSyncReportDto();
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> syncSchool(key, data, hash, ueCodes, counts));
+            merge(report, counts);
+            results.add(new KbSyncReportDto.SchoolResult(school, true, rows, null));
+            current.schoolDone(rows);
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Synchronisation de l'école {} annulée : {}", school, e.getMessage());
+            results.add(new KbSyncReportDto.SchoolResult(school, false, rows, e.getMessage()));
+            current.schoolFailed(rows);
+        }
+    }
+
+    /**
+     * Ajoute au rapport global les compteurs d'une école (appelé depuis plusieurs threads).
+     */
+    private static void merge(KbSyncReportDto report, KbSyncReportDto counts) {
+        synchronized (report) {
+            report.setSchoolsInserted(report.getSchoolsInserted() + counts.getSchoolsInserted());
+            report.setSchoolsUpdated(report.getSchoolsUpdated() + counts.getSchoolsUpdated());
+            report.setSchoolsDeleted(report.getSchoolsDeleted() + counts.getSchoolsDeleted());
+            report.setSchoolsSkipped(report.getSchoolsSkipped() + counts.getSchoolsSkipped());
+            report.setCoursesInserted(report.getCoursesInserted() + counts.getCoursesInserted());
+            report.setCoursesUpdated(report.getCoursesUpdated() + counts.getCoursesUpdated());
+            report.setCoursesDeleted(report.getCoursesDeleted() + counts.getCoursesDeleted());
+            report.setRulesInserted(report.getRulesInserted() + counts.getRulesInserted());
+            report.setRulesDeleted(report.getRulesDeleted() + counts.getRulesDeleted());
+            report.setRulesUnchanged(report.getRulesUnchanged() + counts.getRulesUnchanged());
+        }
+    }
+
+    /**
+     * Parcourt en flux le tableau JSON des écoles : une seule école est désérialisée à la fois.
+     * La part lue est estimée par la position dans le fichier (si sa taille est connue).
+     */
+    private void forEachSchool(InputStream in, long length, Consumer<JsonSchool> action, DoubleConsumer position)
+            throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Tableau d'écoles attendu");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                action.accept(objectMapper.readValue(parser, JsonSchool.class));
+                if (length > 0) {
+                    position.accept(Math.min(1.0, (double) parser.currentLocation().getByteOffset() / length));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare une école du fichier (null si elle en est absente) à son état en base et applique les différences.
+     * Quatre requêtes par école, quel que soit son nombre de cours et de règles.
+     * Ordre : suppressions (règles, cours, école) puis insertions / mises à jour (école, cours, règles).
+     * L'empreinte du contenu est enregistrée avec l'école (validée avec le reste de la transaction).
+     */
+    private void syncSchool(String schoolKey, JsonSchool data, String hash, Set<String> ueCodes, KbSyncReportDto report) {
+        // 1. État actuel de l'école
+        KbSchool school = schoolDao.findByCodeKey(schoolKey).orElse(null);
+        Map<String, KbCourse> dbCourses = new HashMap<>();
+        Map<String, Deque<KbCorrespondenceRule>> dbRules = new HashMap<>();
+        if (school != null) {
+            courseDao.findByEcole(school).forEach(c -> dbCourses.put(c.getCodeKey(), c));
+            List<KbCorrespondenceRule> rules = ruleDao.findByEcoleWithSources(school);
+            ruleDao.findByEcoleWithTargets(school);
+            rules.forEach(r -> dbRules.computeIfAbsent(signature(r), k -> new ArrayDeque<>()).add(r));
+        }
+        Map<String, JsonCourse> fileCourses = data == null ? Map.of() : coursesOf(data);
+
+        // 2. Règles : identiques (conservées), disparues (supprimées), nouvelles (à insérer)
+        List<JsonRule> rulesToInsert = new ArrayList<>();
+        if (data != null) {
+            for (JsonRule rule : rulesOf(data)) {
+                Deque<KbCorrespondenceRule> same = dbRules.get(signature(rule, fileCourses, ueCodes));
+                if (same != null && !same.isEmpty()) {
+                    same.poll();
+                    report.setRulesUnchanged(report.getRulesUnchanged() + 1);
+                } else {
+                    rulesToInsert.add(rule);
+                }
+            }
+        }
+        List<KbCorrespondenceRule> rulesToDelete = new ArrayList<>();
+        dbRules.values().forEach(rulesToDelete::addAll);
+        ruleDao.deleteAll(rulesToDelete);
+        report.setRulesDeleted(report.getRulesDeleted() + rulesToDelete.size());
+
+        // 3. Suppressions : cours absents du fichier, puis l'école elle-même si elle en est absente
+        List<KbCourse> coursesToDelete = dbCourses.entrySet().stream()
+                .filter(e -> !fileCourses.containsKey(e.getKey()))
+                .map(Map.Entry::getValue)
+                .toList();
+        courseDao.deleteAll(coursesToDelete);
+        report.setCoursesDeleted(report.getCoursesDeleted() + coursesToDelete.size());
+        if (data == null) {
+            if (school != null) {
+                schoolDao.delete(school);
+                report.setSchoolsDeleted(report.getSchoolsDeleted() + 1);
+            }
+            return;
+        }
+        ruleDao.flush();
+
+        // 4. Insertions et mises à jour : école, cours, puis nouvelles règles
+        KbSchool upserted = upsertSchool(school, data, report);
+        upserted.setContentHash(hash);
+        List<KbCourse> coursesToInsert = new ArrayList<>();
+        Map<String, KbCourse> courseMap = new HashMap<>();
+        fileCourses.forEach((courseKey, c) -> {
+            KbCourse course = dbCourses.get(courseKey);
+            if (course == null) {
+                course = KbCourse.builder()
+                        .ecole(upserted)
+                        .code(c.code())
+                        .libelle(c.libelle())
+                        .ects(c.ects())
+                        .urlProgramme(upserted.getUrlProgramme())
+                        .build();
+                coursesToInsert.add(course);
+            } else if (updateCourse(course, c, upserted)) {
+                report.setCoursesUpdated(report.getCoursesUpdated() + 1);
+            }
+            courseMap.put(courseKey, course);
+        });
+        courseDao.saveAll(coursesToInsert);
+        report.setCoursesInserted(report.getCoursesInserted() + coursesToInsert.size());
+
+        List<KbCorrespondenceRule> newRules = rulesToInsert.stream()
+                .map(r -> createRule(upserted, r, courseMap, ueCodes))
+                .toList();
+        ruleDao.saveAll(newRules);
+        report.setRulesInserted(report.getRulesInserted() + newRules.size());
+    }
+
+    /**
+     * Insère l'école si elle est nouvelle, sinon met à jour son code brut, son nom et son site s'ils ont changé.
+     */
+    private KbSchool upsertSchool(KbSchool school, JsonSchool data, KbSyncReportDto report) {
+        if (school == null) {
+            report.setSchoolsInserted(report.getSchoolsInserted() + 1);
+            return schoolDao.save(KbSchool.builder()
+                    .code(data.code())
+                    .etablissement(data.nom())
+                    .urlProgramme(data.site())
+                    .build());
+        }
+        school.setOrigine(OrigineKb.FICHIER); // le fichier fait foi pour les écoles qu'il contient
+        if (!Objects.equals(school.getCode(), data.code())
+                || !Objects.equals(school.getEtablissement(), data.nom())
+                || !Objects.equals(school.getUrlProgramme(), data.site())) {
+            school.setCode(data.code());
+            school.setEtablissement(data.nom());
+            school.setUrlProgramme(data.site());
+            report.setSchoolsUpdated(report.getSchoolsUpdated() + 1);
+        }
+        return school;
+    }
+
+    /**
+     * Met à jour un cours existant s'il diffère du fichier (mise à jour détectée par Hibernate au flush).
+     *
+     * @return true si le cours a été modifié.
+     */
+    private boolean updateCourse(KbCourse course, JsonCourse data, KbSchool school) {
+        if (Objects.equals(course.getCode(), data.code())
+                && Objects.equals(course.getLibelle(), data.libelle())
+                && course.getEcts() == data.ects()
+                && Objects.equals(course.getUrlProgramme(), school.getUrlProgramme())) {
+            return false;
+        }
+        course.setCode(data.code());
+        course.setLibelle(data.libelle());
+        course.setEcts(data.ects());
+        course.setUrlProgramme(school.getUrlProgramme());
+        return true;
+    }
+
+    /**
+     * Crée une règle de correspondance entre des cours externes et des UEs internes.
+     */
+    private KbCorrespondenceRule createRule(KbSchool school, JsonRule r, Map<String, KbCourse> courseMap, Set<String> ueCodes) {
+        KbCorrespondenceRule rule = KbCorrespondenceRule.builder()
+                .ecole(school)
+                .description(r.description())
+                .minTotalEcts(r.minEcts())
+                .build();
+
+        for (String sourceCode : listOf(r.sources())) {
+            KbCourse course = courseMap.get(KbCodes.normalize(sourceCode));
+            if (course != null) {
+                rule.addSource(KbCorrespondenceRuleSource.builder().rule(rule).cours(course).build());
+            } else {
+                log.warn("⚠️ Cours source introuvable pour la règle '{}' : {}", r.description(), sourceCode);
+            }
+        }
+        for (String ueCode : listOf(r.cibles())) {
+            if (ueCodes.contains(ueCode)) {
+                // Référence sans chargement : seule la clé étrangère est nécessaire
+                rule.addTarget(KbCorrespondenceRuleTarget.builder().rule(rule).ue(ueDao.getReferenceById(ueCode)).build());
+            } else {
+                log.warn("⚠️ UE cible introuvable pour la règle '{}' : {}", r.description(), ueCode);
+            }
+        }
+        return rule;
+    }
+
+    /**
+     * Empreinte SHA-256 du contenu d'une école : sa forme JSON canonique (ordre des champs des records),
+     * complétée des UEs cibles encore inconnues, pour qu'une école soit resynchronisée quand l'une d'elles apparaît.
+     */
+    private String contentHash(JsonSchool data, Set<String> ueCodes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(objectMapper.writeValueAsBytes(data));
+            rulesOf(data).stream()
+                    .flatMap(r -> listOf(r.cibles()).stream())
+                    .filter(ue -> !ueCodes.contains(ue))
+                    .sorted()
+                    .forEach(ue -> digest.update(("\u0000" + ue).getBytes(StandardCharsets.UTF_8)));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 est toujours disponible
+        }
+    }
+
+    /**
+     * Contenu d'une règle en base : description, minimum d'ECTS, sources et cibles (triées).
+     * Une règle n'ayant pas de clé métier, deux règles sont identiques si leur contenu l'est.
+     */
+    static String signature(KbCorrespondenceRule rule) {
+        return signature(rule.getDescription(), rule.getMinTotalEcts() != null ? rule.getMinTotalEcts() : 0,
+                rule.getSources().stream().map(s -> s.getCours().getCodeKey()),
+                rule.getTargets().stream().map(t -> t.getUe().getCode()));
+    }
+
+    /**
+     * Contenu d'une règle du fichier, limité aux sources et cibles résolues (celles qui seraient enregistrées).
+     */
+    private static String signature(JsonRule rule, Map<String, JsonCourse> courses, Set<String> ueCodes) {
+        return signature(rule.description(), rule.minEcts(),
+                listOf(rule.sources()).stream().map(KbCodes::normalize).filter(courses::containsKey),
+                listOf(rule.cibles()).stream().filter(ueCodes::contains));
+    }
+
+    static String signature(String description, int minEcts, Stream<String> sources, Stream<String> targets) {
+        return description + '\u0000' + minEcts
+                + '\u0000' + sources.sorted().collect(Collectors.joining(","))
+                + '\u0000' + targets.sorted().collect(Collectors.joining(","));
+    }
+
+    /**
+     * Cours d'une école du fichier, indexés par code normalisé (en cas de doublon, la première occurrence l'emporte).
+     */
+    private static Map<String, JsonCourse> coursesOf(JsonSchool school) {
+        Map<String, JsonCourse> courses = new LinkedHashMap<>();
+        for (JsonCourse course : listOf(school.cours())) {
+            courses.putIfAbsent(KbCodes.normalize(course.code()), course);
+        }
+        return courses;
+    }
+
+    /**
+     * Nombre de lignes d'une école du fichier (école + cours + règles).
+     */
+    private static long rowsOf(JsonSchool school) {
+        return 1 + listOf(school.cours()).size() + rulesOf(school).size();
+    }
+
+    private static List<JsonRule> rulesOf(JsonSchool school) {
+        return listOf(school.regles());
+    }
+
+    private static <T> List<T> listOf(List<T> list) {
+        return list != null ? list : List.of();
+    }
+
+    /**
+     * Compteurs d'avancement d'une synchronisation, mis à jour par les threads des écoles.
+     */
+    private static final class SyncProgress {
+
+        private final long start = System.nanoTime();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong rows = new AtomicLong();
+        private volatile double position = -1; // part de la source lue (0..1), -1 si inconnue
+        private volatile long end;             // 0 tant que la synchronisation est en cours
+
+        void read(double part) {
+            position = part;
+        }
+
+        void schoolDone(long schoolRows) {
+            rows.addAndGet(schoolRows);
+            done.incrementAndGet();
+        }
+
+        void schoolFailed(long schoolRows) {
+            rows.addAndGet(schoolRows);
+            failed.incrementAndGet();
+        }
+
+        void finish() {
+            end = System.nanoTime();
+        }
+
+        KbSyncProgressDto toDto() {
+            long finished = end;
+            boolean running = finished == 0;
+            long elapsedNanos = Math.max((running ? System.nanoTime() : finished) - start, 1);
+            double part = position;
+            Long eta = null;
+            if (!running) {
+                eta = 0L;
+            } else if (part > 0) {
+                // Le reste de la source devrait prendre le même temps par octet que la partie déjà lue
+                eta = Math.round(elapsedNanos / 1e6 * (1 - part) / part);
+            }
+            return KbSyncProgressDto.builder()
+                    .running(running)
+                    .schoolsDone(done.get())
+                    .schoolsFailed(failed.get())
+                    .rowsRead(rows.get())
+                    .elapsedMs(elapsedNanos / 1_000_000)
+                    .rowsPerSecond(Math.round(rows.get() * 1e9 / elapsedNanos * 10) / 10.0)
+                    .percent(part >= 0 ? Math.round(part * 1000) / 10.0 : null)
+                    .etaMs(eta)
+                    .build();
+        }
+    }
+
+    private String msg(String code, Object... args) {
+        return messageSource.getMessage(code, args, LocaleContextHolder.getLocale());
+    }
+}
@@ -0,0 +1,171 @@
+package org.isfce.pid.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.isfce.pid.config.ReviewProperties;
+import org.isfce.pid.dao.IExemptionRequestDao;
+import org.isfce.pid.dto.ExemptionChangeDto;
+import org.isfce.pid.dto.ReviewQueueEntryDto;
+import org.isfce.pid.dto.ReviewQueuePageDto;
+import org.isfce.pid.model.StatutDemande;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Service de la file de traitement des dossiers soumis (professeurs et administration).
+ * <p>
+ * Un professeur prend en traitement (statut IN_REVIEW) les prochains dossiers de la file par une mise à jour
+ * conditionnelle unique : un dossier déjà pris par un autre professeur est ignoré, si bien que plusieurs professeurs
+ * peuvent puiser simultanément dans la file sans jamais obtenir le même dossier. Chaque prise est un bail
+ * (pid.review.lease) : un dossier dont le bail a expiré sans être renouvelé redevient disponible.
+ * La file se parcourt par curseur (date de soumission, id) : coût constant, même pour une file très longue.
+ */
+@Service
+@Transactional
+@RequiredArgsConstructor
+public class ReviewQueueService {
+
+    /**
+     * Nombre de tentatives d'une prise groupée quand des candidats ont été pris entre-temps par d'autres professeurs.
+     */
+    private static final int MAX_CLAIM_ATTEMPTS = 3;
+
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+
+    private final IExemptionRequestDao reqDao;
+    private final ReviewProperties properties;
+    private final ApplicationEventPublisher events;
+    private final MessageSource messageSource;
+
+    /**
+     * Prend en traitement les prochains dossiers de la file (les plus anciens d'abord).
+     *
+     * @param reviewer Le professeur (email).
+     * @param section  Code de la section, ou null pour toutes les sections.
+     * @param count    Nombre de dossiers souhaités (au plus pid.review.max-claim).
+     * @return Les dossiers obtenus (moins que demandé si la file est épuisée).
+     * @throws IllegalArgumentException Si le professeur n'est pas indiqué ou si le nombre demandé est invalide.
+     */
+    public List<ReviewQueueEntryDto> claimNext(String reviewer, String section, int count) {
+        requireReviewer(reviewer);
+        if (count < 1 || count > properties.getMaxClaim()) {
+            throw new IllegalArgumentException(msg("err.review.count", properties.getMaxClaim()));
+        }
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(properties.getLease());
+        UUID token = UUID.randomUUID();
+
+        List<UUID> proposed = new ArrayList<>();
+        int remaining = count;
+        for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS && remaining > 0; attempt++) {
+            List<UUID> candidates = reqDao.findClaimableIds(section, now, Limit.of(remaining));
+            if (candidates.isEmpty()) {
+                break;
+            }
+            proposed.addAll(candidates);
+            boolean exhausted = candidates.size() < remaining;
+            remaining -= reqDao.claim(candidates, reviewer, expiresAt, token, now);
+            if (exhausted) {
+                break; // la file ne contenait pas davantage de dossiers disponibles
+            }
+        }
+        if (proposed.isEmpty()) {
+            return List.of();
+        }
+
+        List<ReviewQueueEntryDto> claimed = reqDao.findClaimed(proposed, token);
+        claimed.forEach(e -> publish(e, StatutDemande.IN_REVIEW));
+        return claimed;
+    }
+
+    /**
+     * Prolonge le bail d'un dossier en traitement.
+     *
+     * @param requestId Identifiant de la demande.
+     * @param reviewer  Le professeur qui la détient.
+     * @throws IllegalStateException Si le dossier n'est pas (ou plus) en traitement par ce professeur.
+     */
+    public void renewClaim(UUID requestId, String reviewer) {
+        requireReviewer(reviewer);
+        Instant now = Instant.now();
+        if (reqDao.renewClaim(requestId, reviewer, now.plus(properties.getLease()), now) == 0) {
+            throw new IllegalStateException(msg("err.review.notClaimed"));
+        }
+    }
+
+    /**
+     * Remet un dossier en traitement dans la file (statut SUBMITTED), sans décision.
+     *
+     * @param requestId Identifiant de la demande.
+     * @param reviewer  Le professeur qui la détient.
+     * @throws IllegalStateException Si le dossier n'est pas (ou plus) en traitement par ce professeur.
+     */
+    public void releaseClaim(UUID requestId, String reviewer) {
+        requireReviewer(reviewer);
+        if (reqDao.releaseClaim(requestId, reviewer, Instant.now()) == 0) {
+            throw new IllegalStateException(msg("err.review.notClaimed"));
+        }
+        reqDao.findById(requestId).ifPresent(req -> events.publishEvent(new ExemptionChangedEvent(
+                req.getEtudiant().getEmail(), ExemptionChangeDto.of(ExemptionChangeDto.Type.REQUEST_STATUS_CHANGED, req))));
+    }
+
+    /**
+     * Liste la file d'une section, par ordre de soumission, page par page.
+     *
+     * @param section   Code de la section.
+     * @param statut    Statut des dossiers listés (SUBMITTED par défaut).
+     * @param afterDate Curseur : date de soumission du dernier dossier de la page précédente (null pour la première page).
+     * @param afterId   Curseur : identifiant du dernier dossier de la page précédente.
+     * @param size      Taille de la page (au plus pid.review.max-page-size).
+     * @return La page et le curseur de la suivante.
+     */
+    @Transactional(readOnly = true)
+    public ReviewQueuePageDto listQueue(String section, StatutDemande statut, Instant afterDate, UUID afterId, int size) {
+        int pageSize = Math.clamp(size, 1, properties.getMaxPageSize());
+        List<ReviewQueueEntryDto> entries = reqDao.findQueuePage(section,
+                statut != null ? statut : StatutDemande.SUBMITTED,
+                afterDate != null ? afterDate : Instant.EPOCH,
+                afterDate != null && afterId != null ? afterId : FIRST_ID,
+                Limit.of(pageSize + 1));
+
+        if (entries.size() <= pageSize) {
+            return new ReviewQueuePageDto(entries, null, null);
+        }
+        List<ReviewQueueEntryDto> page = entries.subList(0, pageSize);
+        ReviewQueueEntryDto last = page.get(pageSize - 1);
+        return new ReviewQueuePageDto(new ArrayList<>(page), last.getSubmittedAt(), last.getRequestId());
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    private void requireReviewer(String reviewer) {
+        if (reviewer == null || reviewer.isBlank()) {
+            throw new IllegalArgumentException(msg("err.review.reviewer"));
+        }
+    }
+
+    /**
+     * Signale à l'étudiant le changement de statut de son dossier (après validation de la transaction).
+     */
+    private void publish(ReviewQueueEntryDto entry, StatutDemande statut) {
+        events.publishEvent(new ExemptionChangedEvent(entry.getStudentEmail(), ExemptionChangeDto.builder()
+                .type(ExemptionChangeDto.Type.REQUEST_STATUS_CHANGED)
+                .requestId(entry.getRequestId())
+                .statut(statut)
+                .occurredAt(Instant.now())
+                .build()));
+    }
+
+    private String msg(String code, Object... args) {
+        return messageSource.getMessage(code, args, LocaleContextHolder.getLocale());
+    }
+}
@@ -0,0 +1,256 @@
+package org.isfce.pid.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.isfce.pid.dto.AddExternalCourseDto;
+import org.isfce.pid.dto.AddExternalCoursesDto;
+import org.isfce.pid.dto.ExternalCourseDto;
+import org.isfce.pid.dto.ExternalCoursesAddedDto;
+import org.isfce.pid.dto.TranscriptImportReportDto;
+import org.isfce.pid.dto.TranscriptImportReportDto.RowResult;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Service d'import d'un relevé de notes complet dans un dossier de dispense, en une seule requête.
+ * Le relevé est lu (CSV ou JSON), chaque ligne est validée avec les contraintes de {@link AddExternalCourseDto},
+ * puis tous les cours valides sont créés dans une seule transaction ({@link ExemptionService#addExternalCourses}) :
+ * un seul chargement du dossier, une insertion groupée. L'analyse du dossier peut suivre dans la même transaction.
+ * Chaque ligne reçoit son résultat (ajoutée, invalide ou déjà présente) ; une ligne refusée ne bloque pas les autres.
+ * <p>
+ * Formats acceptés (détectés sur le contenu) :
+ * <ul>
+ *   <li>JSON : tableau de cours, ou objet {@code {"courses": [...]}} ; champs etablissement, code, libelle, ects, urlProgramme ;</li>
+ *   <li>CSV : en-tête obligatoire, séparateur ";" ou ","; colonnes etablissement (ou ecole), code, libelle (ou intitule),
+ *       ects et url (facultative) — l'établissement peut être omis s'il est fourni pour tout le relevé.</li>
+ * </ul>
+ */
+@Service
+@Transactional
+@RequiredArgsConstructor
+public class TranscriptImportService {
+
+    private final ExemptionService exemptionService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final MessageSource messageSource;
+
+    /**
+     * Ligne lue du relevé : le cours, ou l'erreur qui l'empêche d'être ajouté.
+     */
+    private record TranscriptRow(long row, AddExternalCourseDto course, String error) {
+    }
+
+    /**
+     * Importe un relevé de notes dans un dossier en brouillon.
+     *
+     * @param requestId     Identifiant de la demande.
+     * @param in            Le contenu du relevé (UTF-8).
+     * @param etablissement Établissement par défaut des cours (facultatif, ex: relevé d'une seule école).
+     * @param analyze       true pour lancer le moteur de règles une fois les cours ajoutés.
+     * @return Le résultat de chaque ligne, et le dossier analysé si demandé.
+     * @throws IllegalArgumentException Si le relevé est vide, illisible, mal formé ou trop long.
+     * @throws IllegalStateException    Si le dossier n'est plus en brouillon.
+     */
+    public TranscriptImportReportDto importTranscript(UUID requestId, InputStream in, String etablissement, boolean analyze) {
+        String content;
+        try {
+            content = CsvSupport.stripBom(new String(in.readAllBytes(), StandardCharsets.UTF_8)).strip();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(msg("err.transcript.read"), e);
+        }
+        if (content.isEmpty()) {
+            throw new IllegalArgumentException(msg("err.transcript.empty"));
+        }
+        List<TranscriptRow> rows = content.startsWith("[") || content.startsWith("{")
+                ? parseJson(content, etablissement)
+                : parseCsv(content, etablissement);
+        if (rows.size() > AddExternalCoursesDto.MAX_COURSES) {
+            throw new IllegalArgumentException(msg("err.transcript.tooLarge", AddExternalCoursesDto.MAX_COURSES));
+        }
+
+        // 1. Validation de chaque ligne (mêmes contraintes que l'ajout unitaire)
+        List<TranscriptRow> valid = new ArrayList<>();
+        Map<Long, String> errors = new HashMap<>(); // numéro de ligne → raison du refus
+        for (TranscriptRow row : rows) {
+            String error = row.error() != null ? row.error() : validate(row.course());
+            if (error != null) {
+                errors.put(row.row(), error);
+            } else {
+                valid.add(row);
+            }
+        }
+
+        // 2. Création groupée des cours valides (doublons signalés par ligne)
+        AddExternalCoursesDto dto = new AddExternalCoursesDto();
+        dto.setCourses(valid.stream().map(TranscriptRow::course).toList());
+        ExternalCoursesAddedDto added = exemptionService.addExternalCourses(requestId, dto);
+        added.getErrors().forEach(e -> errors.put(valid.get(e.index()).row(), e.message()));
+
+        // 3. Résultat ligne par ligne, dans l'ordre du relevé
+        Iterator<ExternalCourseDto> created = added.getAdded().iterator();
+        List<RowResult> results = new ArrayList<>(rows.size());
+        for (TranscriptRow row : rows) {
+            String code = row.course() != null ? row.course().getCode() : null;
+            String error = errors.get(row.row());
+            results.add(error != null
+                    ? new RowResult(row.row(), code, false, null, error)
+                    : new RowResult(row.row(), code, true, created.next().getId(), null));
+        }
+
+        return TranscriptImportReportDto.builder()
+                .rowsRead(rows.size())
+                .coursesAdded(added.getAdded().size())
+                .rowsRejected(errors.size())
+                .rows(results)
+                .analysis(analyze ? exemptionService.analyzeRequest(requestId) : null)
+                .build();
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    /**
+     * Lit un relevé JSON : tableau de cours ou objet {"courses": [...]} ; un élément illisible est refusé seul.
+     */
+    private List<TranscriptRow> parseJson(String content, String etablissement) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(content);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(msg("err.transcript.json", e.getOriginalMessage()));
+        }
+        JsonNode courses = root.isObject() ? root.path("courses") : root;
+        if (!courses.isArray()) {
+            throw new IllegalArgumentException(msg("err.transcript.json", "courses"));
+        }
+        List<TranscriptRow> rows = new ArrayList<>(courses.size());
+        for (int i = 0; i < courses.size(); i++) {
+            try {
+                AddExternalCourseDto course = objectMapper.treeToValue(courses.get(i), AddExternalCourseDto.class);
+                rows.add(new TranscriptRow(i + 1, withDefaultEtablissement(course, etablissement), null));
+            } catch (JsonProcessingException e) {
+                rows.add(new TranscriptRow(i + 1, null, msg("err.transcript.json", e.getOriginalMessage())));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Lit un relevé CSV ; une ligne mal formée est refusée seule.
+     */
+    private List<TranscriptRow> parseCsv(String content, String etablissement) {
+        List<TranscriptRow> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            String header = reader.readLine();
+            char separator = CsvSupport.separator(header);
+            Map<String, Integer> columns = CsvSupport.columns(split(header, separator));
+            for (String column : List.of("code", "ects")) {
+                if (!columns.containsKey(column)) {
+                    throw new IllegalArgumentException(msg("err.csv.header", column));
+                }
+            }
+            if (!columns.containsKey("libelle") && !columns.containsKey("intitule")) {
+                throw new IllegalArgumentException(msg("err.csv.header", "libelle"));
+            }
+            if (etablissement == null && !columns.containsKey("etablissement") && !columns.containsKey("ecole")) {
+                throw new IllegalArgumentException(msg("err.csv.header", "etablissement"));
+            }
+
+            long lineNumber = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    rows.add(new TranscriptRow(lineNumber, csvCourse(split(line, separator), columns, etablissement), null));
+                } catch (IllegalArgumentException e) {
+                    rows.add(new TranscriptRow(lineNumber, null, e.getMessage()));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(msg("err.transcript.read"), e);
+        }
+        return rows;
+    }
+
+    private AddExternalCourseDto csvCourse(List<String> fields, Map<String, Integer> columns, String etablissement) {
+        AddExternalCourseDto course = new AddExternalCourseDto();
+        course.setEtablissement(firstNonNull(CsvSupport.field(fields, columns, "etablissement"),
+                CsvSupport.field(fields, columns, "ecole")));
+        course.setCode(CsvSupport.field(fields, columns, "code"));
+        course.setLibelle(firstNonNull(CsvSupport.field(fields, columns, "libelle"),
+                CsvSupport.field(fields, columns, "intitule")));
+        course.setUrlProgramme(firstNonNull(CsvSupport.field(fields, columns, "url"),
+                CsvSupport.field(fields, columns, "urlprogramme")));
+        String ects = CsvSupport.field(fields, columns, "ects");
+        if (ects != null) {
+            try {
+                course.setEcts(Integer.parseInt(ects));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(msg("err.csv.number", "ects", ects));
+            }
+        }
+        return withDefaultEtablissement(course, etablissement);
+    }
+
+    private static AddExternalCourseDto withDefaultEtablissement(AddExternalCourseDto course, String etablissement) {
+        if (course != null && (course.getEtablissement() == null || course.getEtablissement().isBlank())) {
+            course.setEtablissement(etablissement);
+        }
+        return course;
+    }
+
+    /**
+     * Contraintes de {@link AddExternalCourseDto} non respectées ("champ : message"), ou null si la ligne est valide.
+     */
+    private String validate(AddExternalCourseDto course) {
+        if (course == null) {
+            return msg("err.transcript.json", "null");
+        }
+        Set<ConstraintViolation<AddExternalCourseDto>> violations = validator.validate(course);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .sorted(Comparator.comparing(v -> v.getPropertyPath().toString()))
+                .map(v -> v.getPropertyPath() + " : " + v.getMessage())
+                .collect(Collectors.joining(", "));
+    }
+
+    private List<String> split(String line, char separator) {
+        return CsvSupport.split(line, separator, () -> msg("err.csv.quote"));
+    }
+
+    private static String firstNonNull(String first, String second) {
+        return first != null ? first : second;
+    }
+
+    private String msg(String code, Object... args) {
+        return messageSource.getMessage(code, args, LocaleContextHolder.getLocale());
+    }
+}
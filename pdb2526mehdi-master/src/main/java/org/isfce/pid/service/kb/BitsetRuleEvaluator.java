@@ -0,0 +1,79 @@
+package org.isfce.pid.service.kb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.isfce.pid.model.ExternalCourse;
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.service.KnowledgeBaseService.RuleMatch;
+import org.isfce.pid.service.kb.KbBitset.Scratch;
+
+/**
+ * Évaluateur de règles sur la forme compilée {@link KbBitset} de l'index.
+ * Les cours reconnus de l'étudiant sont posés dans un bitset, les règles candidates sont obtenues
+ * par l'index inversé primitif, et chaque règle est testée par inclusion (ET mot à mot) puis
+ * par la somme des ECTS plafonnés lue dans un tableau {@code int[]}.
+ * Hormis les {@link RuleMatch} produits, l'évaluation ne fait quasiment aucune allocation.
+ * Produit exactement les mêmes résultats que {@link CountingRuleEvaluator}.
+ */
+public final class BitsetRuleEvaluator implements RuleEvaluator {
+
+    /**
+     * Dernière forme compilée (recompilée lorsque l'index change).
+     */
+    private volatile KbBitset compiled;
+
+    @Override
+    public List<RuleMatch> evaluate(KbIndex index, Map<KbCourse, List<ExternalCourse>> recognizedCourses) {
+        KbBitset bitset = compiled(index);
+        Scratch s = bitset.acquire();
+        try {
+            // 1. Poser les cours reconnus dans le bitset et collecter les règles candidates
+            for (Map.Entry<KbCourse, List<ExternalCourse>> entry : recognizedCourses.entrySet()) {
+                int ord = bitset.ordinalOf(entry.getKey());
+                if (ord < 0 || entry.getValue().isEmpty()) {
+                    continue;
+                }
+                bitset.touch(s, ord, CountingRuleEvaluator.safeEcts(entry.getKey(), entry.getValue()));
+            }
+
+            // 2. Tester les candidates dans l'ordre des ordinaux (résultats stables)
+            Arrays.sort(s.candidates, 0, s.candidateCount);
+            List<RuleMatch> matches = null;
+            for (int i = 0; i < s.candidateCount; i++) {
+                int r = s.candidates[i];
+                if (bitset.sourcesPresent(s, r) && bitset.ectsSufficient(s, r)) {
+                    if (matches == null) {
+                        matches = new ArrayList<>();
+                    }
+                    KbIndex.IndexedRule rule = index.rules().get(r);
+                    matches.add(RuleMatch.of(index, rule, CountingRuleEvaluator.justifyingCourses(rule, recognizedCourses), 1.0));
+                }
+            }
+            return matches == null ? List.of() : matches;
+        } finally {
+            bitset.release(s);
+        }
+    }
+
+    @Override
+    public void warmUp(KbIndex index) {
+        compiled(index);
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    /**
+     * Retourne la forme compilée correspondant à l'index, en la recompilant si nécessaire.
+     */
+    private KbBitset compiled(KbIndex index) {
+        KbBitset current = compiled;
+        if (current == null || current.source() != index) {
+            current = KbBitset.compile(index);
+            compiled = current;
+        }
+        return current;
+    }
+}
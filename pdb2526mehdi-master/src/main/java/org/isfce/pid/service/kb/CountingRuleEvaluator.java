@@ -0,0 +1,99 @@
+package org.isfce.pid.service.kb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.isfce.pid.model.ExternalCourse;
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.service.KnowledgeBaseService.RuleMatch;
+import org.isfce.pid.service.kb.KbIndex.IndexedRule;
+import org.isfce.pid.service.kb.KbIndex.SourceRef;
+
+/**
+ * Évaluateur de règles par comptage sur index inversé.
+ * Au lieu de tester toutes les règles des écoles concernées, il ne parcourt que les règles
+ * qui utilisent comme source un cours reconnu de l'étudiant et incrémente un compteur par règle.
+ * Une règle se déclenche lorsque son compteur atteint son nombre de sources distinctes,
+ * puis le contrôle du minimum d'ECTS cumulés est appliqué.
+ * Le coût est proportionnel au nombre de cours de l'étudiant, pas à la taille de la KB.
+ */
+public final class CountingRuleEvaluator implements RuleEvaluator {
+
+    /**
+     * Progression d'une règle touchée par au moins un cours de l'étudiant.
+     */
+    private static final class RuleProgress {
+        private int hits;
+        private int ects;
+    }
+
+    /**
+     * {@inheritDoc}
+     * SÉCURITÉ : les ECTS de chaque cours sont plafonnés au minimum entre les ECTS déclarés
+     * et les ECTS officiels de la KB (contre le surgonflage et les cursus obsolètes).
+     */
+    @Override
+    public List<RuleMatch> evaluate(KbIndex index, Map<KbCourse, List<ExternalCourse>> recognizedCourses) {
+        Map<IndexedRule, RuleProgress> touched = new HashMap<>();
+
+        // 1. Incrémenter les compteurs des seules règles référençant un cours reconnu
+        for (Map.Entry<KbCourse, List<ExternalCourse>> entry : recognizedCourses.entrySet()) {
+            List<SourceRef> refs = index.rulesUsing(entry.getKey());
+            if (refs.isEmpty() || entry.getValue().isEmpty()) {
+                continue;
+            }
+            int safeEcts = safeEcts(entry.getKey(), entry.getValue());
+
+            for (SourceRef ref : refs) {
+                RuleProgress progress = touched.computeIfAbsent(ref.rule(), r -> new RuleProgress());
+                progress.hits++;
+                progress.ects += safeEcts * ref.multiplicity();
+            }
+        }
+
+        // 2. Déclencher les règles dont toutes les sources sont présentes et dont le total est suffisant
+        List<IndexedRule> fired = new ArrayList<>();
+        touched.forEach((rule, progress) -> {
+            if (progress.hits == rule.distinctSources()
+                    && (rule.minTotalEcts() <= 0 || progress.ects >= rule.minTotalEcts())) {
+                fired.add(rule);
+            }
+        });
+        fired.sort(Comparator.comparingInt(IndexedRule::ordinal));
+
+        List<RuleMatch> matches = new ArrayList<>(fired.size());
+        for (IndexedRule rule : fired) {
+            matches.add(RuleMatch.of(index, rule, justifyingCourses(rule, recognizedCourses), 1.0));
+        }
+        return matches;
+    }
+
+    // ————— MÉTHODES UTILITAIRES —————
+
+    /**
+     * Somme des ECTS plafonnés (minimum entre déclaré et officiel) des cours de l'étudiant pour un cours KB.
+     */
+    static int safeEcts(KbCourse officialCourse, List<ExternalCourse> studentMatches) {
+        int total = 0;
+        for (ExternalCourse studentCourse : studentMatches) {
+            total += Math.min(studentCourse.getEcts(), officialCourse.getEcts());
+        }
+        return total;
+    }
+
+    /**
+     * Rassemble les cours de l'étudiant ayant servi à satisfaire une règle déclenchée.
+     */
+    static Set<ExternalCourse> justifyingCourses(IndexedRule rule, Map<KbCourse, List<ExternalCourse>> recognizedCourses) {
+        Set<ExternalCourse> courses = new HashSet<>();
+        for (KbCourse source : rule.sources()) {
+            courses.addAll(recognizedCourses.get(source));
+        }
+        return courses;
+    }
+}
@@ -0,0 +1,209 @@
+package org.isfce.pid.service.kb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.isfce.pid.model.ExternalCourse;
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.service.KnowledgeBaseService.RuleMatch;
+import org.isfce.pid.service.kb.KbIndex.IndexedRule;
+import org.isfce.pid.service.kb.KbIndex.SourceRef;
+
+/**
+ * État d'évaluation partiel et persistant d'une demande, pour une ré-analyse incrémentale.
+ * Il mémorise, pour les cours déjà vus de la demande, le cours KB reconnu et,
+ * pour chaque règle touchée, le nombre de sources satisfaites et le total d'ECTS plafonnés
+ * (même sémantique que {@link CountingRuleEvaluator}).
+ * À chaque appel, seuls les cours ajoutés, retirés ou modifiés depuis l'appel précédent sont traités,
+ * et seules les règles qui les référencent sont réévaluées : le coût est proportionnel au changement.
+ * Un état n'est valable que pour l'index à partir duquel il a été construit.
+ * Non thread-safe : l'appelant synchronise l'accès à un état.
+ */
+public final class IncrementalRuleState {
+
+    /**
+     * Cours KB reconnu pour un cours de l'étudiant.
+     *
+     * @param course     Le cours de la KB.
+     * @param confidence Confiance du rapprochement (1 si exact).
+     */
+    public record Resolution(KbCourse course, double confidence) {
+    }
+
+    /**
+     * Cours de l'étudiant déjà intégré à l'état (valeurs au moment de l'intégration).
+     */
+    private record Tracked(String etablissement, String code, String libelle, int ects, Resolution resolution) {
+
+        boolean sameAs(ExternalCourse c) {
+            return c.getEcts() == ects
+                    && Objects.equals(c.getEtablissement(), etablissement)
+                    && Objects.equals(c.getCode(), code)
+                    && Objects.equals(c.getLibelle(), libelle);
+        }
+    }
+
+    /**
+     * Cours de l'étudiant rattachés à un même cours KB et somme de leurs ECTS plafonnés.
+     */
+    private static final class Group {
+        private final Set<UUID> courseIds = new LinkedHashSet<>();
+        private int safeEcts;
+    }
+
+    /**
+     * Progression d'une règle touchée.
+     */
+    private static final class Progress {
+        private int hits;
+        private int ects;
+    }
+
+    private final KbIndex index;
+    private final Map<UUID, Tracked> tracked = new HashMap<>();
+    private final Map<KbCourse, Group> groups = new HashMap<>();
+    private final Map<IndexedRule, Progress> progress = new HashMap<>();
+    private final TreeSet<IndexedRule> fired = new TreeSet<>(Comparator.comparingInt(IndexedRule::ordinal));
+
+    public IncrementalRuleState(KbIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * @return L'index pour lequel cet état est valable.
+     */
+    public KbIndex index() {
+        return index;
+    }
+
+    /**
+     * Intègre les changements entre les cours déjà vus et les cours actuels de la demande.
+     *
+     * @param current  Les cours actuels (tous persistés, donc identifiés).
+     * @param resolver Reconnaissance d'un cours de l'étudiant dans la KB (exacte ou approximative).
+     * @return Le nombre de cours ajoutés, retirés ou modifiés.
+     */
+    public int update(Collection<ExternalCourse> current, Function<ExternalCourse, Optional<Resolution>> resolver) {
+        Map<UUID, ExternalCourse> byId = new HashMap<>();
+        current.forEach(c -> byId.put(c.getId(), c));
+        int changes = 0;
+
+        // 1. Cours retirés ou modifiés
+        Iterator<Map.Entry<UUID, Tracked>> it = tracked.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Tracked> entry = it.next();
+            ExternalCourse now = byId.get(entry.getKey());
+            if (now == null || !entry.getValue().sameAs(now)) {
+                retract(entry.getKey(), entry.getValue());
+                it.remove();
+                changes++;
+            }
+        }
+
+        // 2. Cours ajoutés (ou réintégrés après modification)
+        for (ExternalCourse course : current) {
+            if (!tracked.containsKey(course.getId())) {
+                Resolution resolution = resolver.apply(course).orElse(null);
+                Tracked t = new Tracked(course.getEtablissement(), course.getCode(), course.getLibelle(), course.getEcts(), resolution);
+                tracked.put(course.getId(), t);
+                assertCourse(course.getId(), t);
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Construit les correspondances des règles actuellement satisfaites, dans l'ordre de l'index.
+     *
+     * @param current Les cours actuels (ceux passés au dernier {@link #update}), pour référencer les instances courantes.
+     * @return Les correspondances (règle, cours justificatifs, confiance).
+     */
+    public List<RuleMatch> matches(Collection<ExternalCourse> current) {
+        if (fired.isEmpty()) {
+            return List.of();
+        }
+        Map<UUID, ExternalCourse> byId = new HashMap<>();
+        current.forEach(c -> byId.put(c.getId(), c));
+
+        List<RuleMatch> matches = new ArrayList<>(fired.size());
+        for (IndexedRule rule : fired) {
+            Set<ExternalCourse> courses = new HashSet<>();
+            double confidence = 1.0;
+            for (KbCourse source : rule.sources()) {
+                for (UUID id : groups.get(source).courseIds) {
+                    courses.add(byId.get(id));
+                    confidence = Math.min(confidence, tracked.get(id).resolution().confidence());
+                }
+            }
+            matches.add(RuleMatch.of(index, rule, courses, confidence));
+        }
+        return matches;
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    private void assertCourse(UUID id, Tracked t) {
+        if (t.resolution() == null) {
+            return;
+        }
+        KbCourse kb = t.resolution().course();
+        Group group = groups.computeIfAbsent(kb, k -> new Group());
+        boolean wasPresent = !group.courseIds.isEmpty();
+        int oldEcts = group.safeEcts;
+        group.courseIds.add(id);
+        group.safeEcts += Math.min(t.ects(), kb.getEcts());
+        propagate(kb, wasPresent, true, group.safeEcts - oldEcts);
+    }
+
+    private void retract(UUID id, Tracked t) {
+        if (t.resolution() == null) {
+            return;
+        }
+        KbCourse kb = t.resolution().course();
+        Group group = groups.get(kb);
+        int oldEcts = group.safeEcts;
+        group.courseIds.remove(id);
+        group.safeEcts -= Math.min(t.ects(), kb.getEcts());
+        boolean present = !group.courseIds.isEmpty();
+        if (!present) {
+            groups.remove(kb);
+        }
+        propagate(kb, true, present, group.safeEcts - oldEcts);
+    }
+
+    /**
+     * Répercute le changement d'un cours KB sur les seules règles qui l'utilisent comme source.
+     */
+    private void propagate(KbCourse kb, boolean wasPresent, boolean present, int ectsDelta) {
+        int hitDelta = present == wasPresent ? 0 : (present ? 1 : -1);
+        for (SourceRef ref : index.rulesUsing(kb)) {
+            IndexedRule rule = ref.rule();
+            Progress p = progress.computeIfAbsent(rule, r -> new Progress());
+            p.hits += hitDelta;
+            p.ects += ectsDelta * ref.multiplicity();
+
+            if (p.hits == rule.distinctSources() && (rule.minTotalEcts() <= 0 || p.ects >= rule.minTotalEcts())) {
+                fired.add(rule);
+            } else {
+                fired.remove(rule);
+            }
+            if (p.hits == 0) {
+                progress.remove(rule);
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.isfce.pid.service.kb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.service.kb.KbIndex.IndexedRule;
+
+/**
+ * Forme compilée ("primitive") de l'index de la KB pour {@link BitsetRuleEvaluator}.
+ * Chaque cours KB utilisé comme source reçoit un ordinal dense (regroupé par école),
+ * chaque règle stocke ses sources sous forme de masque {@code long[]} limité aux mots qu'elle couvre,
+ * et toutes les données d'évaluation (ECTS, minimum requis, index inversé cours → règles)
+ * sont rangées dans des tableaux {@code int[]}.
+ * Les tampons de travail sont recyclés via un pool borné pour éviter toute allocation par analyse.
+ */
+final class KbBitset {
+
+    /**
+     * Tampons de travail réutilisables d'une évaluation (jamais partagés entre deux threads).
+     */
+    static final class Scratch {
+        final long[] studentBits;
+        final int[] safeEcts;
+        final int[] touchedCourses;
+        final long[] seenRules;
+        final int[] candidates;
+        int touchedCount;
+        int candidateCount;
+
+        private Scratch(int words, int courseCount, int ruleCount) {
+            this.studentBits = new long[words];
+            this.safeEcts = new int[courseCount];
+            this.touchedCourses = new int[courseCount];
+            this.seenRules = new long[wordsFor(ruleCount)];
+            this.candidates = new int[ruleCount];
+        }
+    }
+
+    private final KbIndex source;
+    private final Map<UUID, Integer> ordinals;
+    private final int words;
+    private final int courseCount;
+
+    private final int[] courseRuleOffsets;
+    private final int[] courseRules;
+
+    private final int[] ruleFirstWord;
+    private final int[] ruleMaskOffsets;
+    private final long[] ruleMasks;
+    private final int[] ruleSourceOffsets;
+    private final int[] ruleSourceOrdinals;
+    private final int[] ruleMinEcts;
+
+    private final ArrayBlockingQueue<Scratch> pool;
+
+    private KbBitset(KbIndex source, Map<UUID, Integer> ordinals, int[] courseRuleOffsets, int[] courseRules,
+                     int[] ruleFirstWord, int[] ruleMaskOffsets, long[] ruleMasks,
+                     int[] ruleSourceOffsets, int[] ruleSourceOrdinals, int[] ruleMinEcts) {
+        this.source = source;
+        this.ordinals = ordinals;
+        this.courseCount = ordinals.size();
+        this.words = wordsFor(courseCount);
+        this.courseRuleOffsets = courseRuleOffsets;
+        this.courseRules = courseRules;
+        this.ruleFirstWord = ruleFirstWord;
+        this.ruleMaskOffsets = ruleMaskOffsets;
+        this.ruleMasks = ruleMasks;
+        this.ruleSourceOffsets = ruleSourceOffsets;
+        this.ruleSourceOrdinals = ruleSourceOrdinals;
+        this.ruleMinEcts = ruleMinEcts;
+        this.pool = new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    /**
+     * Compile un index de la KB sous forme de tableaux primitifs.
+     *
+     * @param index L'index source.
+     * @return La forme compilée.
+     */
+    static KbBitset compile(KbIndex index) {
+        List<IndexedRule> rules = index.rules();
+
+        // 1. Ordinaux denses des cours sources, regroupés par école pour que les masques restent courts
+        Map<UUID, KbCourse> distinct = new HashMap<>();
+        for (IndexedRule rule : rules) {
+            rule.sources().forEach(c -> distinct.putIfAbsent(c.getId(), c));
+        }
+        List<KbCourse> sorted = new ArrayList<>(distinct.values());
+        sorted.sort(Comparator.comparing((KbCourse c) -> KbIndex.key(c.getEcole().getCode()))
+                .thenComparing(c -> KbIndex.key(c.getCode())));
+        Map<UUID, Integer> ordinals = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            ordinals.put(sorted.get(i).getId(), i);
+        }
+
+        // 2. Tableaux par règle : masque de sources, ordinaux des sources (avec multiplicité), minimum d'ECTS
+        int ruleCount = rules.size();
+        int[] ruleFirstWord = new int[ruleCount];
+        int[] ruleMaskOffsets = new int[ruleCount + 1];
+        int[] ruleSourceOffsets = new int[ruleCount + 1];
+        int[] ruleMinEcts = new int[ruleCount];
+        List<long[]> masks = new ArrayList<>(ruleCount);
+        int[] courseRuleCounts = new int[sorted.size()];
+        int totalSources = 0;
+        int totalMaskWords = 0;
+
+        for (IndexedRule rule : rules) {
+            int r = rule.ordinal();
+            int minOrd = Integer.MAX_VALUE;
+            int maxOrd = Integer.MIN_VALUE;
+            for (KbCourse c : rule.sources()) {
+                int ord = ordinals.get(c.getId());
+                minOrd = Math.min(minOrd, ord);
+                maxOrd = Math.max(maxOrd, ord);
+            }
+            int firstWord = minOrd >>> 6;
+            long[] mask = new long[(maxOrd >>> 6) - firstWord + 1];
+            for (KbCourse c : rule.sources()) {
+                int ord = ordinals.get(c.getId());
+                long bit = 1L << ord;
+                int w = (ord >>> 6) - firstWord;
+                if ((mask[w] & bit) == 0) {
+                    mask[w] |= bit;
+                    courseRuleCounts[ord]++;
+                }
+            }
+            ruleFirstWord[r] = firstWord;
+            ruleMinEcts[r] = rule.minTotalEcts();
+            masks.add(mask);
+            totalMaskWords += mask.length;
+            totalSources += rule.sources().size();
+            ruleMaskOffsets[r + 1] = totalMaskWords;
+            ruleSourceOffsets[r + 1] = totalSources;
+        }
+
+        long[] ruleMasks = new long[totalMaskWords];
+        int[] ruleSourceOrdinals = new int[totalSources];
+        for (IndexedRule rule : rules) {
+            int r = rule.ordinal();
+            long[] mask = masks.get(r);
+            System.arraycopy(mask, 0, ruleMasks, ruleMaskOffsets[r], mask.length);
+            int pos = ruleSourceOffsets[r];
+            for (KbCourse c : rule.sources()) {
+                ruleSourceOrdinals[pos++] = ordinals.get(c.getId());
+            }
+        }
+
+        // 3. Index inversé (format CSR) : ordinal de cours → ordinaux des règles qui l'utilisent
+        int[] courseRuleOffsets = new int[sorted.size() + 1];
+        for (int i = 0; i < sorted.size(); i++) {
+            courseRuleOffsets[i + 1] = courseRuleOffsets[i] + courseRuleCounts[i];
+        }
+        int[] courseRules = new int[courseRuleOffsets[sorted.size()]];
+        int[] fill = courseRuleOffsets.clone();
+        for (IndexedRule rule : rules) {
+            int r = rule.ordinal();
+            int firstWord = ruleFirstWord[r];
+            for (int w = ruleMaskOffsets[r]; w < ruleMaskOffsets[r + 1]; w++) {
+                long bits = ruleMasks[w];
+                int base = (firstWord + w - ruleMaskOffsets[r]) << 6;
+                while (bits != 0) {
+                    int ord = base + Long.numberOfTrailingZeros(bits);
+                    courseRules[fill[ord]++] = r;
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        return new KbBitset(index, Map.copyOf(ordinals), courseRuleOffsets, courseRules,
+                ruleFirstWord, ruleMaskOffsets, ruleMasks, ruleSourceOffsets, ruleSourceOrdinals, ruleMinEcts);
+    }
+
+    /**
+     * @return L'index à partir duquel cette forme compilée a été produite.
+     */
+    KbIndex source() {
+        return source;
+    }
+
+    /**
+     * Retourne l'ordinal d'un cours KB, ou -1 s'il n'est source d'aucune règle.
+     */
+    int ordinalOf(KbCourse course) {
+        Integer ord = ordinals.get(course.getId());
+        return ord == null ? -1 : ord;
+    }
+
+    /**
+     * Marque un cours de l'étudiant dans les tampons et enregistre les règles candidates qui l'utilisent.
+     */
+    void touch(Scratch s, int ord, int safeEcts) {
+        s.studentBits[ord >>> 6] |= 1L << ord;
+        s.safeEcts[ord] = safeEcts;
+        s.touchedCourses[s.touchedCount++] = ord;
+        for (int i = courseRuleOffsets[ord]; i < courseRuleOffsets[ord + 1]; i++) {
+            int r = courseRules[i];
+            long bit = 1L << r;
+            if ((s.seenRules[r >>> 6] & bit) == 0) {
+                s.seenRules[r >>> 6] |= bit;
+                s.candidates[s.candidateCount++] = r;
+            }
+        }
+    }
+
+    /**
+     * Test d'inclusion par ET logique mot à mot : toutes les sources de la règle sont-elles présentes ?
+     */
+    boolean sourcesPresent(Scratch s, int r) {
+        int firstWord = ruleFirstWord[r];
+        for (int w = ruleMaskOffsets[r], i = firstWord; w < ruleMaskOffsets[r + 1]; w++, i++) {
+            if ((ruleMasks[w] & ~s.studentBits[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Vérifie le minimum d'ECTS cumulés (plafonnés) d'une règle dont les sources sont présentes.
+     */
+    boolean ectsSufficient(Scratch s, int r) {
+        int min = ruleMinEcts[r];
+        if (min <= 0) {
+            return true;
+        }
+        int total = 0;
+        for (int i = ruleSourceOffsets[r]; i < ruleSourceOffsets[r + 1]; i++) {
+            total += s.safeEcts[ruleSourceOrdinals[i]];
+        }
+        return total >= min;
+    }
+
+    /**
+     * Emprunte des tampons de travail au pool (ou en alloue s'il est vide).
+     */
+    Scratch acquire() {
+        Scratch s = pool.poll();
+        return s != null ? s : new Scratch(words, courseCount, source.ruleCount());
+    }
+
+    /**
+     * Remet à zéro uniquement les mots touchés puis rend les tampons au pool.
+     */
+    void release(Scratch s) {
+        for (int i = 0; i < s.touchedCount; i++) {
+            int ord = s.touchedCourses[i];
+            s.studentBits[ord >>> 6] = 0L;
+            s.safeEcts[ord] = 0;
+        }
+        for (int i = 0; i < s.candidateCount; i++) {
+            s.seenRules[s.candidates[i] >>> 6] = 0L;
+        }
+        s.touchedCount = 0;
+        s.candidateCount = 0;
+        pool.offer(s);
+    }
+
+    private static int wordsFor(int bits) {
+        return (bits + 63) >>> 6;
+    }
+}
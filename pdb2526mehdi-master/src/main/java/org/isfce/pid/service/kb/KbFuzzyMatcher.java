@@ -0,0 +1,256 @@
+package org.isfce.pid.service.kb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.isfce.pid.model.KbCourse;
+
+/**
+ * Rapprochement approximatif (fuzzy) d'un cours déclaré par l'étudiant avec un cours de la KB,
+ * utilisé lorsque la correspondance exacte (école, code) échoue.
+ * Tout est précalculé au chargement de la KB, école par école :
+ * codes compactés (sans séparateurs), trigrammes des codes et des libellés, et un index inversé
+ * trigramme → cours qui fournit les candidats (aucun parcours complet de la KB).
+ * Chaque candidat est ensuite noté par distance d'édition sur le code et similarité de Jaccard sur les libellés.
+ * Deux codes dont les parties numériques diffèrent ne sont jamais rapprochés (INFO-F102 n'est pas une faute de
+ * frappe pour INFO-F101, c'est le cours voisin), et sans libellé seul le code compacté identique est retenu :
+ * la distance d'édition ne suffit pas à distinguer une faute de frappe d'un autre cours.
+ */
+public final class KbFuzzyMatcher {
+
+    /**
+     * Résultat d'un rapprochement approximatif.
+     *
+     * @param course     Le cours de la KB retenu.
+     * @param confidence Score de confiance entre 0 et 1.
+     */
+    public record FuzzyMatch(KbCourse course, double confidence) {
+    }
+
+    /**
+     * Confiance attribuée quand seuls les séparateurs/la casse diffèrent ("binv 1090-1" ↔ "BINV1090-1").
+     */
+    static final double COMPACT_CODE_CONFIDENCE = 0.95;
+
+    /**
+     * Nombre maximum de candidats notés par cours déclaré.
+     */
+    private static final int MAX_CANDIDATES = 20;
+
+    /**
+     * Données précalculées des cours d'une école.
+     */
+    private record SchoolCourses(List<KbCourse> courses, List<String> codes, List<Set<String>> titleGrams,
+                                 Map<String, KbCourse> byCompactCode, Map<String, int[]> grams) {
+    }
+
+    private final Map<String, SchoolCourses> schools;
+
+    private KbFuzzyMatcher(Map<String, SchoolCourses> schools) {
+        this.schools = schools;
+    }
+
+    /**
+     * Précalcule les structures de rapprochement à partir des cours de la KB (école chargée).
+     * Une école est retrouvée par son code ou par son nom complet, sous forme compactée.
+     *
+     * @param courses Tous les cours de la KB.
+     * @return Le matcher immuable.
+     */
+    static KbFuzzyMatcher build(List<KbCourse> courses) {
+        Map<String, List<KbCourse>> bySchool = new HashMap<>();
+        Map<String, String> aliases = new HashMap<>();
+        for (KbCourse course : courses) {
+            String key = KbSearchIndex.compact(course.getEcole().getCode());
+            bySchool.computeIfAbsent(key, k -> new ArrayList<>()).add(course);
+            aliases.putIfAbsent(KbSearchIndex.compact(course.getEcole().getEtablissement()), key);
+        }
+
+        Map<String, SchoolCourses> schools = new HashMap<>();
+        bySchool.forEach((key, list) -> schools.put(key, index(list)));
+        aliases.forEach((alias, key) -> {
+            if (!alias.isEmpty()) {
+                schools.putIfAbsent(alias, schools.get(key));
+            }
+        });
+        return new KbFuzzyMatcher(Map.copyOf(schools));
+    }
+
+    /**
+     * Cherche le cours de la KB le plus proche d'un cours déclaré.
+     *
+     * @param etablissement L'école déclarée (code ou nom).
+     * @param code          Le code déclaré.
+     * @param libelle       Le libellé déclaré (facultatif ; sans libellé, seul le code compacté identique est retenu).
+     * @param minConfidence Confiance minimale pour retenir un rapprochement.
+     * @return Le meilleur rapprochement s'il atteint la confiance minimale.
+     */
+    public Optional<FuzzyMatch> match(String etablissement, String code, String libelle, double minConfidence) {
+        SchoolCourses school = schools.get(KbSearchIndex.compact(etablissement));
+        String compactCode = KbSearchIndex.compact(code);
+        if (school == null || compactCode.isEmpty()) {
+            return Optional.empty();
+        }
+
+        // 1. Seuls les séparateurs / la casse diffèrent
+        KbCourse sameCode = school.byCompactCode().get(compactCode);
+        if (sameCode != null) {
+            return COMPACT_CODE_CONFIDENCE >= minConfidence
+                    ? Optional.of(new FuzzyMatch(sameCode, COMPACT_CODE_CONFIDENCE))
+                    : Optional.empty();
+        }
+
+        // 2. Candidats : cours partageant des trigrammes (code ou libellé) avec la saisie
+        Set<String> titleGrams = titleGrams(libelle);
+        if (titleGrams.isEmpty()) {
+            return Optional.empty(); // code seul : un code voisin serait pris pour une faute de frappe
+        }
+        Set<String> codeGrams = new HashSet<>(KbSearchIndex.grams(compactCode));
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (Set<String> grams : List.of(codeGrams, titleGrams)) {
+            for (String gram : grams) {
+                int[] ids = school.grams().get(gram);
+                if (ids != null) {
+                    for (int id : ids) {
+                        shared.merge(id, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        List<Integer> candidates = new ArrayList<>(shared.keySet());
+        candidates.sort(Comparator.<Integer>comparingInt(shared::get).reversed().thenComparingInt(id -> id));
+
+        // 3. Notation : distance d'édition sur le code, Jaccard sur les libellés
+        FuzzyMatch best = null;
+        for (int i = 0; i < candidates.size() && i < MAX_CANDIDATES; i++) {
+            int id = candidates.get(i);
+            String kbCode = school.codes().get(id);
+            if (!sameNumbers(compactCode, kbCode)) {
+                continue;
+            }
+            double codeSim = 1.0 - (double) levenshtein(compactCode, kbCode) / Math.max(compactCode.length(), kbCode.length());
+            double confidence = 0.6 * codeSim + 0.4 * jaccard(titleGrams, school.titleGrams().get(id));
+            // Un rapprochement approximatif reste strictement moins sûr qu'un code identique
+            confidence = Math.min(confidence, COMPACT_CODE_CONFIDENCE - 0.01);
+            if (confidence >= minConfidence && (best == null || confidence > best.confidence())) {
+                best = new FuzzyMatch(school.courses().get(id), confidence);
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    // ————— MÉTHODES UTILITAIRES —————
+
+    /**
+     * Précalcule codes compactés, trigrammes et index inversé des cours d'une école.
+     */
+    private static SchoolCourses index(List<KbCourse> courses) {
+        List<String> codes = new ArrayList<>(courses.size());
+        List<Set<String>> titles = new ArrayList<>(courses.size());
+        Map<String, KbCourse> byCompactCode = new HashMap<>();
+        Map<String, List<Integer>> gramLists = new HashMap<>();
+
+        for (int i = 0; i < courses.size(); i++) {
+            KbCourse course = courses.get(i);
+            String compactCode = KbSearchIndex.compact(course.getCode());
+            Set<String> title = titleGrams(course.getLibelle());
+            codes.add(compactCode);
+            titles.add(Set.copyOf(title));
+            byCompactCode.putIfAbsent(compactCode, course);
+
+            Set<String> all = new HashSet<>(KbSearchIndex.grams(compactCode));
+            all.addAll(title);
+            for (String gram : all) {
+                gramLists.computeIfAbsent(gram, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Map<String, int[]> grams = new HashMap<>(gramLists.size() * 2);
+        gramLists.forEach((gram, ids) -> grams.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+        return new SchoolCourses(List.copyOf(courses), List.copyOf(codes), List.copyOf(titles),
+                Map.copyOf(byCompactCode), Map.copyOf(grams));
+    }
+
+    /**
+     * Trigrammes d'un libellé (mots normalisés, préfixés par '#' pour ne pas se confondre avec ceux des codes).
+     */
+    private static Set<String> titleGrams(String libelle) {
+        Set<String> grams = new HashSet<>();
+        for (String word : KbSearchIndex.words(libelle)) {
+            KbSearchIndex.grams(word).forEach(g -> grams.add("#" + g));
+        }
+        return grams;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0.0;
+        }
+        int inter = 0;
+        for (String gram : a) {
+            if (b.contains(gram)) {
+                inter++;
+            }
+        }
+        return (double) inter / (a.size() + b.size() - inter);
+    }
+
+    /**
+     * Vrai si les deux codes compactés ont les mêmes nombres, dans le même ordre ("BINV10901" et "BINW10901" oui,
+     * "INFOF101" et "INFOF102" non).
+     */
+    static boolean sameNumbers(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (true) {
+            while (i < a.length() && !Character.isDigit(a.charAt(i))) {
+                i++;
+            }
+            while (j < b.length() && !Character.isDigit(b.charAt(j))) {
+                j++;
+            }
+            if (i == a.length() || j == b.length()) {
+                return i == a.length() && j == b.length();
+            }
+            // Nombre suivant de chaque code, chiffre par chiffre
+            while (i < a.length() && j < b.length() && Character.isDigit(a.charAt(i)) && Character.isDigit(b.charAt(j))) {
+                if (a.charAt(i++) != b.charAt(j++)) {
+                    return false;
+                }
+            }
+            boolean aDigit = i < a.length() && Character.isDigit(a.charAt(i));
+            boolean bDigit = j < b.length() && Character.isDigit(b.charAt(j));
+            if (aDigit || bDigit) {
+                return false; // un nombre plus long que l'autre
+            }
+        }
+    }
+
+    /**
+     * Distance de Levenshtein (deux lignes, codes courts).
+     */
+    static int levenshtein(String a, String b) {
+        int[] prev = new int[b.length() + 1];
+        int[] curr = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            curr[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+        }
+        return prev[b.length()];
+    }
+}
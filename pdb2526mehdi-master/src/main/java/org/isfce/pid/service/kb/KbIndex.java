@@ -0,0 +1,274 @@
+package org.isfce.pid.service.kb;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.isfce.pid.model.KbCodes;
+import org.isfce.pid.model.KbCorrespondenceRule;
+import org.isfce.pid.model.KbCorrespondenceRuleSource;
+import org.isfce.pid.model.KbCorrespondenceRuleTarget;
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.model.UE;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Index en mémoire, immuable et versionné, de la Base de Connaissances (KB) : un snapshot.
+ * Il est construit une seule fois à partir des entités KB entièrement résolues
+ * (écoles, cours, sources et cibles des règles) et permet au moteur de règles
+ * de fonctionner sans aucune requête SQL. Les sources et les cibles des règles sont recopiées
+ * dans des listes immuables : un lecteur ne parcourt jamais les collections JPA des entités,
+ * et un rechargement de la KB n'affecte pas les analyses en cours sur un snapshot précédent.
+ * Structure : (code école, code cours) → {@link KbCourse} ; cours KB → règles qui l'utilisent comme source
+ * (index inversé exploité par {@link CountingRuleEvaluator} et l'analyse incrémentale), soit sur le tas,
+ * soit lu dans la forme compilée projetée hors tas ({@link MappedKbSnapshot}, moteur mapped) ;
+ * index d'auto-complétion ({@link KbSearchIndex}) ; rapprochement approximatif des cours mal saisis
+ * ({@link KbFuzzyMatcher}).
+ * Les règles sont numérotées dans un ordre de contenu (description, minimum d'ECTS, sources, cibles),
+ * indépendant de l'ordre de chargement : deux instances ayant la même KB ont les mêmes ordinaux.
+ */
+@Slf4j
+public final class KbIndex {
+
+    /**
+     * Règle de correspondance dont les sources ont été résolues à la construction de l'index.
+     *
+     * @param ordinal         Position de la règle dans l'index (ordre stable des résultats).
+     * @param rule            L'entité règle (seuls ses attributs simples sont lus).
+     * @param sources         Les cours KB requis par la règle (liste immuable).
+     * @param targets         Les UE accordées par la règle (liste immuable).
+     * @param distinctSources Le nombre de cours KB distincts requis pour déclencher la règle.
+     * @param minTotalEcts    Le minimum d'ECTS cumulés requis (0 si aucun).
+     */
+    public record IndexedRule(int ordinal, KbCorrespondenceRule rule, List<KbCourse> sources, List<UE> targets,
+                              int distinctSources, int minTotalEcts) {
+    }
+
+    /**
+     * Entrée de l'index inversé : une règle utilisant un cours KB comme source.
+     *
+     * @param rule         La règle concernée.
+     * @param multiplicity Le nombre de fois où le cours apparaît dans les sources de la règle.
+     */
+    public record SourceRef(IndexedRule rule, int multiplicity) {
+    }
+
+    private final long generation;
+    private final Map<String, Map<String, KbCourse>> coursesBySchool;
+    private final List<IndexedRule> rules;
+    /**
+     * Index inversé sur le tas (null si l'index inversé est la forme projetée {@link #mapped}).
+     */
+    private final Map<UUID, List<SourceRef>> rulesBySource;
+    private final MappedKbSnapshot mapped;
+    private final KbSearchIndex searchIndex;
+    private final KbFuzzyMatcher fuzzyMatcher;
+
+    private KbIndex(long generation, Map<String, Map<String, KbCourse>> coursesBySchool,
+                    List<IndexedRule> rules, Map<UUID, List<SourceRef>> rulesBySource, MappedKbSnapshot mapped,
+                    KbSearchIndex searchIndex, KbFuzzyMatcher fuzzyMatcher) {
+        this.generation = generation;
+        this.coursesBySchool = coursesBySchool;
+        this.rules = rules;
+        this.rulesBySource = rulesBySource;
+        this.mapped = mapped;
+        this.searchIndex = searchIndex;
+        this.fuzzyMatcher = fuzzyMatcher;
+    }
+
+    /**
+     * Construit l'index à partir des entités chargées (école des cours, sources et cibles des règles initialisées),
+     * avec l'index inversé sur le tas.
+     *
+     * @param generation Génération de la KB au moment du chargement (version du snapshot).
+     * @param courses    Tous les cours de la KB.
+     * @param rules      Toutes les règles de la KB.
+     * @return L'index immuable.
+     */
+    public static KbIndex build(long generation, List<KbCourse> courses, List<KbCorrespondenceRule> rules) {
+        return build(generation, courses, rules, null);
+    }
+
+    /**
+     * Construit l'index à partir des entités chargées (école des cours, sources et cibles des règles initialisées).
+     *
+     * @param generation   Génération de la KB au moment du chargement (version du snapshot).
+     * @param courses      Tous les cours de la KB.
+     * @param rules        Toutes les règles de la KB.
+     * @param snapshotDir  Répertoire de la forme compilée projetée qui tient lieu d'index inversé
+     *                     (null : index inversé sur le tas ; de même si le fichier ne peut être écrit ou projeté).
+     * @return L'index immuable.
+     */
+    public static KbIndex build(long generation, List<KbCourse> courses, List<KbCorrespondenceRule> rules,
+                                Path snapshotDir) {
+        Map<String, Map<String, KbCourse>> coursesBySchool = new HashMap<>();
+        for (KbCourse course : courses) {
+            coursesBySchool.computeIfAbsent(key(course.getEcole().getCode()), k -> new HashMap<>())
+                    .put(key(course.getCode()), course);
+        }
+
+        // Une règle sans source ne peut jamais être satisfaite : inutile de l'indexer.
+        // Ordre de contenu (stable pour deux règles identiques), indépendant de l'ordre de chargement.
+        Map<KbCorrespondenceRule, String> signatures = new HashMap<>();
+        List<KbCorrespondenceRule> sorted = rules.stream()
+                .filter(rule -> !rule.getSources().isEmpty())
+                .sorted(Comparator.comparing(rule -> signatures.computeIfAbsent(rule, KbIndex::signature)))
+                .toList();
+
+        List<IndexedRule> indexedRules = new ArrayList<>(sorted.size());
+        for (KbCorrespondenceRule rule : sorted) {
+            List<KbCourse> sources = rule.getSources().stream()
+                    .map(KbCorrespondenceRuleSource::getCours)
+                    .toList();
+            List<UE> targets = rule.getTargets().stream()
+                    .map(KbCorrespondenceRuleTarget::getUe)
+                    .toList();
+            int minEcts = rule.getMinTotalEcts() != null ? Math.max(rule.getMinTotalEcts(), 0) : 0;
+
+            int distinct = (int) sources.stream().map(KbCourse::getId).distinct().count();
+            indexedRules.add(new IndexedRule(indexedRules.size(), rule, sources, targets, distinct, minEcts));
+        }
+
+        coursesBySchool.replaceAll((k, v) -> Map.copyOf(v));
+        List<IndexedRule> frozenRules = List.copyOf(indexedRules);
+        MappedKbSnapshot mapped = null;
+        if (snapshotDir != null) {
+            try {
+                mapped = MappedKbSnapshot.open(frozenRules, snapshotDir);
+            } catch (UncheckedIOException e) {
+                // Une analyse ne doit pas échouer pour autant : même index, inversé sur le tas
+                log.warn("Snapshot compilé de la KB indisponible ({}), index inversé construit sur le tas.",
+                        e.getCause().getMessage());
+            }
+        }
+        Map<UUID, List<SourceRef>> inverted = mapped == null ? invertedIndex(frozenRules) : null;
+        return new KbIndex(generation, Map.copyOf(coursesBySchool), frozenRules, inverted, mapped,
+                KbSearchIndex.build(courses), KbFuzzyMatcher.build(courses));
+    }
+
+    /**
+     * Normalise un code (école ou cours) pour la recherche : même clé que les colonnes {@code code_key}.
+     *
+     * @param raw Le code brut saisi.
+     * @return La clé de recherche (chaîne vide si null).
+     */
+    public static String key(String raw) {
+        return KbCodes.normalize(raw);
+    }
+
+    /**
+     * Recherche un cours de la KB par le couple (code école, code cours), sans tenir compte de la casse.
+     *
+     * @param schoolCode Code de l'école (ex: "ULB").
+     * @param courseCode Code du cours (ex: "INFO-F101").
+     * @return Le cours s'il est connu.
+     */
+    public Optional<KbCourse> findCourse(String schoolCode, String courseCode) {
+        Map<String, KbCourse> courses = coursesBySchool.get(key(schoolCode));
+        return courses == null ? Optional.empty() : Optional.ofNullable(courses.get(key(courseCode)));
+    }
+
+    /**
+     * Retourne les règles utilisant un cours KB comme source (index inversé).
+     *
+     * @param course Le cours de la KB.
+     * @return Les références de règles (liste vide si le cours n'est source d'aucune règle).
+     */
+    public List<SourceRef> rulesUsing(KbCourse course) {
+        if (mapped == null) {
+            return rulesBySource.getOrDefault(course.getId(), List.of());
+        }
+        int ordinal = mapped.courseOrdinal(course);
+        if (ordinal < 0) {
+            return List.of();
+        }
+        List<SourceRef> refs = new ArrayList<>(mapped.refEnd(ordinal) - mapped.refStart(ordinal));
+        for (int ref = mapped.refStart(ordinal); ref < mapped.refEnd(ordinal); ref++) {
+            refs.add(new SourceRef(rules.get(mapped.refRule(ref)), mapped.refMultiplicity(ref)));
+        }
+        return refs;
+    }
+
+    /**
+     * @return La forme compilée projetée qui tient lieu d'index inversé, ou null si celui-ci est sur le tas.
+     */
+    MappedKbSnapshot mapped() {
+        return mapped;
+    }
+
+    /**
+     * @return L'index d'auto-complétion sur les écoles et les cours.
+     */
+    public KbSearchIndex searchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @return Le rapprochement approximatif (codes mal saisis, libellés proches), précalculé avec l'index.
+     */
+    public KbFuzzyMatcher fuzzyMatcher() {
+        return fuzzyMatcher;
+    }
+
+    /**
+     * @return Toutes les règles indexées, triées par ordinal.
+     */
+    public List<IndexedRule> rules() {
+        return rules;
+    }
+
+    /**
+     * @return La génération de la KB à partir de laquelle l'index a été construit : la version du snapshot.
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * @return Le nombre de règles indexées.
+     */
+    public int ruleCount() {
+        return rules.size();
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    /**
+     * Index inversé sur le tas : cours KB → règles qui l'utilisent comme source, avec la multiplicité du cours.
+     */
+    private static Map<UUID, List<SourceRef>> invertedIndex(List<IndexedRule> rules) {
+        Map<UUID, List<SourceRef>> rulesBySource = new HashMap<>();
+        for (IndexedRule indexed : rules) {
+            // Multiplicité de chaque cours source (un même cours peut être listé deux fois)
+            Map<UUID, Integer> multiplicities = new LinkedHashMap<>();
+            indexed.sources().forEach(c -> multiplicities.merge(c.getId(), 1, Integer::sum));
+            multiplicities.forEach((courseId, count) ->
+                    rulesBySource.computeIfAbsent(courseId, k -> new ArrayList<>()).add(new SourceRef(indexed, count)));
+        }
+        rulesBySource.replaceAll((k, v) -> List.copyOf(v));
+        return Map.copyOf(rulesBySource);
+    }
+
+    /**
+     * Contenu d'une règle (sans identifiant technique), pour un ordre identique d'une instance à l'autre.
+     */
+    private static String signature(KbCorrespondenceRule rule) {
+        Map<String, Long> sources = rule.getSources().stream()
+                .map(s -> key(s.getCours().getEcole().getCode()) + '\u0000' + key(s.getCours().getCode()))
+                .collect(Collectors.groupingBy(k -> k, TreeMap::new, Collectors.counting()));
+        return rule.getDescription() + '\u0001' + rule.getMinTotalEcts()
+                + '\u0001' + sources
+                + '\u0001' + rule.getTargets().stream().map(t -> t.getUe().getCode()).sorted()
+                        .collect(Collectors.joining(","));
+    }
+}
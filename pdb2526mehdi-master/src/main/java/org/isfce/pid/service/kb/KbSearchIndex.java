@@ -0,0 +1,324 @@
+package org.isfce.pid.service.kb;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.model.KbSchool;
+
+/**
+ * Index de recherche "type-ahead" (auto-complétion), immuable, sur les écoles et les cours de la KB.
+ * Deux structures complémentaires :
+ * un tableau trié de clés (codes compactés et mots des libellés) pour la recherche par préfixe,
+ * et un index inversé de trigrammes pour tolérer les fautes de frappe (ex: "BINV-1090-1" ou "binv 1O90").
+ * Construit avec {@link KbIndex}, il est donc reconstruit à chaque modification de la KB ;
+ * une recherche ne fait aucune requête SQL. Les tampons de score sont recyclés via un pool borné :
+ * une frappe n'alloue rien en proportion de la taille de la KB.
+ */
+public final class KbSearchIndex {
+
+    /**
+     * Nature d'un résultat de recherche.
+     */
+    public enum Kind {
+        SCHOOL,
+        COURSE
+    }
+
+    /**
+     * Résultat de recherche.
+     *
+     * @param kind   École ou cours.
+     * @param school L'école (celle du cours pour un résultat de type COURSE).
+     * @param course Le cours (null pour un résultat de type SCHOOL).
+     * @param score  Pertinence (plus élevé = meilleur).
+     */
+    public record Hit(Kind kind, KbSchool school, KbCourse course, double score) {
+    }
+
+    /**
+     * Entrée indexée : école/cours, codes compactés et clé de tri (écoles d'abord, puis par code).
+     */
+    private record Entry(Kind kind, KbSchool school, KbCourse course, String schoolKey, String codeKey, String sortKey) {
+    }
+
+    /**
+     * Tampons de travail réutilisables d'une recherche (jamais partagés entre deux threads).
+     * Seules les entrées touchées ont un score non nul ; elles sont remises à zéro au retour dans le pool.
+     */
+    private static final class Scratch {
+        private final float[] scores;
+        private final int[] touched;
+        private int touchedCount;
+
+        private Scratch(int entryCount) {
+            this.scores = new float[entryCount];
+            this.touched = new int[entryCount];
+        }
+
+        private void add(int e, float score) {
+            if (scores[e] == 0f) {
+                touched[touchedCount++] = e;
+            }
+            scores[e] += score;
+        }
+    }
+
+    private static final double MIN_SCORE = 0.5;
+
+    private final Entry[] entries;
+    private final String[] codeKeys;
+    private final int[] codeEntries;
+    private final String[] wordKeys;
+    private final int[] wordEntries;
+    private final Map<String, int[]> grams;
+    private final ArrayBlockingQueue<Scratch> pool =
+            new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+
+    private KbSearchIndex(Entry[] entries, String[] codeKeys, int[] codeEntries,
+                          String[] wordKeys, int[] wordEntries, Map<String, int[]> grams) {
+        this.entries = entries;
+        this.codeKeys = codeKeys;
+        this.codeEntries = codeEntries;
+        this.wordKeys = wordKeys;
+        this.wordEntries = wordEntries;
+        this.grams = grams;
+    }
+
+    /**
+     * Construit l'index de recherche à partir des cours de la KB (école chargée).
+     * Les écoles indexées sont celles des cours.
+     *
+     * @param courses Tous les cours de la KB.
+     * @return L'index de recherche.
+     */
+    static KbSearchIndex build(List<KbCourse> courses) {
+        Map<String, KbSchool> schools = new LinkedHashMap<>();
+        courses.forEach(c -> schools.putIfAbsent(compact(c.getEcole().getCode()), c.getEcole()));
+
+        List<Entry> entryList = new ArrayList<>();
+        List<List<String>> wordsByEntry = new ArrayList<>();
+        schools.forEach((key, school) -> {
+            entryList.add(new Entry(Kind.SCHOOL, school, null, key, key, "0" + key));
+            wordsByEntry.add(words(school.getEtablissement()));
+        });
+        for (KbCourse course : courses) {
+            String schoolKey = compact(course.getEcole().getCode());
+            String codeKey = compact(course.getCode());
+            entryList.add(new Entry(Kind.COURSE, course.getEcole(), course, schoolKey, codeKey, "1" + schoolKey + " " + codeKey));
+            wordsByEntry.add(words(course.getLibelle()));
+        }
+
+        // Clés de préfixe (codes et mots) et trigrammes
+        List<KeyRef> codes = new ArrayList<>();
+        List<KeyRef> words = new ArrayList<>();
+        Map<String, List<Integer>> gramLists = new HashMap<>();
+        for (int i = 0; i < entryList.size(); i++) {
+            Entry entry = entryList.get(i);
+            if (!entry.codeKey().isEmpty()) {
+                codes.add(new KeyRef(entry.codeKey(), i));
+            }
+            Set<String> entryGrams = new LinkedHashSet<>(grams(entry.codeKey()));
+            for (String word : new LinkedHashSet<>(wordsByEntry.get(i))) {
+                words.add(new KeyRef(word, i));
+                entryGrams.addAll(grams(word));
+            }
+            for (String gram : entryGrams) {
+                gramLists.computeIfAbsent(gram, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        codes.sort(Comparator.comparing(KeyRef::key));
+        words.sort(Comparator.comparing(KeyRef::key));
+        Map<String, int[]> gramIndex = new HashMap<>(gramLists.size() * 2);
+        gramLists.forEach((gram, ids) -> gramIndex.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+
+        return new KbSearchIndex(entryList.toArray(Entry[]::new),
+                codes.stream().map(KeyRef::key).toArray(String[]::new), codes.stream().mapToInt(KeyRef::entry).toArray(),
+                words.stream().map(KeyRef::key).toArray(String[]::new), words.stream().mapToInt(KeyRef::entry).toArray(),
+                Map.copyOf(gramIndex));
+    }
+
+    /**
+     * Recherche les meilleures écoles et cours correspondant à une saisie partielle.
+     * Score = part des trigrammes de la saisie retrouvés + bonus (code identique, préfixe de code, préfixes de mots du libellé).
+     *
+     * @param query     La saisie (code ou morceau de libellé, casse/accents/ponctuation ignorés).
+     * @param schoolKey Code d'école pour restreindre la recherche (null ou vide : toutes les écoles).
+     * @param limit     Nombre maximum de résultats.
+     * @return Les résultats, du plus pertinent au moins pertinent.
+     */
+    public List<Hit> search(String query, String schoolKey, int limit) {
+        String compactQuery = compact(query);
+        if (compactQuery.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        List<String> queryWords = words(query);
+        String schoolFilter = compact(schoolKey);
+
+        Scratch s = acquire();
+        try {
+            return search(s, compactQuery, queryWords, schoolFilter, limit);
+        } finally {
+            release(s);
+        }
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    private List<Hit> search(Scratch s, String compactQuery, List<String> queryWords, String schoolFilter, int limit) {
+        float[] scores = s.scores;
+
+        // 1. Préfixes : code compacté, puis chaque mot saisi sur les mots des libellés
+        int from = lowerBound(codeKeys, compactQuery);
+        for (int i = from; i < codeKeys.length && codeKeys[i].startsWith(compactQuery); i++) {
+            s.add(codeEntries[i], codeKeys[i].length() == compactQuery.length() ? 3f : 2f);
+        }
+        for (String word : queryWords) {
+            float bonus = 1f / queryWords.size();
+            int start = lowerBound(wordKeys, word);
+            int last = -1;
+            for (int i = start; i < wordKeys.length && wordKeys[i].startsWith(word); i++) {
+                int e = wordEntries[i];
+                if (e != last) {
+                    s.add(e, bonus);
+                    last = e;
+                }
+            }
+        }
+
+        // 2. Trigrammes (tolérance aux fautes de frappe)
+        Set<String> queryGrams = new LinkedHashSet<>(grams(compactQuery));
+        queryWords.forEach(w -> queryGrams.addAll(grams(w)));
+        float gramWeight = 1f / queryGrams.size();
+        for (String gram : queryGrams) {
+            int[] ids = grams.get(gram);
+            if (ids == null) {
+                continue;
+            }
+            for (int e : ids) {
+                s.add(e, gramWeight);
+            }
+        }
+
+        // 3. Filtrage, tri et top-k
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < s.touchedCount; i++) {
+            int e = s.touched[i];
+            if (scores[e] >= MIN_SCORE && (schoolFilter.isEmpty() || entries[e].schoolKey().equals(schoolFilter))) {
+                candidates.add(e);
+            }
+        }
+        candidates.sort(Comparator.<Integer>comparingDouble(e -> -scores[e]).thenComparing(e -> entries[e].sortKey()));
+
+        List<Hit> hits = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (int i = 0; i < candidates.size() && hits.size() < limit; i++) {
+            Entry entry = entries[candidates.get(i)];
+            hits.add(new Hit(entry.kind(), entry.school(), entry.course(), Math.round(scores[candidates.get(i)] * 100) / 100.0));
+        }
+        return hits;
+    }
+
+    /**
+     * Emprunte des tampons de travail au pool (ou en alloue s'il est vide).
+     */
+    private Scratch acquire() {
+        Scratch s = pool.poll();
+        return s != null ? s : new Scratch(entries.length);
+    }
+
+    /**
+     * Remet à zéro uniquement les entrées touchées puis rend les tampons au pool.
+     */
+    private void release(Scratch s) {
+        for (int i = 0; i < s.touchedCount; i++) {
+            s.scores[s.touched[i]] = 0f;
+        }
+        s.touchedCount = 0;
+        pool.offer(s);
+    }
+
+    // ————— MÉTHODES UTILITAIRES —————
+
+    private record KeyRef(String key, int entry) {
+    }
+
+    /**
+     * Forme compacte d'un code : accents retirés, majuscules, lettres et chiffres uniquement ("binv-1090-1" → "BINV10901").
+     */
+    static String compact(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return "";
+        }
+        String folded = fold(raw);
+        StringBuilder sb = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Mots normalisés (accents retirés, majuscules) d'un libellé, d'au moins 2 caractères.
+     */
+    static List<String> words(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return List.of();
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : fold(raw).split("[^A-Z0-9]+")) {
+            if (word.length() >= 2) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Trigrammes d'une clé, préfixée par '$' pour favoriser les débuts de mots.
+     */
+    static List<String> grams(String key) {
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        String padded = "$" + key;
+        if (padded.length() <= 3) {
+            return List.of(padded);
+        }
+        List<String> grams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    private static String fold(String raw) {
+        return Normalizer.normalize(raw, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toUpperCase(Locale.ROOT);
+    }
+
+    private static int lowerBound(String[] keys, String prefix) {
+        int i = Arrays.binarySearch(keys, prefix);
+        if (i < 0) {
+            return -i - 1;
+        }
+        while (i > 0 && keys[i - 1].equals(prefix)) {
+            i--;
+        }
+        return i;
+    }
+}
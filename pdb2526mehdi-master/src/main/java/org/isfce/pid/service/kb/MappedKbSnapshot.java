@@ -0,0 +1,406 @@
+package org.isfce.pid.service.kb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.service.kb.KbIndex.IndexedRule;
+
+/**
+ * Forme compilée binaire de la KB, projetée en mémoire (lecture seule, hors tas). Avec le moteur
+ * {@link MappedRuleEvaluator}, c'est le seul index inversé cours → règles : {@link KbIndex} n'en construit pas sur le tas.
+ * Le fichier ne contient que ce qu'il faut pour évaluer les règles :
+ * une table des clés de cours (école + cours, triées), l'index inversé cours → règles (format CSR) avec
+ * la multiplicité de chaque source, le nombre de sources distinctes et le minimum d'ECTS de chaque règle.
+ * Les règles y sont rangées dans l'ordre de l'index, lui-même déterministe (voir {@link KbIndex#build}) :
+ * l'ordinal d'une règle dans le fichier est son ordinal dans l'index, et deux instances ayant la même KB
+ * produisent le même fichier, le partagent (cache de pages du système) et ne le réécrivent pas.
+ * Le fichier est nommé d'après l'empreinte de son corps ({@code kb-<sha256>.bin}) : des instances sur des versions
+ * différentes de la KB (synchronisation progressive) n'écrivent jamais le même fichier. L'empreinte est calculée
+ * en flux, sans matérialiser le corps sur le tas ; le corps n'est sérialisé une seconde fois, directement dans
+ * le fichier, que si celui-ci n'existe pas encore (fichier temporaire puis renommage atomique). Les fichiers
+ * qu'aucune instance n'a ouverts depuis {@link #RETENTION} sont supprimés.
+ * <pre>
+ * en-tête : magic, version, SHA-256 du corps
+ * corps   : nbCours, nbRègles, nbRéférences, nbOctets
+ *           int[nbCours+1] début de la clé de chaque cours
+ *           int[nbCours+1] début des références de chaque cours
+ *           int[nbRéférences] ordinal de la règle, int[nbRéférences] multiplicité
+ *           int[nbRègles] sources distinctes, int[nbRègles] minimum d'ECTS
+ *           byte[nbOctets] clés des cours (UTF-8, triées octet par octet)
+ * </pre>
+ */
+final class MappedKbSnapshot {
+
+    private static final int MAGIC = 0x504B4231; // "PKB1"
+    private static final int VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int HEADER = 8 + DIGEST_LENGTH;
+    private static final String PREFIX = "kb-";
+    private static final String SUFFIX = ".bin";
+
+    /**
+     * Durée après laquelle un fichier qu'aucune instance n'a ouvert est supprimé (une projection existante
+     * reste lisible après la suppression).
+     */
+    static final Duration RETENTION = Duration.ofHours(1);
+
+    /**
+     * Tampons de travail réutilisables d'une évaluation (jamais partagés entre deux threads).
+     * Seules les entrées des règles touchées sont non nulles ; elles sont remises à zéro au retour dans le pool.
+     */
+    static final class Scratch {
+        final int[] hits;
+        final int[] ects;
+        final int[] touched;
+        int touchedCount;
+
+        private Scratch(int ruleCount) {
+            this.hits = new int[ruleCount];
+            this.ects = new int[ruleCount];
+            this.touched = new int[ruleCount];
+        }
+    }
+
+    /**
+     * Références (ordinal de règle, multiplicité) par clé de cours source, triées octet par octet :
+     * le contenu du corps du fichier. Structure transitoire, libérée dès le fichier projeté.
+     */
+    private record Layout(TreeMap<byte[], List<int[]>> refsByCourse, List<IndexedRule> rules) {
+    }
+
+    private final ByteBuffer buffer;
+    private final int courseCount;
+    private final int ruleCount;
+    private final int courseKeyOffsets;
+    private final int courseRefOffsets;
+    private final int refRules;
+    private final int refMultiplicities;
+    private final int ruleDistinct;
+    private final int ruleMinEcts;
+    private final int strings;
+    private final ArrayBlockingQueue<Scratch> pool =
+            new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+
+    private MappedKbSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int pos = HEADER;
+        this.courseCount = buffer.getInt(pos);
+        this.ruleCount = buffer.getInt(pos + 4);
+        int refCount = buffer.getInt(pos + 8);
+        pos += 16;
+        this.courseKeyOffsets = pos;
+        pos += (courseCount + 1) * 4;
+        this.courseRefOffsets = pos;
+        pos += (courseCount + 1) * 4;
+        this.refRules = pos;
+        pos += refCount * 4;
+        this.refMultiplicities = pos;
+        pos += refCount * 4;
+        this.ruleDistinct = pos;
+        pos += ruleCount * 4;
+        this.ruleMinEcts = pos;
+        pos += ruleCount * 4;
+        this.strings = pos;
+    }
+
+    /**
+     * Projette en mémoire le fichier compilé des règles d'un index. Le fichier de même contenu (même empreinte,
+     * donc même nom) est réutilisé tel quel ; sinon il est écrit (fichier temporaire puis renommage atomique).
+     *
+     * @param rules     Les règles de l'index, dans l'ordre de leurs ordinaux.
+     * @param directory Le répertoire des snapshots compilés.
+     * @return Le snapshot projeté.
+     * @throws UncheckedIOException Si le fichier ne peut être écrit ou projeté.
+     */
+    static MappedKbSnapshot open(List<IndexedRule> rules, Path directory) {
+        Layout layout = layout(rules);
+        try {
+            byte[] digest = digest(layout);
+            Path file = directory.resolve(PREFIX + HexFormat.of().formatHex(digest) + SUFFIX);
+            if (Arrays.equals(digest, digestOf(file))) {
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now())); // en usage : pas de purge
+            } else {
+                write(layout, digest, file);
+            }
+            MappedKbSnapshot snapshot;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (!Arrays.equals(digest, digestOf(buffer))) {
+                    throw new IOException("Snapshot de la KB corrompu : " + file);
+                }
+                snapshot = new MappedKbSnapshot(buffer);
+            }
+            purge(directory, file);
+            return snapshot;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Recherche dichotomique d'un cours dans la table des clés projetée (sans copie sur le tas).
+     *
+     * @return L'ordinal du cours dans le fichier, ou -1 s'il n'est source d'aucune règle.
+     */
+    int courseOrdinal(KbCourse course) {
+        byte[] key = courseKey(course.getEcole().getCode(), course.getCode());
+        int low = 0;
+        int high = courseCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKey(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Premier indice (inclus) des références d'un cours dans l'index inversé.
+     */
+    int refStart(int course) {
+        return buffer.getInt(courseRefOffsets + course * 4);
+    }
+
+    /**
+     * Dernier indice (exclu) des références d'un cours dans l'index inversé.
+     */
+    int refEnd(int course) {
+        return buffer.getInt(courseRefOffsets + (course + 1) * 4);
+    }
+
+    /**
+     * @return L'ordinal (dans l'index) de la règle d'une référence.
+     */
+    int refRule(int ref) {
+        return buffer.getInt(refRules + ref * 4);
+    }
+
+    int refMultiplicity(int ref) {
+        return buffer.getInt(refMultiplicities + ref * 4);
+    }
+
+    int distinctSources(int rule) {
+        return buffer.getInt(ruleDistinct + rule * 4);
+    }
+
+    int minEcts(int rule) {
+        return buffer.getInt(ruleMinEcts + rule * 4);
+    }
+
+    /**
+     * Emprunte des tampons de travail au pool (ou en crée si le pool est vide).
+     */
+    Scratch acquire() {
+        Scratch s = pool.poll();
+        return s != null ? s : new Scratch(ruleCount);
+    }
+
+    /**
+     * Remet à zéro uniquement les règles touchées puis rend les tampons au pool.
+     */
+    void release(Scratch s) {
+        for (int i = 0; i < s.touchedCount; i++) {
+            int r = s.touched[i];
+            s.hits[r] = 0;
+            s.ects[r] = 0;
+        }
+        s.touchedCount = 0;
+        pool.offer(s);
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    /**
+     * Compare la clé d'un cours du fichier à une clé recherchée (octets non signés).
+     */
+    private int compareKey(int course, byte[] key) {
+        int start = strings + buffer.getInt(courseKeyOffsets + course * 4);
+        int length = strings + buffer.getInt(courseKeyOffsets + (course + 1) * 4) - start;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buffer.get(start + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    /**
+     * Clé binaire d'un cours : codes normalisés de l'école et du cours séparés par un octet nul.
+     */
+    private static byte[] courseKey(String schoolCode, String courseCode) {
+        return (KbIndex.key(schoolCode) + '\u0000' + KbIndex.key(courseCode)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Regroupe les références (ordinal de règle, multiplicité) par clé de cours source.
+     */
+    private static Layout layout(List<IndexedRule> rules) {
+        TreeMap<byte[], List<int[]>> refsByCourse = new TreeMap<>(Arrays::compareUnsigned);
+        for (IndexedRule rule : rules) {
+            Map<byte[], Integer> multiplicities = new TreeMap<>(Arrays::compareUnsigned);
+            for (KbCourse c : rule.sources()) {
+                multiplicities.merge(courseKey(c.getEcole().getCode(), c.getCode()), 1, Integer::sum);
+            }
+            multiplicities.forEach((key, count) ->
+                    refsByCourse.computeIfAbsent(key, k -> new ArrayList<>()).add(new int[] {rule.ordinal(), count}));
+        }
+        return new Layout(refsByCourse, rules);
+    }
+
+    /**
+     * Sérialise le corps du fichier dans un flux (ordre déterministe : clés de cours, puis ordinaux des règles).
+     */
+    private static void writeBody(Layout layout, DataOutputStream out) throws IOException {
+        TreeMap<byte[], List<int[]>> refsByCourse = layout.refsByCourse();
+        int refCount = refsByCourse.values().stream().mapToInt(List::size).sum();
+        int stringBytes = refsByCourse.keySet().stream().mapToInt(k -> k.length).sum();
+        out.writeInt(refsByCourse.size());
+        out.writeInt(layout.rules().size());
+        out.writeInt(refCount);
+        out.writeInt(stringBytes);
+
+        int offset = 0;
+        out.writeInt(offset);
+        for (byte[] key : refsByCourse.keySet()) {
+            out.writeInt(offset += key.length);
+        }
+        offset = 0;
+        out.writeInt(offset);
+        for (List<int[]> refs : refsByCourse.values()) {
+            out.writeInt(offset += refs.size());
+        }
+        for (List<int[]> refs : refsByCourse.values()) {
+            for (int[] ref : refs) {
+                out.writeInt(ref[0]);
+            }
+        }
+        for (List<int[]> refs : refsByCourse.values()) {
+            for (int[] ref : refs) {
+                out.writeInt(ref[1]);
+            }
+        }
+        for (IndexedRule rule : layout.rules()) {
+            out.writeInt(rule.distinctSources());
+        }
+        for (IndexedRule rule : layout.rules()) {
+            out.writeInt(rule.minTotalEcts());
+        }
+        for (byte[] key : refsByCourse.keySet()) {
+            out.write(key);
+        }
+        out.flush();
+    }
+
+    /**
+     * Empreinte SHA-256 du corps, calculée en flux (le corps n'est pas matérialisé en mémoire).
+     */
+    private static byte[] digest(Layout layout) throws IOException {
+        MessageDigest sha256 = sha256();
+        writeBody(layout, new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), sha256)));
+        return sha256.digest();
+    }
+
+    /**
+     * Supprime les snapshots qu'aucune instance n'a ouverts depuis {@link #RETENTION} (au mieux : un fichier
+     * en cours de suppression par une autre instance, ou encore ouvert sous Windows, est ignoré).
+     */
+    private static void purge(Path directory, Path current) {
+        Instant limit = Instant.now().minus(RETENTION);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    if (!file.equals(current) && Files.getLastModifiedTime(file).toInstant().isBefore(limit)) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    // fichier supprimé ou verrouillé entre-temps
+                }
+            }
+        } catch (IOException e) {
+            // la purge n'est qu'un nettoyage
+        }
+    }
+
+    private static void write(Layout layout, byte[] digest, Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).put(digest);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.write(header.array());
+                writeBody(layout, out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Empreinte lue dans l'en-tête d'un fichier existant (null s'il est absent ou d'un autre format).
+     */
+    private static byte[] digestOf(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // lecture de l'en-tête complet
+            }
+            return header.hasRemaining() ? null : digestOf(header);
+        }
+    }
+
+    private static byte[] digestOf(ByteBuffer header) {
+        if (header.limit() < HEADER || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            return null;
+        }
+        byte[] digest = new byte[DIGEST_LENGTH];
+        header.get(8, digest);
+        return digest;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 est toujours disponible
+        }
+    }
+}
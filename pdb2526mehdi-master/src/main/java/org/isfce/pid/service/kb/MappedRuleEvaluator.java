@@ -0,0 +1,70 @@
+package org.isfce.pid.service.kb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.isfce.pid.model.ExternalCourse;
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.service.KnowledgeBaseService.RuleMatch;
+import org.isfce.pid.service.kb.KbIndex.IndexedRule;
+import org.isfce.pid.service.kb.MappedKbSnapshot.Scratch;
+
+/**
+ * Évaluateur de règles par comptage sur la forme compilée de la KB projetée en mémoire ({@link MappedKbSnapshot}).
+ * Les cours reconnus sont retrouvés par recherche dichotomique dans la table des clés du fichier,
+ * et les compteurs par règle, des tableaux {@code int[]} recyclés, sont alimentés par l'index inversé lu
+ * directement hors tas. Avec ce moteur, l'index de la KB ne construit pas d'index inversé sur le tas :
+ * restent sur le tas les entités de la KB (renvoyées dans les résultats) et les index de recherche.
+ * Un index sans forme projetée (index privé d'une transaction qui modifie la KB) est évalué par comptage.
+ * Produit exactement les mêmes résultats que {@link CountingRuleEvaluator}.
+ */
+public final class MappedRuleEvaluator implements RuleEvaluator {
+
+    private final CountingRuleEvaluator fallback = new CountingRuleEvaluator();
+
+    @Override
+    public List<RuleMatch> evaluate(KbIndex index, Map<KbCourse, List<ExternalCourse>> recognizedCourses) {
+        MappedKbSnapshot snapshot = index.mapped();
+        if (snapshot == null) {
+            return fallback.evaluate(index, recognizedCourses);
+        }
+        Scratch s = snapshot.acquire();
+        try {
+            // 1. Incrémenter les compteurs des seules règles référençant un cours reconnu
+            for (Map.Entry<KbCourse, List<ExternalCourse>> entry : recognizedCourses.entrySet()) {
+                int course = snapshot.courseOrdinal(entry.getKey());
+                if (course < 0 || entry.getValue().isEmpty()) {
+                    continue;
+                }
+                int safeEcts = CountingRuleEvaluator.safeEcts(entry.getKey(), entry.getValue());
+                for (int ref = snapshot.refStart(course); ref < snapshot.refEnd(course); ref++) {
+                    int r = snapshot.refRule(ref);
+                    if (s.hits[r]++ == 0) {
+                        s.touched[s.touchedCount++] = r;
+                    }
+                    s.ects[r] += safeEcts * snapshot.refMultiplicity(ref);
+                }
+            }
+
+            // 2. Déclencher les règles complètes dont le total est suffisant, dans l'ordre de l'index
+            Arrays.sort(s.touched, 0, s.touchedCount);
+            List<RuleMatch> matches = null;
+            for (int i = 0; i < s.touchedCount; i++) {
+                int r = s.touched[i];
+                int min = snapshot.minEcts(r);
+                if (s.hits[r] == snapshot.distinctSources(r) && (min <= 0 || s.ects[r] >= min)) {
+                    if (matches == null) {
+                        matches = new ArrayList<>();
+                    }
+                    IndexedRule rule = index.rules().get(r);
+                    matches.add(RuleMatch.of(index, rule, CountingRuleEvaluator.justifyingCourses(rule, recognizedCourses), 1.0));
+                }
+            }
+            return matches == null ? List.of() : matches;
+        } finally {
+            snapshot.release(s);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.isfce.pid.service.kb;
+
+import java.util.List;
+import java.util.Map;
+
+import org.isfce.pid.model.ExternalCourse;
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.service.KnowledgeBaseService.RuleMatch;
+
+/**
+ * Stratégie d'évaluation des règles de correspondance sur l'index de la KB.
+ * Toutes les implémentations doivent produire exactement les mêmes {@link RuleMatch},
+ * triés par ordinal de règle.
+ */
+public interface RuleEvaluator {
+
+    /**
+     * Évalue les règles déclenchées par les cours reconnus de l'étudiant.
+     *
+     * @param index             L'index de la KB.
+     * @param recognizedCourses Les cours de l'étudiant groupés par cours KB reconnu.
+     * @return Les règles satisfaites et les cours qui les justifient, triées par ordinal de règle.
+     */
+    List<RuleMatch> evaluate(KbIndex index, Map<KbCourse, List<ExternalCourse>> recognizedCourses);
+
+    /**
+     * Prépare les structures propres à la stratégie pour un index (ex: forme compilée),
+     * afin que la première analyse n'en paie pas le coût. Par défaut, rien à préparer.
+     *
+     * @param index L'index de la KB.
+     */
+    default void warmUp(KbIndex index) {
+    }
+}
@@ -3,22 +3,39 @@ package org.isfce.pid.dao;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.isfce.pid.dto.ExternalCourseKeyDto;
+import org.isfce.pid.dto.SubmissionCheckDto;
+import org.isfce.pid.model.ExemptionItem;
 import org.isfce.pid.model.ExemptionRequest;
+import org.isfce.pid.model.ExternalCourse;
 import org.isfce.pid.model.Section;
 import org.isfce.pid.model.StatutDemande;
 import org.isfce.pid.model.Student;
+import org.isfce.pid.model.SupportingDocument;
+import org.isfce.pid.model.TypeDocument;
+import org.isfce.pid.model.UE;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
 @ActiveProfiles("testU") // Utilise la config H2 de test
 @SpringBootTest
 class TestDaoExemption {
@@ -32,6 +49,16 @@ class TestDaoExemption {
     @Autowired
     private ISectionDao sectionDao;
 
+    @Autowired
+    private IExternalCourseDao externalCourseDao;
+
+    @Autowired private IExemptionItemDao itemDao;
+    @Autowired private ISupportingDocumentDao documentDao;
+    @Autowired private IUeDao ueDao;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     private Student studentTest;
     private Section sectionTest;
 
@@ -121,4 +148,71 @@ class TestDaoExemption {
         // L'étudiant ne doit PAS être supprimé (vérification de la non-cascade sur le parent)
         assertTrue(studentDao.findByEmail("etudiant.test@isfce.be").isPresent());
     }
-}
\ No newline at end of file
+
+    @Test
+    @Transactional
+    void testExternalCourseUniqueKey() {
+        ExemptionRequest request = exemptionRequestDao.save(ExemptionRequest.builder()
+                .etudiant(studentTest)
+                .section(sectionTest)
+                .build());
+        externalCourseDao.saveAndFlush(ExternalCourse.builder().request(request)
+                .etablissement("ULB").code("INFO-F101").libelle("Programmation").ects(5).build());
+
+        // Clés normalisées : recherche indexée insensible à la casse
+        assertTrue(externalCourseDao.existsByRequestIdAndEtablissementKeyAndCodeKey(request.getId(), "ULB", "INFO-F101"));
+        assertEquals(List.of(new ExternalCourseKeyDto("ULB", "INFO-F101")), externalCourseDao.findKeysByRequestId(request.getId()));
+
+        // Le même cours (casse différente) est refusé par la base
+        assertThrows(DataIntegrityViolationException.class, () -> externalCourseDao.saveAndFlush(ExternalCourse.builder()
+                .request(request).etablissement("ulb").code(" info-f101").libelle("Programmation").ects(5).build()));
+    }
+
+    @Test
+    @Transactional
+    void testFindSubmissionCheck_SingleStatement() {
+        UE ue = ueDao.save(UE.builder().code("IPAP").ref("REF_IPAP").nom("Introduction à la Programmation")
+                .nbPeriodes(60).ects(6).prgm("Contenu du cours de Java...").build());
+        UUID small = createDossier(3, ue);
+        UUID large = createDossier(30, ue);
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            for (UUID id : List.of(small, large)) {
+                statistics.clear();
+                SubmissionCheckDto check = exemptionRequestDao.findSubmissionCheck(id);
+
+                // Une requête, quelle que soit la taille du dossier
+                assertEquals(1, statistics.getPrepareStatementCount());
+                long courses = id.equals(small) ? 3 : 30;
+                assertEquals(new SubmissionCheckDto(courses, 1, 1, 0, courses - 1), check);
+            }
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    /**
+     * Dossier de n cours : une dispense justifiée par tous les cours sauf le dernier (orphelin),
+     * un programme de cours pour le premier cours, aucun document global.
+     */
+    private UUID createDossier(int courses, UE ue) {
+        ExemptionRequest request = exemptionRequestDao.save(ExemptionRequest.builder()
+                .etudiant(studentTest)
+                .section(sectionTest)
+                .build());
+        List<ExternalCourse> saved = new ArrayList<>();
+        for (int i = 0; i < courses; i++) {
+            saved.add(externalCourseDao.save(ExternalCourse.builder().request(request)
+                    .etablissement("ULB").code("INFO-F%03d".formatted(i)).libelle("Cours " + i).ects(5).build()));
+        }
+        itemDao.save(ExemptionItem.builder().request(request).ue(ue)
+                .justifyingCourses(new HashSet<>(saved.subList(0, courses - 1))).build());
+        documentDao.save(SupportingDocument.builder().externalCourse(saved.get(0))
+                .type(TypeDocument.PROGRAMME).urlStockage("http://srv/prog.pdf").build());
+        return request.getId();
+    }
+}
@@ -0,0 +1,133 @@
+package org.isfce.pid.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.isfce.pid.controller.error.AnalysisQueueFullException;
+import org.isfce.pid.dao.IExemptionRequestDao;
+import org.isfce.pid.dto.AnalysisJobDto;
+import org.isfce.pid.dto.AnalysisJobDto.Status;
+import org.isfce.pid.model.ExemptionRequest;
+import org.isfce.pid.model.Section;
+import org.isfce.pid.model.StatutDemande;
+import org.isfce.pid.model.Student;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+@ActiveProfiles("testU")
+@SpringBootTest(properties = {"pid.analysis.async.workers=1", "pid.analysis.async.queue-capacity=1"})
+class TestAnalysisJobService {
+
+    @Autowired
+    private AnalysisJobService jobService;
+
+    @MockitoBean private IExemptionRequestDao reqDao;
+    @MockitoBean private KnowledgeBaseService kbService;
+
+    /**
+     * Retient les analyses dans le moteur (simulé) jusqu'à ce que le test les libère.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void releaseWorkers() {
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("Analyse asynchrone : résultat consultable une fois l'analyse terminée")
+    void testSubmit_ResultAvailableWhenDone() throws InterruptedException {
+        UUID reqId = draft();
+        when(kbService.findMatchingRules(any(), any())).thenReturn(List.of());
+
+        AnalysisJobDto job = jobService.submit(reqId);
+        assertEquals(reqId, job.getRequestId());
+
+        AnalysisJobDto done = awaitFinished(job.getJobId());
+        assertEquals(Status.DONE, done.getStatus());
+        assertNotNull(done.getFinishedAt());
+        assertEquals(StatutDemande.DRAFT, done.getResult().getStatut());
+    }
+
+    @Test
+    @DisplayName("Analyse asynchrone : une analyse par dossier, file pleine -> refus")
+    void testSubmit_DeduplicatesAndRejectsWhenFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        when(kbService.findMatchingRules(any(), any())).thenAnswer(i -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return List.of();
+        });
+
+        UUID running = draft();
+        AnalysisJobDto first = jobService.submit(running);
+        assertTrue(started.await(10, TimeUnit.SECONDS)); // l'unique thread est occupé
+
+        // Même dossier : l'analyse en cours est renvoyée
+        assertEquals(first.getJobId(), jobService.submit(running).getJobId());
+
+        // La file (1 place) se remplit, puis refuse
+        AnalysisJobDto queued = jobService.submit(draft());
+        assertEquals(Status.QUEUED, queued.getStatus());
+        UUID rejected = draft();
+        assertThrows(AnalysisQueueFullException.class, () -> jobService.submit(rejected));
+
+        release.countDown();
+        assertEquals(Status.DONE, awaitFinished(first.getJobId()).getStatus());
+        assertEquals(Status.DONE, awaitFinished(queued.getJobId()).getStatus());
+    }
+
+    @Test
+    @DisplayName("Analyse asynchrone : échec du moteur -> FAILED avec message ; analyse inconnue -> erreur")
+    void testSubmit_FailureReported() throws InterruptedException {
+        UUID reqId = draft();
+        when(kbService.findMatchingRules(any(), any())).thenThrow(new IllegalStateException("KB corrompue"));
+
+        AnalysisJobDto failed = awaitFinished(jobService.submit(reqId).getJobId());
+
+        assertEquals(Status.FAILED, failed.getStatus());
+        assertEquals("KB corrompue", failed.getError());
+        assertNull(failed.getResult());
+        assertThrows(NoSuchElementException.class, () -> jobService.getJob(UUID.randomUUID()));
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    private UUID draft() {
+        ExemptionRequest req = ExemptionRequest.builder()
+                .etudiant(Student.builder().email("jean@test.be").nom("Dupont").prenom("Jean").build())
+                .section(new Section("INFO", "Informatique", null))
+                .statut(StatutDemande.DRAFT)
+                .externalCourses(new HashSet<>())
+                .items(new HashSet<>())
+                .globalDocuments(new HashSet<>())
+                .build();
+        req.setId(UUID.randomUUID());
+        when(reqDao.findById(req.getId())).thenReturn(Optional.of(req));
+        return req.getId();
+    }
+
+    private AnalysisJobDto awaitFinished(UUID jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        AnalysisJobDto job = jobService.getJob(jobId);
+        while (job.getStatus() != Status.DONE && job.getStatus() != Status.FAILED && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            job = jobService.getJob(jobId);
+        }
+        return job;
+    }
+}
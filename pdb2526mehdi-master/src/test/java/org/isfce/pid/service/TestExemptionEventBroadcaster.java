@@ -0,0 +1,100 @@
+package org.isfce.pid.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.isfce.pid.dao.IExemptionRequestDao;
+import org.isfce.pid.model.ExemptionRequest;
+import org.isfce.pid.model.Section;
+import org.isfce.pid.model.StatutDemande;
+import org.isfce.pid.model.Student;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ActiveProfiles("testU")
+@SpringBootTest
+@AutoConfigureMockMvc
+class TestExemptionEventBroadcaster {
+
+    @Autowired private MockMvc mvc;
+    @Autowired private ExemptionService exemptionService;
+    @Autowired private ExemptionEventBroadcaster broadcaster;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @MockitoBean private IExemptionRequestDao reqDao;
+    @MockitoBean private KnowledgeBaseService kbService;
+
+    @Test
+    @DisplayName("Flux SSE : le changement est poussé à l'étudiant après commit, jamais après rollback")
+    void testEventsPushedAfterCommit() throws Exception {
+        MvcResult stream = mvc.perform(get("/api/exemptions/events").param("email", "Jean@Test.be"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult other = mvc.perform(get("/api/exemptions/events").param("email", "marie@test.be"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Transaction annulée : rien n'est diffusé
+        UUID rolledBack = draft("jean@test.be");
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            exemptionService.deleteDraft(rolledBack);
+            status.setRollbackOnly();
+        });
+
+        // Transaction validée : l'événement arrive sur le flux de l'étudiant (email sans tenir compte de la casse)
+        UUID deleted = draft("jean@test.be");
+        exemptionService.deleteDraft(deleted);
+
+        String content = awaitContent(stream, deleted.toString());
+        assertTrue(content.contains("event:" + ExemptionEventBroadcaster.EVENT_NAME));
+        assertTrue(content.contains("\"type\":\"REQUEST_DELETED\""));
+        assertFalse(content.contains(rolledBack.toString()));
+        assertEquals("", other.getResponse().getContentAsString());
+        assertEquals(2, broadcaster.connectionCount());
+    }
+
+    // ————— MÉTHODES PRIVÉES —————
+
+    private UUID draft(String email) {
+        ExemptionRequest req = ExemptionRequest.builder()
+                .etudiant(Student.builder().email(email).nom("Dupont").prenom("Jean").build())
+                .section(new Section("INFO", "Informatique", null))
+                .statut(StatutDemande.DRAFT)
+                .externalCourses(new HashSet<>())
+                .items(new HashSet<>())
+                .globalDocuments(new HashSet<>())
+                .build();
+        req.setId(UUID.randomUUID());
+        when(reqDao.findById(req.getId())).thenReturn(Optional.of(req));
+        return req.getId();
+    }
+
+    /**
+     * L'envoi se fait sur un thread virtuel : attend que le flux contienne le texte attendu.
+     */
+    private static String awaitContent(MvcResult stream, String expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        String content = stream.getResponse().getContentAsString();
+        while (!content.contains(expected) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            content = stream.getResponse().getContentAsString();
+        }
+        return content;
+    }
+}
@@ -2,10 +2,15 @@ package org.isfce.pid.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+import org.isfce.pid.config.AnalysisProperties;
+import org.isfce.pid.controller.error.DuplicateException;
 import org.isfce.pid.dao.*;
 import org.isfce.pid.dto.*;
 import org.isfce.pid.model.*;
@@ -14,8 +19,13 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @ActiveProfiles("testU")
 @SpringBootTest
@@ -24,6 +34,18 @@ class TestExemptionService {
     @Autowired
     private ExemptionService exemptionService;
 
+    @Autowired
+    private BulkAnalysisService bulkAnalysisService;
+
+    @Autowired
+    private AnalysisProperties analysisProperties;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TranscriptImportService transcriptImportService;
+
     // ——— MOCKS (Simulateurs) ———
     @MockitoBean private IExemptionRequestDao reqDao;
     @MockitoBean private ISectionDao sectionDao;
@@ -107,6 +129,95 @@ class TestExemptionService {
         verify(extCourseDao).save(any());
     }
 
+    @Test
+    @DisplayName("Ajout d'un cours externe : Doublon détecté par l'index (sans charger les cours du dossier)")
+    void testAddExternalCourse_Duplicate() {
+        AddExternalCourseDto dto = new AddExternalCourseDto();
+        dto.setEtablissement("ulb ");
+        dto.setCode("java");
+        dto.setLibelle("Java OO");
+        dto.setEcts(5);
+
+        when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(extCourseDao.existsByRequestIdAndEtablissementKeyAndCodeKey(reqId, "ULB", "JAVA")).thenReturn(true);
+
+        assertThrows(DuplicateException.class, () -> exemptionService.addExternalCourse(reqId, dto));
+        verify(extCourseDao, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Ajout en masse de cours externes : une insertion groupée, doublons signalés par ligne")
+    void testAddExternalCourses_ReportsDuplicates() {
+        AddExternalCoursesDto dto = new AddExternalCoursesDto();
+        dto.setCourses(List.of(course("ULB", "JAVA"), course("ULB", "ALGO"), course("ulb", "algo"), course("ULB", "WEB")));
+
+        when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(extCourseDao.findKeysByRequestId(reqId)).thenReturn(List.of(new ExternalCourseKeyDto("ULB", "WEB")));
+        when(extCourseDao.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        ExternalCoursesAddedDto result = exemptionService.addExternalCourses(reqId, dto);
+
+        assertEquals(List.of("JAVA", "ALGO"), result.getAdded().stream().map(ExternalCourseDto::getCode).toList());
+        assertEquals(List.of(2, 3), result.getErrors().stream().map(ExternalCoursesAddedDto.RowError::index).toList());
+        verify(extCourseDao).saveAll(anyList());
+        verify(extCourseDao, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Import d'un relevé CSV : lignes validées, cours valides ajoutés en une fois, refus par ligne")
+    void testImportTranscript_Csv() {
+        String csv = """
+                code;libellé;ects;établissement
+                INFO-F101;Programmation;10;
+                INFO-F102;Algorithmique;beaucoup;
+                INFO-F103;;5;
+                info-f101;Programmation (bis);10;
+                IODA0101-2;"Algo ; Prog";5;HELB
+                """;
+        when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(extCourseDao.saveAll(anyList())).thenAnswer(i -> {
+            List<ExternalCourse> courses = i.getArgument(0);
+            courses.forEach(c -> c.setId(UUID.randomUUID()));
+            return courses;
+        });
+
+        TranscriptImportReportDto report = transcriptImportService.importTranscript(reqId,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "ULB", false);
+
+        assertEquals(5, report.getRowsRead());
+        assertEquals(2, report.getCoursesAdded());
+        assertEquals(3, report.getRowsRejected());
+        assertEquals(List.of(true, false, false, false, true),
+                report.getRows().stream().map(TranscriptImportReportDto.RowResult::added).toList());
+        assertEquals(2L, report.getRows().get(0).row());
+        assertNotNull(report.getRows().get(4).courseId());
+        assertNull(report.getAnalysis());
+        verify(extCourseDao).saveAll(argThat((List<ExternalCourse> courses) -> courses.size() == 2));
+        verify(reqDao).findById(reqId);
+    }
+
+    @Test
+    @DisplayName("Import d'un relevé JSON suivi de l'analyse du dossier")
+    void testImportTranscript_JsonAndAnalyze() {
+        String json = """
+                {"courses": [
+                  {"etablissement": "ULB", "code": "JAVA101", "libelle": "Java", "ects": 6},
+                  {"etablissement": "ULB", "code": "WEB", "libelle": "Web", "ects": "six"}
+                ]}
+                """;
+        when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(extCourseDao.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        when(kbService.findMatchingRules(any(), any())).thenReturn(List.of());
+        when(reqDao.save(any())).thenReturn(draftReq);
+
+        TranscriptImportReportDto report = transcriptImportService.importTranscript(reqId,
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), null, true);
+
+        assertEquals(1, report.getCoursesAdded());
+        assertFalse(report.getRows().get(1).added());
+        assertNotNull(report.getAnalysis());
+    }
+
     @Test
     @DisplayName("Ajout d'un document global : Succès")
     void testAddGlobalDocument_Success() {
@@ -157,7 +268,7 @@ class TestExemptionService {
         );
 
         when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
-        when(kbService.findMatchingRules(any())).thenReturn(List.of(match));
+        when(kbService.findMatchingRules(any(), any())).thenReturn(List.of(match));
         when(reqDao.save(any())).thenReturn(draftReq); // Retourne l'objet modifié
 
         // ACTION
@@ -172,7 +283,202 @@ class TestExemptionService {
         
         // Vérification CRITIQUE : L'item est-il bien justifié par les 2 cours ?
         assertEquals(2, item.getJustifyingCourses().size(), "La dispense doit être liée aux 2 cours externes");
-        verify(itemDao).save(any(ExemptionItem.class));
+        verify(itemDao).saveAll(argThat((List<ExemptionItem> items) -> items.size() == 1));
+    }
+
+    @Test
+    @DisplayName("Analyse Auto : rapprochement peu sûr -> NEEDS_REVIEW")
+    void testAnalyzeRequest_LowConfidence_NeedsReview() {
+        ExternalCourse java = ExternalCourse.builder().code("BINV1091-1").ects(6).request(draftReq).build();
+        draftReq.getExternalCourses().add(java);
+
+        UE ueCible = UE.builder().code("IPAP").nom("Programmation").ects(6).build();
+        KbCorrespondenceRule rule = KbCorrespondenceRule.builder()
+                .description("Règle Java")
+                .targets(Set.of(KbCorrespondenceRuleTarget.builder().ue(ueCible).build()))
+                .build();
+
+        when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(kbService.findMatchingRules(any(), any()))
+                .thenReturn(List.of(new KnowledgeBaseService.RuleMatch(rule, Set.of(java), 0.7)));
+        when(reqDao.save(any())).thenReturn(draftReq);
+
+        ExemptionRequestFullDto result = exemptionService.analyzeRequest(reqId);
+
+        assertEquals(DecisionItem.NEEDS_REVIEW, result.getItems().iterator().next().getDecision());
+    }
+
+    @Test
+    @DisplayName("Analyse Auto : dossier inchangé -> résultat mémorisé, sans moteur ni écriture")
+    void testAnalyzeRequest_MemoizedUntilChange() {
+        ExternalCourse java = ExternalCourse.builder().etablissement("ULB").code("INFO-F101").ects(6).request(draftReq).build();
+        draftReq.getExternalCourses().add(java);
+
+        UE ueCible = UE.builder().code("IPAP").nom("Programmation").ects(6).build();
+        KbCorrespondenceRule rule = KbCorrespondenceRule.builder()
+                .description("Règle Java")
+                .targets(Set.of(KbCorrespondenceRuleTarget.builder().ue(ueCible).build()))
+                .build();
+
+        when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(kbService.kbVersion()).thenReturn(1L);
+        when(kbService.findMatchingRules(any(), any()))
+                .thenReturn(List.of(new KnowledgeBaseService.RuleMatch(rule, Set.of(java))));
+
+        ExemptionRequestFullDto first = exemptionService.analyzeRequest(reqId);
+        ExemptionRequestFullDto second = exemptionService.analyzeRequest(reqId);
+
+        assertSame(first, second);
+        verify(kbService, times(1)).findMatchingRules(any(), any());
+        verify(itemDao, times(1)).saveAll(any());
+
+        // Nouvelle version de la KB : l'empreinte change, le moteur est relancé
+        when(kbService.kbVersion()).thenReturn(2L);
+        exemptionService.analyzeRequest(reqId);
+        verify(kbService, times(2)).findMatchingRules(any(), any());
+
+        // Modification du dossier : le résultat mémorisé est oublié
+        AddSupportingDocumentDto doc = new AddSupportingDocumentDto();
+        doc.setType(TypeDocument.BULLETIN);
+        doc.setUrlStockage("http://srv/file.pdf");
+        doc.setOriginalFileName("bulletin.pdf");
+        when(docDao.save(any(SupportingDocument.class))).thenAnswer(i -> i.getArgument(0));
+        exemptionService.addGlobalDocument(reqId, doc);
+        exemptionService.analyzeRequest(reqId);
+        verify(kbService, times(3)).findMatchingRules(any(), any());
+    }
+
+    @Test
+    @DisplayName("Analyse Auto : un document ajouté pendant l'analyse empêche de mémoriser le résultat")
+    void testAnalyzeRequest_ConcurrentModificationNotMemoized() {
+        ExternalCourse java = ExternalCourse.builder().etablissement("ULB").code("INFO-F101").ects(6).request(draftReq).build();
+        draftReq.getExternalCourses().add(java);
+        when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(kbService.kbVersion()).thenReturn(1L);
+        when(docDao.save(any(SupportingDocument.class))).thenAnswer(i -> i.getArgument(0));
+
+        AddSupportingDocumentDto doc = new AddSupportingDocumentDto();
+        doc.setType(TypeDocument.BULLETIN);
+        doc.setUrlStockage("http://srv/file.pdf");
+        doc.setOriginalFileName("bulletin.pdf");
+
+        // SCENARIO : pendant que le moteur tourne, un ajout de document est validé dans sa propre transaction
+        // (son invalidation après validation passe avant le rangement du résultat de l'analyse)
+        TransactionTemplate concurrent = new TransactionTemplate(transactionManager);
+        concurrent.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        when(kbService.findMatchingRules(any(), any())).thenAnswer(inv -> {
+            concurrent.executeWithoutResult(tx -> exemptionService.addGlobalDocument(reqId, doc));
+            return List.of();
+        }).thenReturn(List.of());
+
+        exemptionService.analyzeRequest(reqId);
+
+        // ASSERTION : l'empreinte (cours, KB) est inchangée, mais le résultat périmé n'a pas été rangé
+        exemptionService.analyzeRequest(reqId);
+        verify(kbService, times(2)).findMatchingRules(any(), any());
+    }
+
+    @Test
+    @DisplayName("Analyse en masse : un dossier en erreur n'interrompt pas les autres")
+    void testAnalyzeAllDrafts_IsolatesFailures() {
+        // SCENARIO : 2 brouillons valides (1 match chacun) + 1 dossier introuvable
+        UUID brokenId = UUID.randomUUID();
+        UUID otherId = UUID.randomUUID();
+        ExemptionRequest other = ExemptionRequest.builder()
+                .etudiant(student).section(section).statut(StatutDemande.DRAFT)
+                .externalCourses(new HashSet<>()).items(new HashSet<>()).globalDocuments(new HashSet<>())
+                .build();
+        other.setId(otherId);
+
+        UE ueCible = UE.builder().code("IPAP").nom("Programmation").ects(6).build();
+        KbCorrespondenceRule rule = KbCorrespondenceRule.builder()
+                .description("Règle Java")
+                .targets(Set.of(KbCorrespondenceRuleTarget.builder().ue(ueCible).build()))
+                .build();
+
+        when(reqDao.findIdsByStatut(eq(StatutDemande.DRAFT), any()))
+                .thenReturn(List.of(reqId, brokenId, otherId));
+        when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(reqDao.findById(otherId)).thenReturn(Optional.of(other));
+        when(reqDao.findById(brokenId)).thenReturn(Optional.empty());
+        when(kbService.findMatchingRules(any()))
+                .thenReturn(List.of(new KnowledgeBaseService.RuleMatch(rule, Set.of())));
+
+        // ACTION
+        BulkAnalysisReportDto report = bulkAnalysisService.analyzeAllDrafts();
+
+        // ASSERTION
+        assertEquals(3, report.getScanned());
+        assertEquals(2, report.getAnalyzed());
+        assertEquals(1, report.getFailed());
+        assertEquals(2, report.getItemsCreated());
+        assertEquals(brokenId, report.getFailures().get(0).requestId());
+        verify(itemDao, times(2)).saveAll(argThat((List<ExemptionItem> items) -> items.size() == 1));
+        // Analyse complète : aucun état incrémental créé (il évincerait ceux des dossiers en cours de saisie)
+        verify(kbService, never()).findMatchingRules(any(), any());
+    }
+
+    @Test
+    @DisplayName("Analyse en masse : en arrière-plan, brouillons lus par curseur sur l'id")
+    void testSubmitBulkAnalysis_KeysetPages() throws InterruptedException {
+        // SCENARIO : 3 brouillons lus par pages de 2 (tous introuvables au rechargement)
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        int pageSize = analysisProperties.getBulk().getPageSize();
+        analysisProperties.getBulk().setPageSize(2);
+        when(reqDao.findIdsByStatut(StatutDemande.DRAFT, Limit.of(2))).thenReturn(List.of(a, b));
+        when(reqDao.findIdsByStatutAfter(StatutDemande.DRAFT, b, Limit.of(2))).thenReturn(List.of(c));
+        LocaleContextHolder.setLocale(Locale.ENGLISH);
+        try {
+            // ACTION
+            BulkAnalysisJobDto job = bulkAnalysisService.submit();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (job.getStatus() != AnalysisJobDto.Status.DONE && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+                job = bulkAnalysisService.getJob(job.getJobId());
+            }
+
+            // ASSERTION : la 2e page part du dernier id de la 1re, sans OFFSET
+            assertEquals(AnalysisJobDto.Status.DONE, job.getStatus());
+            assertEquals(3, job.getReport().getScanned());
+            assertEquals(3, job.getReport().getFailed());
+            verify(reqDao).findIdsByStatutAfter(StatutDemande.DRAFT, b, Limit.of(2));
+            // Messages des dossiers en erreur dans la langue de la demande (threads virtuels compris)
+            job.getReport().getFailures().forEach(f -> assertEquals("Exemption request not found.", f.message()));
+            assertThrows(NoSuchElementException.class, () -> bulkAnalysisService.getJob(UUID.randomUUID()));
+        } finally {
+            LocaleContextHolder.resetLocaleContext();
+            analysisProperties.getBulk().setPageSize(pageSize);
+        }
+    }
+
+    @Test
+    @DisplayName("Simulation : propositions calculées sans lire ni écrire de dossier")
+    void testSimulate_NoPersistence() {
+        // SCENARIO : l'étudiant est en train de saisir 2 cours, dont 1 seul est reconnu par la règle
+        UE ueCible = UE.builder().code("IPAP").nom("Programmation").ects(6).build();
+        KbCorrespondenceRule rule = KbCorrespondenceRule.builder()
+                .description("Règle Java")
+                .targets(Set.of(KbCorrespondenceRuleTarget.builder().ue(ueCible).build()))
+                .build();
+
+        // Le KB Service reconnaît le cours "JAVA101" parmi les cours transitoires reçus
+        when(kbService.findMatchingRules(any())).thenAnswer(inv -> {
+            Set<ExternalCourse> courses = inv.getArgument(0);
+            ExternalCourse java = courses.stream().filter(c -> c.getCode().equals("JAVA101")).findFirst().orElseThrow();
+            return List.of(new KnowledgeBaseService.RuleMatch(rule, Set.of(java)));
+        });
+
+        // ACTION
+        List<SimulatedMatchDto> result = exemptionService.simulate(List.of(
+                new SimulationCourseDto("ULB", "JAVA101", 6),
+                new SimulationCourseDto("ULB", "HIST", 3)));
+
+        // ASSERTION
+        assertEquals(1, result.size());
+        assertEquals("Règle Java", result.get(0).getRuleDescription());
+        assertEquals("IPAP", result.get(0).getUes().get(0).getCode());
+        assertEquals(List.of(new SimulationCourseDto("ULB", "JAVA101", 6)), result.get(0).getCourses());
+        verifyNoInteractions(reqDao, itemDao, extCourseDao);
     }
 
     // ===================================================================================
@@ -200,6 +506,8 @@ class TestExemptionService {
         draftReq.getItems().add(itemValid);
 
         when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        // Compteurs du dossier (requête d'agrégation) : 2 cours, 1 dispense, 1 orphelin, aucun document
+        when(reqDao.findSubmissionCheck(reqId)).thenReturn(new SubmissionCheckDto(2, 1, 1, 0, 2));
 
         // ACTION & ASSERTION
         IllegalStateException ex = assertThrows(IllegalStateException.class, () -> exemptionService.submitRequest(reqId));
@@ -212,6 +520,7 @@ class TestExemptionService {
     void testSubmitRequest_Throws_WhenEmpty() {
         // Dossier vierge
         when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(reqDao.findSubmissionCheck(reqId)).thenReturn(new SubmissionCheckDto(0, 0, 0, 0, 0));
 
         assertThrows(IllegalStateException.class, () -> exemptionService.submitRequest(reqId));
     }
@@ -232,6 +541,7 @@ class TestExemptionService {
         draftReq.setGlobalDocuments(new HashSet<>());
 
         when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(reqDao.findSubmissionCheck(reqId)).thenReturn(new SubmissionCheckDto(1, 1, 0, 0, 1));
 
         // ACTION & ASSERTION
         IllegalStateException ex = assertThrows(IllegalStateException.class, () -> exemptionService.submitRequest(reqId));
@@ -258,6 +568,7 @@ class TestExemptionService {
         draftReq.getItems().add(item);
 
         when(reqDao.findById(reqId)).thenReturn(Optional.of(draftReq));
+        when(reqDao.findSubmissionCheck(reqId)).thenReturn(new SubmissionCheckDto(1, 1, 0, 0, 0));
         when(reqDao.save(any())).thenAnswer(i -> i.getArgument(0)); // Renvoie l'objet sauvegardé
 
         // ACTION
@@ -329,4 +640,13 @@ class TestExemptionService {
         assertFalse(draftReq.getItems().contains(item));
         verify(itemDao).delete(item);
     }
-}
\ No newline at end of file
+
+    private static AddExternalCourseDto course(String etablissement, String code) {
+        AddExternalCourseDto dto = new AddExternalCourseDto();
+        dto.setEtablissement(etablissement);
+        dto.setCode(code);
+        dto.setLibelle("Cours " + code);
+        dto.setEcts(5);
+        return dto;
+    }
+}
@@ -0,0 +1,153 @@
+package org.isfce.pid.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.isfce.pid.config.KbProperties;
+import org.isfce.pid.dao.IKbCorrespondenceRuleDao;
+import org.isfce.pid.dao.IKbCourseDao;
+import org.isfce.pid.dao.IKbSchoolDao;
+import org.isfce.pid.dao.IUeDao;
+import org.isfce.pid.dto.KbCsvImportReportDto;
+import org.isfce.pid.dto.KbCsvImportReportDto.LineError;
+import org.isfce.pid.dto.KbSyncReportDto;
+import org.isfce.pid.model.OrigineKb;
+import org.isfce.pid.model.UE;
+import org.isfce.pid.service.KnowledgeBaseSyncService.JsonCourse;
+import org.isfce.pid.service.KnowledgeBaseSyncService.JsonSchool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+@ActiveProfiles("testU")
+@SpringBootTest
+class TestKbCsvImportService {
+
+    private static final String HEADER = "type;école;nom;site;code;libellé;ects;description;min_ects;sources;cibles";
+
+    @Autowired
+    private KbCsvImportService importService;
+
+    @Autowired
+    private KnowledgeBaseSyncService syncService;
+
+    @Autowired
+    private KnowledgeBaseService kbService;
+
+    @Autowired private KbProperties properties;
+    @Autowired private IKbSchoolDao schoolDao;
+    @Autowired private IKbCourseDao courseDao;
+    @Autowired private IKbCorrespondenceRuleDao ruleDao;
+    @Autowired private IUeDao ueDao;
+
+    @BeforeEach
+    void setUp() {
+        ueDao.save(UE.builder()
+                .code("IPAP")
+                .ref("REF_IPAP")
+                .nom("Introduction à la Programmation")
+                .nbPeriodes(60)
+                .ects(6)
+                .prgm("Contenu du cours de Java...")
+                .build());
+    }
+
+    /**
+     * Chaque lot est validé dans sa propre transaction (pas de rollback de test possible) : la KB est vidée,
+     * y compris les écoles importées par CSV que la synchronisation du fichier ne supprime pas.
+     */
+    @AfterEach
+    void cleanUp() {
+        properties.getCsv().setBatchSize(500);
+        ruleDao.deleteAll();
+        courseDao.deleteAll();
+        schoolDao.deleteAll();
+        ueDao.deleteById("IPAP");
+    }
+
+    @Test
+    @DisplayName("Import CSV : écoles, cours et règles importés par lots, lignes invalides signalées")
+    void testImport_BatchesAndLineErrors() {
+        properties.getCsv().setBatchSize(2);
+        KbCsvImportReportDto report = importService.importCsv(csv(
+                HEADER,
+                "ECOLE;ULB;Université Libre de Bruxelles;https://ulb.be;;;;;;;",
+                "COURS;ULB;;;INFO-F101;Programmation;10;;;;",
+                ";ulb;;;info-f102;Algorithmique;5;;;;",
+                "COURS;HELB;;;IODA0101-2;\"Algo ; Prog\";5;;;;",
+                "COURS;ULB;;;INFO-F103;Réseaux;beaucoup;;;;",
+                "COURS;ULB;;;INFO-F104;;5;;;;",
+                "",
+                "REGLE;ULB;;;;;;ULB Prog -> IPAP;;INFO-F101;IPAP",
+                "REGLE;ULB;;;;;;ULB Algo -> IPAP;6;INFO-F101|INFO-F999;IPAP",
+                "REGLE;VUB;;;;;;VUB -> IPAP;;X;IPAP"));
+
+        assertEquals(9, report.getLinesRead());
+        assertEquals(5, report.getLinesImported());
+        assertEquals(4, report.getLinesFailed());
+        assertEquals(2, report.getSchoolsInserted()); // ULB + HELB (créée par sa ligne de cours)
+        assertEquals(3, report.getCoursesInserted());
+        assertEquals(1, report.getRulesInserted());
+        assertEquals(List.of(6L, 7L, 10L, 11L), report.getErrors().stream().map(LineError::line).toList());
+
+        // Codes normalisés : les cours importés sont immédiatement reconnus par le moteur
+        assertTrue(kbService.findCourse("ulb", "Info-F102").isPresent());
+        assertEquals("Algo ; Prog", kbService.findCourse("HELB", "IODA0101-2").orElseThrow().getLibelle());
+        assertEquals(OrigineKb.CSV, schoolDao.findByCodeKey("HELB").orElseThrow().getOrigine());
+
+        // Réimport du même fichier : rien ne change
+        KbCsvImportReportDto again = importService.importCsv(csv(
+                HEADER,
+                "COURS;ULB;;;INFO-F101;Programmation;10;;;;",
+                "REGLE;ULB;;;;;;ULB Prog -> IPAP;;info-f101;IPAP"));
+
+        assertEquals(0, again.getSchoolsInserted());
+        assertEquals(0, again.getCoursesInserted());
+        assertEquals(0, again.getCoursesUpdated());
+        assertEquals(0, again.getRulesInserted());
+        assertEquals(1, again.getRulesUnchanged());
+        assertEquals(1, ruleDao.count());
+    }
+
+    @Test
+    @DisplayName("Import CSV : une école du fichier de la KB modifiée est resynchronisée, une école CSV est conservée")
+    void testImport_CoexistsWithFileSync() {
+        syncService.sync(List.of(new JsonSchool("ULB", "ULB", "https://ulb.be",
+                List.of(new JsonCourse("INFO-F101", "Programmation", 10)), List.of())));
+
+        KbCsvImportReportDto report = importService.importCsv(csv(
+                "ecole,code,libelle,ects",
+                "ULB,INFO-F102,Algorithmique,5",
+                "HELB,IODA0101-2,Algo,5"));
+        assertEquals(2, report.getCoursesInserted());
+        assertNull(schoolDao.findByCodeKey("ULB").orElseThrow().getContentHash());
+
+        // Le fichier fait foi pour ULB (cours ajouté par CSV retiré) ; HELB, importée par CSV, n'est pas supprimée
+        KbSyncReportDto sync = syncService.sync(List.of(new JsonSchool("ULB", "ULB", "https://ulb.be",
+                List.of(new JsonCourse("INFO-F101", "Programmation", 10)), List.of())));
+        assertEquals(0, sync.getSchoolsSkipped());
+        assertEquals(1, sync.getCoursesDeleted());
+        assertEquals(0, sync.getSchoolsDeleted());
+        assertTrue(kbService.findCourse("HELB", "IODA0101-2").isPresent());
+        assertTrue(kbService.findCourse("ULB", "INFO-F102").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Import CSV : fichier vide ou sans colonne école refusé")
+    void testImport_InvalidHeader() {
+        assertThrows(IllegalArgumentException.class, () -> importService.importCsv(csv("")));
+        assertThrows(IllegalArgumentException.class, () -> importService.importCsv(csv("code;libelle;ects", "A;B;1")));
+    }
+
+    private static InputStream csv(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -5,26 +5,54 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
+import org.isfce.pid.config.KnowledgeBaseHealthIndicator;
+import org.isfce.pid.controller.error.KbUnavailableException;
 import org.isfce.pid.dao.*;
+import org.isfce.pid.dto.ExemptionRequestFullDto;
+import org.isfce.pid.dto.KbSuggestionDto;
 import org.isfce.pid.model.*;
 import org.isfce.pid.service.KnowledgeBaseService.RuleMatch;
+import org.isfce.pid.service.kb.KbSearchIndex;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
 @ActiveProfiles("testU")
 @SpringBootTest
 @Transactional
 class TestKnowledgeBaseService {
 
+    /**
+     * Requêtes SQL pour analyser un dossier, quel que soit le nombre de lignes créées : lecture du dossier,
+     * de l'étudiant, des cours, des lignes et des documents (globaux, puis par cours en un lot),
+     * puis 2 insertions groupées (lignes + liens).
+     */
+    private static final int ANALYSIS_STATEMENTS = 8;
+
     @Autowired
     private KnowledgeBaseService kbService;
 
+    @Autowired
+    private KnowledgeBaseHealthIndicator healthIndicator;
+
+    @Autowired
+    private ExemptionService exemptionService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     // DAOs
     @Autowired private IExemptionRequestDao reqDao;
     @Autowired private IExternalCourseDao extCourseDao;
@@ -142,6 +170,82 @@ class TestKnowledgeBaseService {
         assertEquals(2, match.studentCourses().size(), "Devrait utiliser les 2 cours");
     }
 
+    @Test
+    @DisplayName("Echec Matching : Règle combinée incomplète (1 source sur 2)")
+    void testFindMatchingRules_Fail_MissingSource() {
+        // CONFIG : Règle "Algo 1 + Algo 2 donnent IPAP"
+        KbCorrespondenceRule rule = KbCorrespondenceRule.builder()
+                .description("Algo Combiné")
+                .minTotalEcts(4)
+                .ecole(ulb)
+                .build();
+
+        KbCourse src1 = kbCourseDao.save(KbCourse.builder().ecole(ulb).code("ALGO1").libelle("Algo 1").ects(4).build());
+        KbCourse src2 = kbCourseDao.save(KbCourse.builder().ecole(ulb).code("ALGO2").libelle("Algo 2").ects(4).build());
+
+        rule.setSources(Set.of(
+            KbCorrespondenceRuleSource.builder().rule(rule).cours(src1).build(),
+            KbCorrespondenceRuleSource.builder().rule(rule).cours(src2).build()
+        ));
+        rule.setTargets(Set.of(KbCorrespondenceRuleTarget.builder().rule(rule).ue(ueIpap).build()));
+        ruleDao.save(rule);
+
+        // DONNÉE ÉTUDIANT : Il n'a que le premier cours (ECTS pourtant suffisants)
+        addExternalCourseToRequest("ULB", "ALGO1", "Algo 1", 6);
+
+        // ACTION
+        List<RuleMatch> matches = kbService.findMatchingRules(request.getExternalCourses());
+
+        // VERIF
+        assertTrue(matches.isEmpty(), "Ne devrait pas matcher car la source ALGO2 manque");
+    }
+
+    @Test
+    @DisplayName("Matching Approximatif : séparateurs différents, faute de frappe, cours inconnu")
+    void testFindMatchingRules_Fuzzy() {
+        // CONFIG : Règle "BINV1090-1 (Programmation Java) donne IPAP"
+        createRule("Programmation Java", ulb, "BINV1090-1", 5, ueIpap);
+
+        // Seuls les séparateurs diffèrent : confiance élevée
+        addExternalCourseToRequest("ulb", "binv 1090 1", "Programmation Java", 6);
+        List<RuleMatch> matches = kbService.findMatchingRules(request.getExternalCourses());
+        assertEquals(1, matches.size());
+        assertEquals(0.95, matches.get(0).confidence(), 0.001);
+
+        // Faute de frappe sur une lettre, même libellé : rapproché avec une confiance plus faible
+        request.getExternalCourses().clear();
+        addExternalCourseToRequest("ULB", "BINW1090-1", "Programmation Java", 6);
+        matches = kbService.findMatchingRules(request.getExternalCourses());
+        assertEquals(1, matches.size());
+        assertTrue(matches.get(0).confidence() < 0.95);
+
+        // Un chiffre différent, même avec le même libellé : c'est un autre cours, jamais rapproché
+        request.getExternalCourses().clear();
+        addExternalCourseToRequest("ULB", "BINV1091-1", "Programmation Java", 6);
+        assertTrue(kbService.findMatchingRules(request.getExternalCourses()).isEmpty());
+
+        // Cours sans rapport : aucun rapprochement
+        request.getExternalCourses().clear();
+        addExternalCourseToRequest("ULB", "HIST-200", "Histoire de l'art", 6);
+        assertTrue(kbService.findMatchingRules(request.getExternalCourses()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Matching Approximatif sans libellé (simulation) : le cours voisin absent de la KB n'est pas rapproché")
+    void testFindMatchingRules_FuzzyWithoutTitle() {
+        createRule("Programmation", ulb, "INFO-F101", 5, ueIpap);
+
+        // Cours transitoires d'une simulation : établissement, code et ECTS seulement
+        ExternalCourse sibling = ExternalCourse.builder().etablissement("ULB").code("INFO-F102").ects(6).build();
+        assertTrue(kbService.findMatchingRules(Set.of(sibling)).isEmpty());
+
+        // Seuls les séparateurs / la casse diffèrent : toujours reconnu sans libellé
+        ExternalCourse sameCode = ExternalCourse.builder().etablissement("ulb").code("info f101").ects(6).build();
+        List<RuleMatch> matches = kbService.findMatchingRules(Set.of(sameCode));
+        assertEquals(1, matches.size());
+        assertEquals(0.95, matches.get(0).confidence(), 0.001);
+    }
+
     @Test
     @DisplayName("Echec Matching : ECTS Insuffisants")
     void testFindMatchingRules_Fail_NotEnoughEcts() {
@@ -174,6 +278,103 @@ class TestKnowledgeBaseService {
         assertTrue(matches.isEmpty(), "Ne devrait pas matcher car l'école est différente");
     }
 
+    @Test
+    @DisplayName("Résolution en lot : couples (école, code) exacts, clés normalisées (casse et espaces ignorés)")
+    void testFindAllByKeys_NormalizedCodes() {
+        // CONFIG : deux cours ULB, codes saisis avec casse/espaces hétérogènes ; mêmes codes dans une autre école
+        kbCourseDao.save(KbCourse.builder().ecole(ulb).code(" info-f101 ").libelle("Programmation").ects(5).build());
+        kbCourseDao.save(KbCourse.builder().ecole(ulb).code("Math-F112").libelle("Analyse").ects(5).build());
+        KbSchool ucl = schoolDao.save(KbSchool.builder().code("UCL").etablissement("UCLouvain").build());
+        kbCourseDao.save(KbCourse.builder().ecole(ucl).code("INFO-F101").libelle("Programmation").ects(5).build());
+        kbCourseDao.save(KbCourse.builder().ecole(ucl).code("MATH-F112").libelle("Analyse").ects(5).build());
+
+        // ACTION : une seule requête pour tout le lot (deux écoles, deux codes, mais seulement deux couples)
+        List<KbCourse> found = kbCourseDao.findAllByKeys(List.of(
+                KbCodes.courseKey("ulb", "INFO-F101"), KbCodes.courseKey("UCL", "math-f112 "),
+                KbCodes.courseKey("ULB", "INCONNU")));
+
+        // VERIF : ni (UCL, INFO-F101) ni (ULB, MATH-F112), pourtant dans le produit écoles × codes
+        assertEquals(Set.of("ULB/INFO-F101", "UCL/MATH-F112"), found.stream()
+                .map(c -> c.getEcole().getCodeKey() + "/" + c.getCodeKey())
+                .collect(Collectors.toSet()));
+        assertTrue(kbCourseDao.findByEcoleAndCodeKey(ulb, "INFO-F101").isPresent());
+        assertTrue(kbService.findCourse("Ulb", "info-f101").isPresent());
+    }
+
+    @Test
+    @DisplayName("Auto-complétion : code mal saisi, préfixe et libellé")
+    void testSearch_TypoPrefixAndTitle() {
+        // CONFIG : deux cours ULB
+        kbCourseDao.save(KbCourse.builder().ecole(ulb).code("BINV1090-1").libelle("Programmation Java").ects(5).build());
+        kbCourseDao.save(KbCourse.builder().ecole(ulb).code("BINV2090-2").libelle("Projet d'intégration").ects(8).build());
+
+        // Ponctuation différente : le bon cours arrive en tête
+        List<KbSuggestionDto> typo = kbService.search("binv-1090-1", null, 5);
+        assertFalse(typo.isEmpty());
+        assertEquals("BINV1090-1", typo.get(0).getCode());
+
+        // Préfixe : les deux cours
+        assertEquals(2, kbService.search("BINV", "ulb", 10).stream()
+                .filter(s -> s.getType() == KbSearchIndex.Kind.COURSE).count());
+
+        // Libellé sans accent + école
+        assertEquals("BINV2090-2", kbService.search("integration", null, 5).get(0).getCode());
+        assertEquals(KbSearchIndex.Kind.SCHOOL, kbService.search("Université Libre", null, 5).get(0).getType());
+
+        // Autre école : aucun résultat
+        assertTrue(kbService.search("BINV", "UCL", 10).isEmpty());
+
+        // Tampons de score recyclés : une recherche n'hérite jamais des scores de la précédente
+        List<KbSuggestionDto> again = kbService.search("binv-1090-1", null, 5);
+        assertEquals(typo.stream().map(KbSuggestionDto::getCode).toList(), again.stream().map(KbSuggestionDto::getCode).toList());
+        assertEquals(typo.stream().map(KbSuggestionDto::getScore).toList(), again.stream().map(KbSuggestionDto::getScore).toList());
+    }
+
+    @Test
+    @DisplayName("Snapshot versionné : une correspondance garde sa version et ses cibles après un rechargement")
+    void testFindMatchingRules_CarriesSnapshotVersion() {
+        createRule("Règle Java", ulb, "JAVA101", 5, ueIpap);
+        addExternalCourseToRequest("ULB", "JAVA101", "Java Basics", 6);
+
+        RuleMatch before = kbService.findMatchingRules(request.getExternalCourses()).get(0);
+        assertTrue(before.kbVersion() > 0);
+
+        // La KB change : un nouveau snapshot est publié
+        createRule("Règle Python", ulb, "PY101", 5, ueIpap);
+        RuleMatch after = kbService.findMatchingRules(request.getExternalCourses()).get(0);
+
+        assertTrue(after.kbVersion() > before.kbVersion());
+        assertEquals(List.of("IPAP"), before.targets().stream().map(UE::getCode).toList());
+    }
+
+    @Test
+    @DisplayName("Chargement initial : analyse refusée (503) et sonde OUT_OF_SERVICE tant que la KB se charge")
+    void testFindMatchingRules_RefusedWhileLoading() {
+        createRule("Règle Java", ulb, "JAVA101", 5, ueIpap);
+        addExternalCourseToRequest("ULB", "JAVA101", "Java Basics", 6);
+
+        kbService.loadingStarted();
+        try {
+            assertThrows(KbUnavailableException.class, () -> kbService.findMatchingRules(request.getExternalCourses()));
+            assertEquals(Status.OUT_OF_SERVICE, healthIndicator.health().getStatus());
+            // Le reste de la KB reste consultable
+            assertTrue(kbService.findCourse("ULB", "JAVA101").isPresent());
+        } finally {
+            kbService.loadingFinished();
+        }
+
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+        assertEquals(1, kbService.findMatchingRules(request.getExternalCourses()).size());
+    }
+
+    @Test
+    @DisplayName("Analyse d'un dossier : lignes écrites en lots, même nombre exact de requêtes pour 10 et 30 règles")
+    void testAnalyzeRequest_StatementCount() {
+        // Même nombre exact de requêtes pour N et 3N lignes créées (insertions groupées, pas une par ligne)
+        assertEquals(ANALYSIS_STATEMENTS, analysisStatements("A", 10));
+        assertEquals(ANALYSIS_STATEMENTS, analysisStatements("B", 30));
+    }
+
     // ——— HELPERS ———
 
     private void createRule(String description, KbSchool school, String sourceCode, int minEcts, UE targetUE) {
@@ -205,6 +406,45 @@ class TestKnowledgeBaseService {
         ruleDao.save(rule);
     }
 
+    /**
+     * Prépare un nouveau dossier de {@code matching} cours reconnus par une règle (et 5 cours sans règle),
+     * puis compte les requêtes préparées par son analyse (KB déjà en mémoire).
+     */
+    private long analysisStatements(String prefix, int matching) {
+        request = reqDao.save(ExemptionRequest.builder()
+                .etudiant(request.getEtudiant())
+                .section(request.getSection())
+                .statut(StatutDemande.DRAFT)
+                .externalCourses(new HashSet<>())
+                .build());
+        for (int i = 1; i <= matching + 5; i++) {
+            String code = prefix + "%02d".formatted(i);
+            if (i <= matching) {
+                UE ue = ueDao.save(UE.builder().code("UE" + code).ref("REF_UE" + code).nom("UE " + code)
+                        .nbPeriodes(40).ects(5).prgm("Contenu " + code).build());
+                createRule("Règle " + code, ulb, code, 5, ue);
+            } else {
+                kbCourseDao.save(KbCourse.builder().ecole(ulb).code(code).libelle("Cours " + code).ects(5).build());
+            }
+            addExternalCourseToRequest("ULB", code, "Cours " + code, 5);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        kbService.findCourse("ULB", prefix + "01"); // snapshot de la KB construit hors mesure
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            ExemptionRequestFullDto result = exemptionService.analyzeRequest(request.getId());
+            entityManager.flush();
+            assertEquals(matching, result.getItems().size());
+            return statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
     private void addExternalCourseToRequest(String schoolName, String code, String libelle, int ects) {
         ExternalCourse c = ExternalCourse.builder()
                 .etablissement(schoolName)
@@ -0,0 +1,265 @@
+package org.isfce.pid.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.isfce.pid.config.KbProperties;
+import org.isfce.pid.dao.IKbCorrespondenceRuleDao;
+import org.isfce.pid.dao.IKbCourseDao;
+import org.isfce.pid.dao.IKbSchoolDao;
+import org.isfce.pid.dto.KbSyncProgressDto;
+import org.isfce.pid.dto.KbSyncReportDto;
+import org.isfce.pid.model.KbCorrespondenceRule;
+import org.isfce.pid.model.KbCourse;
+import org.isfce.pid.service.KnowledgeBaseSyncService.JsonCourse;
+import org.isfce.pid.service.KnowledgeBaseSyncService.JsonRule;
+import org.isfce.pid.service.KnowledgeBaseSyncService.JsonSchool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+@ActiveProfiles("testU")
+@SpringBootTest
+class TestKnowledgeBaseSyncService {
+
+    @Autowired
+    private KnowledgeBaseSyncService syncService;
+
+    @Autowired
+    private KnowledgeBaseService kbService;
+
+    @Autowired private KbProperties properties;
+    @Autowired private IKbSchoolDao schoolDao;
+    @Autowired private IKbCourseDao courseDao;
+    @Autowired private IKbCorrespondenceRuleDao ruleDao;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Chaque école est validée dans sa propre transaction (pas de rollback de test possible) : la KB est vidée.
+     */
+    @AfterEach
+    void cleanUp() {
+        syncService.sync(List.of());
+    }
+
+    @Test
+    @DisplayName("Synchronisation : seules les différences sont appliquées")
+    void testSync_AppliesOnlyDifferences() {
+        // 1. Base vide : tout est inséré
+        KbSyncReportDto first = syncService.sync(List.of(
+                ulb(8, "Programmation"),
+                new JsonSchool("HELB", "HELB Prigogine", "https://helb.be",
+                        List.of(new JsonCourse("IODA0101-2", "Algo & Prog", 5)),
+                        List.of(new JsonRule("HELB Algo -> IPAP", 5, List.of("IODA0101-2"), List.of("IPAP"))))));
+
+        assertEquals(2, first.getSchoolsInserted());
+        assertEquals(3, first.getCoursesInserted());
+        assertEquals(3, first.getRulesInserted());
+        UUID javaRuleId = ruleId("ULB Java -> IPAP");
+
+        // 2. Même contenu : les écoles sont ignorées (même empreinte), rien n'est modifié
+        KbSyncReportDto same = syncService.sync(List.of(
+                ulb(8, "Programmation"),
+                new JsonSchool("HELB", "HELB Prigogine", "https://helb.be",
+                        List.of(new JsonCourse("IODA0101-2", "Algo & Prog", 5)),
+                        List.of(new JsonRule("HELB Algo -> IPAP", 5, List.of("IODA0101-2"), List.of("IPAP"))))));
+
+        assertTrue(same.isUnchanged());
+        assertEquals(2, same.getSchoolsSkipped());
+        assertEquals(3, same.getRulesUnchanged());
+
+        // 3. HELB retirée, libellé ULB corrigé, règle combinée modifiée (min ECTS)
+        KbSyncReportDto diff = syncService.sync(List.of(ulb(9, "Programmation Java")));
+
+        assertEquals(1, diff.getSchoolsDeleted());
+        assertEquals(1, diff.getCoursesDeleted());
+        assertEquals(1, diff.getCoursesUpdated());
+        assertEquals(2, diff.getRulesDeleted());
+        assertEquals(1, diff.getRulesInserted());
+        assertEquals(1, diff.getRulesUnchanged());
+
+        // La règle inchangée est conservée telle quelle (même identifiant)
+        assertEquals(javaRuleId, ruleId("ULB Java -> IPAP"));
+        assertEquals(1, schoolDao.count());
+
+        // Le moteur voit immédiatement la nouvelle KB
+        assertEquals("Programmation Java", kbService.findCourse("ULB", "INFO-F101").orElseThrow().getLibelle());
+        assertTrue(kbService.findCourse("HELB", "IODA0101-2").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Empreinte : une école inchangée n'est pas relue en base, sauf synchronisation forcée")
+    void testSync_SkipsUnchangedSchoolsUnlessForced() {
+        syncService.sync(List.of(ulb(8, "Programmation"), helb("Algo & Prog")));
+        assertNotNull(schoolDao.findByCodeKey("ULB").orElseThrow().getContentHash());
+
+        // Modification directe en base : invisible pour une synchronisation par empreinte
+        KbCourse course = courseDao.findByEcole(schoolDao.findByCodeKey("ULB").orElseThrow()).stream()
+                .filter(c -> c.getCodeKey().equals("INFO-F101")).findFirst().orElseThrow();
+        course.setLibelle("Modifié en base");
+        courseDao.save(course);
+
+        // Seule l'école modifiée dans le fichier est resynchronisée
+        KbSyncReportDto report = syncService.sync(List.of(ulb(8, "Programmation"), helb("Algorithmique & Programmation")));
+        assertEquals(1, report.getSchoolsSkipped());
+        assertEquals(1, report.getCoursesUpdated());
+        assertEquals("Modifié en base", kbService.findCourse("ULB", "INFO-F101").orElseThrow().getLibelle());
+
+        // Synchronisation forcée : toutes les écoles sont comparées, la base est corrigée
+        KbSyncReportDto forced = syncService.sync(List.of(ulb(8, "Programmation"), helb("Algorithmique & Programmation")), true);
+        assertEquals(0, forced.getSchoolsSkipped());
+        assertEquals(1, forced.getCoursesUpdated());
+        assertEquals("Programmation", kbService.findCourse("ULB", "INFO-F101").orElseThrow().getLibelle());
+    }
+
+    @Test
+    @DisplayName("Synchronisation depuis le fichier : lecture en flux, fichier invalide sans effet")
+    void testSyncFromFile_StreamingAndInvalidFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("knowledge-base.json");
+        Files.writeString(file, """
+                [
+                  { "code": "ULB", "nom": "Université Libre de Bruxelles", "site": "https://www.ulb.be",
+                    "cours": [ { "code": "INFO-F101", "libelle": "Programmation", "ects": 5 } ],
+                    "regles": [ { "description": "ULB Java -> IPAP", "minEcts": 5, "sources": ["INFO-F101"], "cibles": ["IPAP"] } ] },
+                  { "code": "HELB", "nom": "HELB Prigogine", "site": "https://helb.be", "cours": [], "regles": [] }
+                ]
+                """);
+        String previous = properties.getFile();
+        properties.setFile(file.toUri().toString());
+        try {
+            KbSyncReportDto report = syncService.syncFromFile();
+            assertEquals(4, report.getRowsRead());
+            assertEquals(2, report.getSchoolsInserted());
+            assertEquals(1, report.getRulesInserted());
+            assertTrue(kbService.findCourse("ULB", "INFO-F101").isPresent());
+
+            // Fichier tronqué : erreur explicite, aucune école supprimée
+            Files.writeString(file, "[ { \"code\": \"ULB\", \"cours\": [");
+            assertThrows(IllegalStateException.class, () -> syncService.syncFromFile());
+            assertEquals(2, schoolDao.count());
+        } finally {
+            properties.setFile(previous);
+        }
+    }
+
+    @Test
+    @DisplayName("Synchronisation : une école en erreur est annulée seule, les autres sont validées")
+    void testSync_FailingSchoolDoesNotRollBackOthers() {
+        List<JsonSchool> schools = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            schools.add(new JsonSchool("E" + i, "École " + i, null,
+                    List.of(new JsonCourse("C" + i, "Cours " + i, 5)), List.of()));
+        }
+        // Libellé obligatoire manquant : l'insertion du cours échoue
+        schools.add(new JsonSchool("BAD", "École invalide", null, List.of(new JsonCourse("X1", null, 5)), List.of()));
+
+        KbSyncReportDto report = syncService.sync(schools);
+
+        assertEquals(20, report.getSchoolsInserted());
+        assertEquals(1, report.getSchoolsFailed());
+        assertEquals(21, report.getSchools().size());
+        KbSyncReportDto.SchoolResult bad = report.getSchools().stream()
+                .filter(r -> !r.success()).findFirst().orElseThrow();
+        assertEquals("BAD", bad.school());
+        assertNotNull(bad.message());
+        assertEquals(20, schoolDao.count());
+        assertTrue(schoolDao.findByCodeKey("BAD").isEmpty());
+        assertTrue(kbService.findCourse("E7", "C7").isPresent());
+
+        // Avancement de la dernière synchronisation
+        KbSyncProgressDto progress = syncService.progress();
+        assertFalse(progress.isRunning());
+        assertEquals(20, progress.getSchoolsDone());
+        assertEquals(1, progress.getSchoolsFailed());
+        assertEquals(42, progress.getRowsRead());
+        assertEquals(100.0, progress.getPercent());
+        assertEquals(0L, progress.getEtaMs());
+    }
+
+    @Test
+    @DisplayName("Synchronisation : le moteur garde le snapshot précédent jusqu'à la fin, puis le reconstruit une fois")
+    void testSync_SnapshotPublishedOnceAtEnd() throws InterruptedException {
+        List<JsonSchool> schools = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            schools.add(new JsonSchool("E" + i, "École " + i, null,
+                    List.of(new JsonCourse("C" + i, "Cours " + i, 5)), List.of()));
+        }
+        long before = kbService.kbVersion();
+
+        // Lecteur concurrent : pendant la synchronisation, il ne voit que la version précédente
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread reader = Thread.ofPlatform().start(() -> {
+            while (running.get()) {
+                seen.add(kbService.kbVersion());
+                LockSupport.parkNanos(100_000);
+            }
+        });
+        try {
+            syncService.sync(schools);
+        } finally {
+            running.set(false);
+            reader.join();
+        }
+
+        assertEquals(Set.of(before), seen);
+        assertNotEquals(before, kbService.kbVersion());
+        assertTrue(kbService.findCourse("E19", "C19").isPresent());
+    }
+
+    @Test
+    @DisplayName("Snapshot de la KB : construit hors de la transaction de l'appelant, entités détachées")
+    void testSnapshot_BuiltOutsideCallerTransaction() {
+        syncService.sync(List.of(ulb(8, "Programmation")));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            KbCourse course = kbService.findCourse("ULB", "INFO-F101").orElseThrow();
+            assertFalse(entityManager.contains(course), "La KB ne doit pas être chargée dans la session de l'appelant");
+            assertFalse(entityManager.contains(course.getEcole()));
+        });
+    }
+
+    // ——— HELPERS ———
+
+    private static JsonSchool ulb(int combinedMinEcts, String javaLibelle) {
+        return new JsonSchool("ULB", "Université Libre de Bruxelles", "https://www.ulb.be",
+                List.of(new JsonCourse("INFO-F101", javaLibelle, 5), new JsonCourse("INFO-F102", "Algorithmique", 4)),
+                List.of(new JsonRule("ULB Java -> IPAP", 5, List.of("INFO-F101"), List.of("IPAP")),
+                        new JsonRule("ULB Java + Algo -> IPAP", combinedMinEcts, List.of("info-f101", "INFO-F102"), List.of("IPAP"))));
+    }
+
+    private static JsonSchool helb(String algoLibelle) {
+        return new JsonSchool("HELB", "HELB Prigogine", "https://helb.be",
+                List.of(new JsonCourse("IODA0101-2", algoLibelle, 5)),
+                List.of(new JsonRule("HELB Algo -> IPAP", 5, List.of("IODA0101-2"), List.of("IPAP"))));
+    }
+
+    private UUID ruleId(String description) {
+        return ruleDao.findAll().stream()
+                .filter(r -> r.getDescription().equals(description))
+                .map(KbCorrespondenceRule::getId)
+                .findFirst().orElseThrow();
+    }
+}
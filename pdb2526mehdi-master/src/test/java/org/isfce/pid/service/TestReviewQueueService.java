@@ -0,0 +1,164 @@
+package org.isfce.pid.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.isfce.pid.dao.IExemptionRequestDao;
+import org.isfce.pid.dao.ISectionDao;
+import org.isfce.pid.dao.IStudentDao;
+import org.isfce.pid.dto.ReviewQueueEntryDto;
+import org.isfce.pid.dto.ReviewQueuePageDto;
+import org.isfce.pid.model.ExemptionRequest;
+import org.isfce.pid.model.Section;
+import org.isfce.pid.model.StatutDemande;
+import org.isfce.pid.model.Student;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Tests sur une vraie base H2 (sans transaction de test) : chaque prise en traitement est validée
+ * comme en production, ce qui permet de faire puiser plusieurs professeurs simultanément dans la file.
+ */
+@ActiveProfiles("testU")
+@SpringBootTest
+class TestReviewQueueService {
+
+    private static final String SECTION = "REVQ";
+    private static final int DOSSIERS = 30;
+
+    @Autowired private ReviewQueueService reviewService;
+    @Autowired private IExemptionRequestDao reqDao;
+    @Autowired private IStudentDao studentDao;
+    @Autowired private ISectionDao sectionDao;
+
+    private final List<UUID> requestIds = new ArrayList<>();
+    private Student student;
+
+    @BeforeEach
+    void setUp() {
+        Section section = sectionDao.save(new Section(SECTION, "File de traitement", null));
+        student = studentDao.save(Student.builder()
+                .email("file.traitement@isfce.be").nom("File").prenom("Jean").section(section).build());
+        Instant base = Instant.parse("2025-09-01T08:00:00Z");
+        for (int i = 0; i < DOSSIERS; i++) {
+            requestIds.add(reqDao.save(ExemptionRequest.builder()
+                    .etudiant(student)
+                    .section(section)
+                    .statut(StatutDemande.SUBMITTED)
+                    .submittedAt(base.plusSeconds(60L * (i % 10))) // dates en double : départage par id
+                    .build()).getId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        reqDao.deleteAllById(requestIds);
+        studentDao.delete(student);
+        sectionDao.deleteById(SECTION);
+    }
+
+    @Test
+    @DisplayName("File : des professeurs simultanés n'obtiennent jamais le même dossier")
+    void testClaimNext_ConcurrentReviewersGetDisjointRequests() throws Exception {
+        int reviewers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(reviewers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<ReviewQueueEntryDto>>> results = new ArrayList<>();
+        try {
+            for (int r = 0; r < reviewers; r++) {
+                String reviewer = "prof" + r + "@isfce.be";
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return reviewService.claimNext(reviewer, SECTION, 5);
+                }));
+            }
+            start.countDown();
+
+            Set<UUID> claimed = new HashSet<>();
+            int total = 0;
+            for (Future<List<ReviewQueueEntryDto>> result : results) {
+                for (ReviewQueueEntryDto entry : result.get()) {
+                    assertEquals(StatutDemande.IN_REVIEW, entry.getStatut());
+                    assertTrue(claimed.add(entry.getRequestId()), "Dossier pris deux fois : " + entry.getRequestId());
+                    total++;
+                }
+            }
+            assertEquals(total, claimed.size());
+            assertTrue(total <= DOSSIERS);
+
+            // Ce qui reste dans la file est pris par un dernier appel, puis la file est vide
+            List<ReviewQueueEntryDto> rest = reviewService.claimNext("dernier@isfce.be", SECTION, 50);
+            rest.forEach(e -> assertTrue(claimed.add(e.getRequestId())));
+            assertEquals(Set.copyOf(requestIds), claimed);
+            assertTrue(reviewService.claimNext("dernier@isfce.be", SECTION, 1).isEmpty());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("File : les plus anciens d'abord ; bail renouvelable, repris après expiration, dossier rendu")
+    void testClaimLease() {
+        List<ReviewQueueEntryDto> first = reviewService.claimNext("alice@isfce.be", SECTION, 2);
+        assertEquals(2, first.size());
+        assertEquals(Instant.parse("2025-09-01T08:00:00Z"), first.get(0).getSubmittedAt());
+        UUID reqId = first.get(0).getRequestId();
+
+        reviewService.renewClaim(reqId, "alice@isfce.be");
+        assertThrows(IllegalStateException.class, () -> reviewService.renewClaim(reqId, "bob@isfce.be"));
+
+        // Bail expiré : le dossier redevient disponible et passe à un autre professeur
+        ExemptionRequest req = reqDao.findById(reqId).orElseThrow();
+        req.setClaimExpiresAt(Instant.now().minusSeconds(1));
+        reqDao.save(req);
+        List<ReviewQueueEntryDto> taken = reviewService.claimNext("bob@isfce.be", SECTION, 1);
+        assertEquals(reqId, taken.get(0).getRequestId());
+        assertEquals("bob@isfce.be", taken.get(0).getClaimedBy());
+        assertThrows(IllegalStateException.class, () -> reviewService.renewClaim(reqId, "alice@isfce.be"));
+
+        // Dossier rendu : de retour dans la file
+        reviewService.releaseClaim(reqId, "bob@isfce.be");
+        assertEquals(StatutDemande.SUBMITTED, reqDao.findById(reqId).orElseThrow().getStatut());
+        assertThrows(IllegalStateException.class, () -> reviewService.releaseClaim(reqId, "bob@isfce.be"));
+
+        assertThrows(IllegalArgumentException.class, () -> reviewService.claimNext("", SECTION, 1));
+        assertThrows(IllegalArgumentException.class, () -> reviewService.claimNext("bob@isfce.be", SECTION, 0));
+    }
+
+    @Test
+    @DisplayName("File : pagination par curseur, sans doublon ni oubli")
+    void testListQueue_KeysetPages() {
+        List<UUID> seen = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        ReviewQueuePageDto page = reviewService.listQueue(SECTION, null, null, null, 12);
+        while (true) {
+            sizes.add(page.getEntries().size());
+            page.getEntries().forEach(e -> seen.add(e.getRequestId()));
+            if (page.getNextId() == null) {
+                break;
+            }
+            page = reviewService.listQueue(SECTION, StatutDemande.SUBMITTED, page.getNextSubmittedAt(),
+                    page.getNextId(), 12);
+        }
+
+        assertEquals(List.of(12, 12, 6), sizes);
+        assertEquals(DOSSIERS, Set.copyOf(seen).size());
+        assertEquals(Set.copyOf(requestIds), Set.copyOf(seen));
+        assertNull(page.getNextSubmittedAt());
+    }
+}
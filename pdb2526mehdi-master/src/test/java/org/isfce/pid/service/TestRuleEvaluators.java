@@ -0,0 +1,258 @@
+package org.isfce.pid.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.isfce.pid.model.*;
+import org.isfce.pid.service.KnowledgeBaseService.RuleMatch;
+import org.isfce.pid.service.kb.BitsetRuleEvaluator;
+import org.isfce.pid.service.kb.CountingRuleEvaluator;
+import org.isfce.pid.service.kb.IncrementalRuleState;
+import org.isfce.pid.service.kb.IncrementalRuleState.Resolution;
+import org.isfce.pid.service.kb.KbIndex;
+import org.isfce.pid.service.kb.KbIndex.IndexedRule;
+import org.isfce.pid.service.kb.MappedRuleEvaluator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Vérifie que les stratégies d'évaluation produisent exactement les mêmes résultats
+ * qu'une évaluation naïve (toutes les règles testées une par une) sur une KB générée aléatoirement,
+ * et que l'analyse incrémentale reste identique à une analyse complète.
+ */
+class TestRuleEvaluators {
+
+    private final Random random = new Random(2526);
+    private final List<KbCourse> courses = new ArrayList<>();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Comptage, bitset et fichier projeté : résultats identiques à l'évaluation naïve")
+    void testEvaluators_SameResultsAsReference() {
+        KbIndex index = randomIndex();
+        KbIndex mappedIndex = rebuild(index.generation(), rulesOf(index), tempDir);
+
+        CountingRuleEvaluator counting = new CountingRuleEvaluator();
+        BitsetRuleEvaluator bitset = new BitsetRuleEvaluator();
+        MappedRuleEvaluator mapped = new MappedRuleEvaluator();
+        int totalMatches = 0;
+
+        for (int run = 0; run < 300; run++) {
+            Map<KbCourse, List<ExternalCourse>> recognized = new HashMap<>();
+            int nbCourses = random.nextInt(25);
+            for (int i = 0; i < nbCourses; i++) {
+                KbCourse kb = courses.get(random.nextInt(3) * 150 + random.nextInt(30));
+                ExternalCourse ext = ExternalCourse.builder().etablissement(kb.getEcole().getCode())
+                        .code(kb.getCode()).libelle(kb.getLibelle()).ects(1 + random.nextInt(8)).build();
+                recognized.computeIfAbsent(kb, k -> new ArrayList<>()).add(ext);
+            }
+
+            List<RuleMatch> expected = reference(index, recognized);
+            assertEquals(expected, counting.evaluate(index, recognized));
+            assertEquals(expected, bitset.evaluate(index, recognized));
+            assertEquals(expected, mapped.evaluate(mappedIndex, recognized));
+            assertEquals(expected, counting.evaluate(mappedIndex, recognized)); // index inversé lu dans le fichier
+            totalMatches += expected.size();
+        }
+        assertTrue(totalMatches > 0, "Le jeu de données doit déclencher des règles");
+    }
+
+    @Test
+    @DisplayName("Fichier projeté : partagé sans réécriture à KB égale, distinct pour une autre version de la KB")
+    void testMapped_SnapshotFileSharedBetweenInstances() throws IOException {
+        KbIndex index = randomIndex();
+        Map<KbCourse, List<ExternalCourse>> recognized = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            KbCourse kb = courses.get(i);
+            recognized.put(kb, List.of(ExternalCourse.builder().etablissement("S0").code(kb.getCode()).ects(8).build()));
+        }
+        List<RuleMatch> expected = new CountingRuleEvaluator().evaluate(index, recognized);
+        assertFalse(expected.isEmpty());
+
+        MappedRuleEvaluator mapped = new MappedRuleEvaluator();
+        assertEquals(expected, mapped.evaluate(rebuild(index.generation(), rulesOf(index), tempDir), recognized));
+        List<Path> files = snapshotFiles();
+        assertEquals(1, files.size());
+        Object written = Files.readAttributes(files.get(0), BasicFileAttributes.class).fileKey();
+
+        // Autre instance : mêmes contenus, règles chargées dans un autre ordre (mêmes ordinaux)
+        List<KbCorrespondenceRule> shuffled = new ArrayList<>(rulesOf(index));
+        Collections.shuffle(shuffled, random);
+        KbIndex other = KbIndex.build(2L, courses, shuffled);
+        assertEquals(index.rules().stream().map(IndexedRule::rule).toList(), rulesOf(other));
+        assertEquals(new CountingRuleEvaluator().evaluate(other, recognized),
+                mapped.evaluate(rebuild(2L, shuffled, tempDir), recognized));
+        assertEquals(files, snapshotFiles());
+        assertEquals(written, Files.readAttributes(files.get(0), BasicFileAttributes.class).fileKey());
+
+        // KB modifiée (synchronisation progressive) : autre fichier, celui de l'ancienne version reste intact
+        KbIndex old = rebuild(2L, rulesOf(index), tempDir);
+        shuffled.remove(0);
+        KbIndex changed = KbIndex.build(3L, courses, shuffled);
+        assertEquals(new CountingRuleEvaluator().evaluate(changed, recognized),
+                mapped.evaluate(rebuild(3L, shuffled, tempDir), recognized));
+        assertEquals(2, snapshotFiles().size());
+        assertEquals(written, Files.readAttributes(files.get(0), BasicFileAttributes.class).fileKey());
+        assertEquals(new CountingRuleEvaluator().evaluate(old, recognized), mapped.evaluate(old, recognized));
+    }
+
+    @Test
+    @DisplayName("Fichier projeté impossible à écrire : index inversé sur le tas, mêmes résultats")
+    void testMapped_FallsBackToHeapIndex() throws IOException {
+        KbIndex index = randomIndex();
+        Path notADirectory = Files.createFile(tempDir.resolve("not-a-directory"));
+        Map<KbCourse, List<ExternalCourse>> recognized = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            KbCourse kb = courses.get(i);
+            recognized.put(kb, List.of(ExternalCourse.builder().etablissement("S0").code(kb.getCode()).ects(8).build()));
+        }
+
+        KbIndex fallback = assertDoesNotThrow(() -> rebuild(index.generation(), rulesOf(index), notADirectory));
+        List<RuleMatch> expected = new CountingRuleEvaluator().evaluate(index, recognized);
+        assertEquals(expected, new MappedRuleEvaluator().evaluate(fallback, recognized));
+        assertEquals(expected, new CountingRuleEvaluator().evaluate(fallback, recognized));
+    }
+
+    @Test
+    @DisplayName("Analyse incrémentale : résultats identiques à une analyse complète après chaque modification")
+    void testIncremental_SameResultsAsFullEvaluation() {
+        KbIndex index = randomIndex();
+        CountingRuleEvaluator counting = new CountingRuleEvaluator();
+        IncrementalRuleState state = new IncrementalRuleState(index);
+        Function<ExternalCourse, Optional<Resolution>> resolver =
+                ext -> index.findCourse(ext.getEtablissement(), ext.getCode()).map(kb -> new Resolution(kb, 1.0));
+        Set<ExternalCourse> current = new HashSet<>();
+        int totalMatches = 0;
+
+        for (int step = 0; step < 500; step++) {
+            // Ajout, retrait ou modification (ECTS, code, y compris vers un cours inconnu de la KB)
+            int action = current.isEmpty() ? 0 : random.nextInt(3);
+            if (action == 0) {
+                current.add(randomCourse());
+            } else {
+                ExternalCourse target = new ArrayList<>(current).get(random.nextInt(current.size()));
+                if (action == 1) {
+                    current.remove(target);
+                } else if (random.nextBoolean()) {
+                    target.setEcts(1 + random.nextInt(8));
+                } else {
+                    target.setCode(random.nextInt(5) == 0 ? "INCONNU" : "C" + random.nextInt(30));
+                }
+            }
+
+            Map<KbCourse, List<ExternalCourse>> recognized = new HashMap<>();
+            for (ExternalCourse ext : current) {
+                resolver.apply(ext).ifPresent(r -> recognized.computeIfAbsent(r.course(), k -> new ArrayList<>()).add(ext));
+            }
+            List<RuleMatch> expected = counting.evaluate(index, recognized);
+
+            state.update(current, resolver);
+            assertEquals(expected, state.matches(current), "Étape " + step);
+            totalMatches += expected.size();
+        }
+        assertTrue(totalMatches > 0, "Le jeu de données doit déclencher des règles");
+    }
+
+    /**
+     * KB aléatoire : 3 écoles × 150 cours (> 64 pour couvrir plusieurs mots par école), 600 règles.
+     */
+    private KbIndex randomIndex() {
+        for (int s = 0; s < 3; s++) {
+            KbSchool school = KbSchool.builder().code("S" + s).etablissement("École " + s).build();
+            school.setId(UUID.randomUUID());
+            for (int c = 0; c < 150; c++) {
+                KbCourse course = KbCourse.builder().ecole(school).code("C" + c).libelle("Cours " + c)
+                        .ects(1 + random.nextInt(8)).build();
+                course.setId(UUID.randomUUID());
+                courses.add(course);
+            }
+        }
+        List<KbCorrespondenceRule> rules = new ArrayList<>();
+        for (int r = 0; r < 600; r++) {
+            KbCorrespondenceRule rule = KbCorrespondenceRule.builder().description("R" + r)
+                    .minTotalEcts(random.nextInt(3) == 0 ? random.nextInt(12) : null).build();
+            rule.setId(UUID.randomUUID());
+            int school = random.nextInt(3);
+            int nbSources = 1 + random.nextInt(3);
+            for (int i = 0; i < nbSources; i++) {
+                // Sources tirées dans une fenêtre étroite pour obtenir des déclenchements (et parfois des doublons)
+                KbCourse source = courses.get(school * 150 + random.nextInt(20));
+                rule.addSource(KbCorrespondenceRuleSource.builder().cours(source).build());
+            }
+            rule.setEcole(courses.get(school * 150).getEcole());
+            rules.add(rule);
+        }
+        return KbIndex.build(1L, courses, rules);
+    }
+
+    /**
+     * Index des mêmes cours dont l'index inversé est la forme compilée projetée (moteur mapped).
+     */
+    private KbIndex rebuild(long generation, List<KbCorrespondenceRule> rules, Path snapshotDir) {
+        return KbIndex.build(generation, courses, rules, snapshotDir);
+    }
+
+    private List<Path> snapshotFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(f -> f.getFileName().toString().matches("kb-[0-9a-f]{64}\\.bin")).sorted().toList();
+        }
+    }
+
+    private static List<KbCorrespondenceRule> rulesOf(KbIndex index) {
+        return index.rules().stream().map(IndexedRule::rule).toList();
+    }
+
+    private ExternalCourse randomCourse() {
+        KbCourse kb = courses.get(random.nextInt(3) * 150 + random.nextInt(30));
+        ExternalCourse ext = ExternalCourse.builder().etablissement(kb.getEcole().getCode())
+                .code(kb.getCode()).libelle(kb.getLibelle()).ects(1 + random.nextInt(8)).build();
+        ext.setId(UUID.randomUUID());
+        return ext;
+    }
+
+    /**
+     * Évaluation naïve : chaque règle est testée individuellement, dans l'ordre de l'index.
+     */
+    private List<RuleMatch> reference(KbIndex index, Map<KbCourse, List<ExternalCourse>> recognized) {
+        List<RuleMatch> matches = new ArrayList<>();
+        for (IndexedRule rule : index.rules()) {
+            boolean allPresent = true;
+            int total = 0;
+            Set<ExternalCourse> used = new HashSet<>();
+            for (KbCourse source : rule.sources()) {
+                List<ExternalCourse> student = recognized.get(source);
+                if (student == null || student.isEmpty()) {
+                    allPresent = false;
+                    break;
+                }
+                for (ExternalCourse ext : student) {
+                    total += Math.min(ext.getEcts(), source.getEcts());
+                }
+                used.addAll(student);
+            }
+            if (allPresent && total >= rule.minTotalEcts()) {
+                matches.add(RuleMatch.of(index, rule, used, 1.0));
+            }
+        }
+        return matches;
+    }
+}